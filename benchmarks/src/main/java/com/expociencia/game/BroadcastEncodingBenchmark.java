@@ -0,0 +1,89 @@
+package com.expociencia.game;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.expociencia.messages.BinaryMessageCodec;
+import com.expociencia.messages.JsonMessageCodec;
+import com.expociencia.messages.Message;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Construcción y serialización del UPDATE_STATE que envía cada sala: el
+ * Message a partir de la foto del tick, la lista de GameObject y el Message
+ * completo con Gson, y los dos codecs sobre un buffer reutilizado (como hace
+ * BroadcastFrame).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class BroadcastEncodingBenchmark {
+
+    @Param({"2", "16", "64", "256"})
+    int players;
+
+    GameState state;
+    Message message;
+    List<GameObject> objects;
+    final Gson gson = new Gson();
+    ByteBuffer jsonBuffer = ByteBuffer.allocateDirect(16 * 1024);
+    ByteBuffer binaryBuffer = ByteBuffer.allocateDirect(16 * 1024);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        state = Scenarios.game(players);
+        // Algunas frutas para que el estado se parezca al de una partida real
+        for (int i = 0; i < 5 + players; i++) {
+            state.spawnFruit();
+        }
+        state.update(); // Publica la foto con las frutas nuevas
+        state.drainDelta();
+        objects = state.getGameObjects();
+        message = stateMessage();
+    }
+
+    // Igual que Room.createStateMessage()
+    private Message stateMessage() {
+        GameSnapshot snapshot = state.getSnapshot();
+        Message stateMessage = new Message("UPDATE_STATE");
+        stateMessage.setBoard(snapshot.getBoard());
+        stateMessage.setGameOver(snapshot.isGameOver());
+        stateMessage.setGameInProgress(snapshot.isGameInProgress());
+        stateMessage.setPlayerScores(snapshot.getPlayerScores());
+        stateMessage.setPlayerNames(snapshot.getPlayerNames());
+        stateMessage.setSequence(1);
+        return stateMessage;
+    }
+
+    @Benchmark
+    public Message buildStateMessage() {
+        return stateMessage();
+    }
+
+    @Benchmark
+    public String gsonObjects() {
+        return gson.toJson(objects);
+    }
+
+    @Benchmark
+    public String gsonMessage() {
+        return gson.toJson(message);
+    }
+
+    @Benchmark
+    public ByteBuffer jsonCodec() {
+        jsonBuffer = JsonMessageCodec.INSTANCE.encode(message, jsonBuffer);
+        return jsonBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer binaryCodec() {
+        binaryBuffer = BinaryMessageCodec.INSTANCE.encode(message, binaryBuffer);
+        return binaryBuffer;
+    }
+}
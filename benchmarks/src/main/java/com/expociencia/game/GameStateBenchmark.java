@@ -0,0 +1,35 @@
+package com.expociencia.game;
+
+import java.util.concurrent.TimeUnit;
+
+import com.expociencia.messages.StateDelta;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Un tick del juego: mover todas las serpientes (con su detección de
+ * colisiones) y vaciar el delta, como hace cada sala en su bucle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class GameStateBenchmark {
+
+    @Param({"2", "16", "64", "256"})
+    int players;
+
+    GameState state;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        state = Scenarios.game(players);
+    }
+
+    @Benchmark
+    public StateDelta update() {
+        state.update();
+        return state.drainDelta();
+    }
+}
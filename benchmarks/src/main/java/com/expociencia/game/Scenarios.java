@@ -0,0 +1,49 @@
+package com.expociencia.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Escenarios reproducibles para los benchmarks. Las serpientes se reparten
+ * por filas y avanzan todas a la derecha con wrap-around, dejando siempre un
+ * hueco entre la cabeza de una y la cola de la siguiente: nadie choca y
+ * cada update() hace el mismo trabajo indefinidamente.
+ */
+final class Scenarios {
+    static final long SEED = 42;
+
+    private Scenarios() {
+    }
+
+    static GameState game(int players) {
+        GameState state = new GameState(new Random(SEED));
+        state.startScenario(snakeRows(players));
+        state.drainDelta();
+        state.consumeKeyframeRequired();
+        return state;
+    }
+
+    // Celdas de cada serpiente (cabeza primero), con longitudes variadas según el espacio disponible
+    static List<int[]> snakeRows(int players) {
+        int rows = GameState.DEFAULT_ROWS;
+        int columns = GameState.DEFAULT_COLUMNS;
+        int perRow = Math.max(1, (players + rows - 1) / rows); // Sin jugadores (SpawnFruitBenchmark) también
+        int spacing = columns / perRow;
+        int maxLength = Math.max(2, spacing - 1); // Al menos una celda libre delante de cada cabeza
+
+        List<int[]> snakes = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            int row = i % rows;
+            int slot = i / rows;
+            int length = 2 + (i * 7) % (maxLength - 1);
+            int headCol = slot * spacing + length - 1;
+            int[] cells = new int[length];
+            for (int j = 0; j < length; j++) {
+                cells[j] = row * columns + (headCol - j);
+            }
+            snakes.add(cells);
+        }
+        return snakes;
+    }
+}
@@ -0,0 +1,42 @@
+package com.expociencia.game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Generar una fruta con el tablero casi lleno: solo quedan 'freeCells'
+ * celdas libres. Cada operación crea una fruta y la retira para mantener
+ * la ocupación constante.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class SpawnFruitBenchmark {
+
+    @Param({"16", "160", "800"})
+    int freeCells;
+
+    GameState state;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        state = Scenarios.game(0);
+        int fruits = GameState.DEFAULT_ROWS * GameState.DEFAULT_COLUMNS - freeCells;
+        for (int i = 0; i < fruits; i++) {
+            state.spawnFruit();
+        }
+        state.drainDelta();
+    }
+
+    @Benchmark
+    public int spawnFruit() {
+        int cell = state.spawnFruit();
+        state.removeFruitAt(cell);
+        // La fruta se añade y se quita en el mismo delta, así que el delta no crece
+        return cell;
+    }
+}
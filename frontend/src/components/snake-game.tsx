@@ -1,16 +1,6 @@
 import { useState, useEffect, useRef } from "react"
 import { useWebSocket } from "../hooks/useWebSocket"
-
-interface GameObject {
-  x: number
-  y: number
-  width: number
-  height: number
-  type: string
-  playerId: number
-  color?: string
-  health?: number
-}
+import { applyDelta, boardObjects, type GameObject } from "../lib/state-delta"
 
 export default function SnakePeludo() {
   const canvasRef = useRef<HTMLCanvasElement>(null)
@@ -30,6 +20,9 @@ export default function SnakePeludo() {
 
   const hasSentJoin = useRef(false)
   const gameStartedTriggered = useRef(false)
+  // Protocolo delta: último estado aplicado y sus objetos
+  const lastSequence = useRef(-1)
+  const objectsRef = useRef<GameObject[]>([])
 
   const { sendMessage, isConnected } = useWebSocket("ws://10.1.18.112:12345", (message) => {
     if (message.action === "PLAYER_ID") {
@@ -39,7 +32,10 @@ export default function SnakePeludo() {
         sendMessage({ action: "START_GAME" })
       }
     } else if (message.action === "UPDATE_STATE") {
-      setGameObjects(message.objects || [])
+      // En JSON llega el tablero compacto; el binario ya trae la lista de objetos
+      objectsRef.current = message.objects || (message.board ? boardObjects(message.board) : [])
+      lastSequence.current = message.sequence ?? -1
+      setGameObjects(objectsRef.current)
       setGameOver(message.gameOver || false)
       setGameInProgress(message.gameInProgress || false)
       setPlayerScores(message.playerScores || {})
@@ -47,6 +43,26 @@ export default function SnakePeludo() {
       if (myPlayerId !== null) {
         setMyScore(message.playerScores?.[myPlayerId] || 0)
       }
+    } else if (message.action === "ERROR") {
+      // Sin sala (p. ej. no caben más): el motivo queda en el estado de la conexión
+      setConnectionStatus(message.error)
+    } else if (message.action === "STATE_DELTA") {
+      if (lastSequence.current < 0) return // Esperando el estado completo ya solicitado
+      if (message.sequence !== lastSequence.current + 1) {
+        // Nos saltamos algún delta: pedir un estado completo y descartar hasta recibirlo
+        lastSequence.current = -1
+        sendMessage({ action: "REQUEST_KEYFRAME" })
+        return
+      }
+      lastSequence.current = message.sequence
+      objectsRef.current = applyDelta(objectsRef.current, message.delta)
+      setGameObjects(objectsRef.current)
+      setGameOver(message.gameOver || false)
+      setGameInProgress(message.gameInProgress || false)
+      setPlayerScores(prev => ({ ...prev, ...message.delta.playerScores }))
+      if (myPlayerId !== null && message.delta.playerScores?.[myPlayerId] !== undefined) {
+        setMyScore(message.delta.playerScores[myPlayerId])
+      }
     }
   })
 
@@ -86,10 +102,21 @@ export default function SnakePeludo() {
     if (isConnected && !hasSentJoin.current) {
       setConnectionStatus("Conectado")
       hasSentJoin.current = true
-      sendMessage({
-        action: "JOIN_GAME",
-        playerName: "Peludo"
-      })
+      const params = new URLSearchParams(window.location.search)
+      // Sala elegida con ?room=CODIGO; sin ella el servidor usa la sala pública
+      const roomCode = params.get("room")
+      if (params.has("spectate")) {
+        // Pantallas de la expo: solo miran, y reciben el estado completo a menor ritmo
+        sendMessage({ action: "SPECTATE", codec: "binary", roomCode })
+      } else {
+        sendMessage({
+          action: "JOIN_GAME",
+          playerName: "Peludo",
+          protocol: "delta",
+          codec: "binary",
+          roomCode
+        })
+      }
     } else if (!isConnected) {
       setConnectionStatus("Desconectado")
       hasSentJoin.current = false
@@ -306,7 +333,7 @@ export default function SnakePeludo() {
 
         ctx.fillStyle = '#ffffff'
         ctx.font = 'bold 12px Arial'
-        const value = obj.health?.toString() || '1'
+        const value = obj.value?.toString() || '1'
         const metrics = ctx.measureText(value)
         ctx.fillText(value, obj.x + (16 - metrics.width) / 2, obj.y + 11)
       }
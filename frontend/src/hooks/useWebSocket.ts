@@ -1,6 +1,7 @@
 "use client"
 
 import { useEffect, useRef, useCallback, useState } from "react"
+import { decodeMessage, encodeInput } from "../lib/binary-codec"
 
 interface Message {
   action: string
@@ -9,6 +10,8 @@ interface Message {
 
 export function useWebSocket(url: string, onMessage: (message: Message) => void) {
   const ws = useRef<WebSocket | null>(null)
+  // El servidor responde en binario si lo pedimos en JOIN_GAME (codec: "binary")
+  const binaryNegotiated = useRef(false)
   const [isConnected, setIsConnected] = useState(false)
 
   const onMessageRef = useRef(onMessage)
@@ -20,6 +23,8 @@ export function useWebSocket(url: string, onMessage: (message: Message) => void)
   useEffect(() => {
     try {
       ws.current = new WebSocket(url)
+      ws.current.binaryType = "arraybuffer"
+      binaryNegotiated.current = false
 
       ws.current.onopen = () => {
         console.log("[v0] WebSocket conectado")
@@ -28,8 +33,13 @@ export function useWebSocket(url: string, onMessage: (message: Message) => void)
 
       ws.current.onmessage = (event) => {
         try {
-          const message = JSON.parse(event.data)
-          console.log("[v0] Mensaje recibido:", message)
+          let message: Message
+          if (typeof event.data === "string") {
+            message = JSON.parse(event.data)
+          } else {
+            binaryNegotiated.current = true
+            message = decodeMessage(event.data)
+          }
           onMessageRef.current(message)
         } catch (error) {
           console.error("[v0] Error parseando mensaje:", error)
@@ -59,6 +69,10 @@ export function useWebSocket(url: string, onMessage: (message: Message) => void)
 
   const sendMessage = useCallback((message: Message) => {
     if (ws.current && ws.current.readyState === WebSocket.OPEN) {
+      if (binaryNegotiated.current && message.action === "PLAYER_INPUT") {
+        ws.current.send(encodeInput(message.input))
+        return
+      }
       console.log("[v0] Enviando mensaje:", message)
       ws.current.send(JSON.stringify(message))
     } else {
@@ -0,0 +1,193 @@
+import type { GameObject, StateDelta } from "./state-delta"
+
+// Formato binario compacto (ver BinaryMessageCodec.java): mantener ambos lados sincronizados
+const TILE_SIZE = 16
+const COLUMNS = 40
+const ROWS = 40
+const FLAG_GRID_CELLS = 4 // Tablero que no es de 40x40: celdas como columna y fila
+const FLAG_AREA = 8 // Tablero recortado a la zona del jugador (área de interés)
+
+const OP_PLAYER_ID = 1
+const OP_UPDATE_STATE = 2
+const OP_STATE_DELTA = 3
+const OP_PLAYER_INPUT = 5
+const OP_MINIMAP = 11
+const OP_ERROR = 12
+
+const COLOR_PALETTE = ["CYAN", "MAGENTA", "YELLOW", "ORANGE", "PINK", "GREEN", "BLUE", "RED", "WHITE"]
+const INPUT_CODES: Record<string, number> = { UP: 0, DOWN: 1, LEFT: 2, RIGHT: 3, RESTART: 4 }
+
+const utf8 = new TextDecoder()
+
+class Reader {
+  private view: DataView
+  private pos = 0
+  private buffer: ArrayBuffer
+  gridCells = false
+
+  constructor(buffer: ArrayBuffer) {
+    this.buffer = buffer
+    this.view = new DataView(buffer)
+  }
+
+  u8(): number {
+    return this.view.getUint8(this.pos++)
+  }
+
+  varint(): number {
+    let value = 0
+    let shift = 0
+    let b: number
+    do {
+      b = this.u8()
+      value += (b & 0x7f) * Math.pow(2, shift)
+      shift += 7
+    } while (b & 0x80)
+    return value
+  }
+
+  cell(): [number, number] {
+    if (this.gridCells) {
+      const col = this.varint()
+      return [col * TILE_SIZE, this.varint() * TILE_SIZE]
+    }
+    const c = this.view.getUint16(this.pos)
+    this.pos += 2
+    return [(c % COLUMNS) * TILE_SIZE, Math.floor(c / COLUMNS) * TILE_SIZE]
+  }
+
+  bytes(length: number): number[] {
+    const bytes = Array.from(new Uint8Array(this.buffer, this.pos, length))
+    this.pos += length
+    return bytes
+  }
+
+  string(): string {
+    const length = this.varint()
+    const text = utf8.decode(new Uint8Array(this.buffer, this.pos, length))
+    this.pos += length
+    return text
+  }
+
+  list<T>(readItem: () => T): T[] {
+    const count = this.varint()
+    const items: T[] = []
+    for (let i = 0; i < count; i++) items.push(readItem())
+    return items
+  }
+}
+
+// Devuelve el mensaje con la misma forma que su equivalente JSON
+export function decodeMessage(buffer: ArrayBuffer): { action: string; [key: string]: any } {
+  const r = new Reader(buffer)
+  const op = r.u8()
+
+  if (op === OP_PLAYER_ID) {
+    return { action: "PLAYER_ID", playerId: r.varint() }
+  }
+
+  if (op === OP_UPDATE_STATE) {
+    const flags = r.u8()
+    r.gridCells = (flags & FLAG_GRID_CELLS) !== 0
+    const sequence = r.varint()
+    const columns = r.gridCells ? r.varint() : COLUMNS
+    const rows = r.gridCells ? r.varint() : ROWS
+    const area = (flags & FLAG_AREA) !== 0
+      ? { column: r.varint(), row: r.varint(), columns: r.varint(), rows: r.varint() }
+      : undefined
+    const playerScores: Record<number, number> = {}
+    const playerNames: Record<number, string> = {}
+    const players = r.varint()
+    for (let i = 0; i < players; i++) {
+      const id = r.varint()
+      const has = r.u8()
+      if (has & 1) playerScores[id] = r.varint()
+      if (has & 2) playerNames[id] = r.string()
+    }
+
+    const objects: GameObject[] = []
+    const snakes = r.varint()
+    for (let i = 0; i < snakes; i++) {
+      const playerId = r.varint()
+      const color = COLOR_PALETTE[r.u8()]
+      const length = r.varint()
+      for (let j = 0; j < length; j++) {
+        const [x, y] = r.cell()
+        objects.push({ x, y, type: j === 0 ? "SNAKE_HEAD" : "SNAKE_BODY", playerId, color })
+      }
+    }
+    r.list(() => {
+      const [x, y] = r.cell()
+      objects.push({ x, y, type: "FRUIT", playerId: -1, value: r.u8() })
+    })
+    r.list(() => {
+      const [x, y] = r.cell()
+      objects.push({ x, y, type: "WALL", playerId: -1 })
+    })
+
+    return {
+      action: "UPDATE_STATE",
+      gameOver: (flags & 1) !== 0,
+      gameInProgress: (flags & 2) !== 0,
+      sequence,
+      columns,
+      rows,
+      area,
+      objects,
+      playerScores,
+      playerNames
+    }
+  }
+
+  if (op === OP_STATE_DELTA) {
+    const flags = r.u8()
+    r.gridCells = (flags & FLAG_GRID_CELLS) !== 0
+    const sequence = r.varint()
+    const playerCell = (): [number, number, number] => {
+      const id = r.varint()
+      const [x, y] = r.cell()
+      return [id, x, y]
+    }
+    const delta: StateDelta = {
+      heads: r.list(playerCell),
+      tails: r.list(playerCell),
+      fruitsAdded: r.list((): [number, number, number] => {
+        const [x, y] = r.cell()
+        return [x, y, r.u8()]
+      }),
+      fruitsRemoved: r.list(() => r.cell()),
+      eliminated: r.list(() => r.varint()),
+      playerScores: {}
+    }
+    const scores = r.varint()
+    for (let i = 0; i < scores; i++) {
+      const id = r.varint()
+      delta.playerScores[id] = r.varint()
+    }
+
+    return {
+      action: "STATE_DELTA",
+      gameOver: (flags & 1) !== 0,
+      gameInProgress: (flags & 2) !== 0,
+      sequence,
+      delta
+    }
+  }
+
+  if (op === OP_MINIMAP) {
+    const chunkColumns = r.varint()
+    const chunkRows = r.varint()
+    return { action: "MINIMAP", minimap: { chunkColumns, chunkRows, snakeCells: r.bytes(chunkColumns * chunkRows) } }
+  }
+
+  if (op === OP_ERROR) {
+    return { action: "ERROR", error: r.string() }
+  }
+
+  return { action: "UNKNOWN" }
+}
+
+// Las direcciones viajan en 2 bytes en lugar de un JSON
+export function encodeInput(input: string): Uint8Array {
+  return new Uint8Array([OP_PLAYER_INPUT, INPUT_CODES[input]])
+}
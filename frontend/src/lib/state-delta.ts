@@ -0,0 +1,89 @@
+// Todas las casillas miden TILE_SIZE; 'value' es el valor de las frutas
+export interface GameObject {
+  x: number
+  y: number
+  type: string
+  playerId: number
+  color?: string
+  value?: number
+}
+
+const TILE_SIZE = 16
+const COLUMNS = 40
+
+// Tablero compacto de UPDATE_STATE en JSON (ver Board.java): celdas = fila * columns + columna
+export interface Board {
+  columns?: number
+  rows?: number
+  snakes: { playerId: number; color: string; cells: number[] }[] // Celdas de cabeza a cola
+  fruitCells: number[]
+  fruitValues: number[]
+  wallCells: number[]
+}
+
+// Lista de objetos equivalente al tablero: serpientes, frutas y muros
+export function boardObjects(board: Board): GameObject[] {
+  const objects: GameObject[] = []
+  const columns = board.columns || COLUMNS
+  const x = (cell: number) => (cell % columns) * TILE_SIZE
+  const y = (cell: number) => Math.floor(cell / columns) * TILE_SIZE
+  for (const snake of board.snakes) {
+    snake.cells.forEach((cell, i) => {
+      objects.push({ x: x(cell), y: y(cell), type: i === 0 ? "SNAKE_HEAD" : "SNAKE_BODY", playerId: snake.playerId, color: snake.color })
+    })
+  }
+  board.fruitCells.forEach((cell, i) => {
+    objects.push({ x: x(cell), y: y(cell), type: "FRUIT", playerId: -1, value: board.fruitValues[i] })
+  })
+  for (const cell of board.wallCells) {
+    objects.push({ x: x(cell), y: y(cell), type: "WALL", playerId: -1 })
+  }
+  return objects
+}
+
+// Cambios de un tick enviados en los mensajes STATE_DELTA
+export interface StateDelta {
+  heads: [number, number, number][] // [playerId, x, y]
+  tails: [number, number, number][] // [playerId, x, y]
+  fruitsAdded: [number, number, number][] // [x, y, valor]
+  fruitsRemoved: [number, number][] // [x, y]
+  eliminated: number[]
+  playerScores: Record<number, number>
+}
+
+// Aplica los cambios en el mismo orden que el servidor y devuelve una lista nueva
+export function applyDelta(objects: GameObject[], delta: StateDelta): GameObject[] {
+  let next = objects.slice()
+
+  for (const [playerId, x, y] of delta.heads) {
+    const index = next.findIndex(o => o.type === "SNAKE_HEAD" && o.playerId === playerId)
+    if (index < 0) continue
+    const oldHead = next[index]
+    next[index] = { ...oldHead, type: "SNAKE_BODY" }
+    next.splice(index, 0, { ...oldHead, x, y, type: "SNAKE_HEAD" })
+  }
+
+  for (const [playerId, x, y] of delta.tails) {
+    // Los segmentos van de cabeza a cola: buscar desde el final
+    for (let i = next.length - 1; i >= 0; i--) {
+      const o = next[i]
+      if (o.playerId === playerId && o.type !== "FRUIT" && o.x === x && o.y === y) {
+        next.splice(i, 1)
+        break
+      }
+    }
+  }
+
+  for (const [x, y] of delta.fruitsRemoved) {
+    next = next.filter(o => !(o.type === "FRUIT" && o.x === x && o.y === y))
+  }
+  for (const [x, y, value] of delta.fruitsAdded) {
+    next.push({ x, y, type: "FRUIT", playerId: -1, value })
+  }
+
+  if (delta.eliminated.length > 0) {
+    next = next.filter(o => o.type === "FRUIT" || !delta.eliminated.includes(o.playerId))
+  }
+
+  return next
+}
@@ -2,19 +2,35 @@ package com.expociencia.client;
 import javax.swing.*;
 
 import com.expociencia.game.GameObject;
+import com.expociencia.game.GameState;
+import com.expociencia.game.Minimap;
+import com.expociencia.messages.BinaryMessageCodec;
 import com.expociencia.messages.Message;
+import com.expociencia.messages.MessageCodec;
+import com.expociencia.messages.TcpFraming;
 
+import java.awt.Dimension;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.io.*;
 import java.util.*;
 
 public class ClientNetworkHandler extends Thread {
     private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
-    private ArrayList<GameObject> gameObjects = new ArrayList<>();
+    private DataOutputStream out;
+    private DataInputStream in;
+    // Formato de las tramas; el mismo MessageCodec que usa el servidor
+    private final MessageCodec codec = BinaryMessageCodec.INSTANCE;
+    private ByteBuffer sendBuffer = ByteBuffer.allocate(64); // Reutilizado en cada envío (bajo el lock de 'out')
+    private List<GameObject> gameObjects = new ArrayList<>();
+    private int boardColumns = GameState.DEFAULT_COLUMNS;
+    private int boardRows = GameState.DEFAULT_ROWS;
+    // Lado de la vista en celdas: en tableros mayores el servidor solo envía la zona alrededor de la cabeza
+    static final int VIEWPORT = 40;
+    private Minimap minimap; // Resumen del tablero entero que llega cada pocos ticks (área de interés)
     private int score = 0;
     private boolean gameOver = false;
+    private boolean gameInProgress = false;
     private int playerId;
     private GameClient client;
     private boolean connected = false;
@@ -23,50 +39,78 @@ public class ClientNetworkHandler extends Thread {
     private static final int MAX_RECONNECT_ATTEMPTS = 3;
     private String serverIp;
     private int serverPort;
-    private Map<Integer, Integer> playerScores = new HashMap<>();
+    // Inmutable: se sustituye entera con cada UPDATE_STATE y se puede entregar sin copiar
+    private Map<Integer, Integer> playerScores = Map.of();
+    // Giros aplicados en local a la espera de que el servidor los confirme
+    private final ClientPrediction prediction = new ClientPrediction();
+    // Últimas fotos, para pintar el resto del tablero interpolado entre ticks
+    private final SnapshotBuffer snapshots = new SnapshotBuffer();
 
     public ClientNetworkHandler(String ip, int port) throws IOException {
         this.serverIp = ip;
         this.serverPort = port;
         try {
-            socket = new Socket(ip, port);
-            out = new ObjectOutputStream(socket.getOutputStream());
-            out.flush();
-            in = new ObjectInputStream(socket.getInputStream());
-            playerId = in.readInt();
-            connected = true;
+            connect();
             System.out.println("Conectado al servidor con ID de jugador: " + playerId);
-            socket.setSoTimeout(10000);
         } catch (IOException e) {
             System.err.println("Connection error: " + e.getMessage());
             throw new IOException("Failed to connect to server at " + ip + ":" + port, e);
         }
     }
 
+    // Abre el socket, se une a la sala pública y espera el ID que asigna el servidor
+    private void connect() throws IOException {
+        socket = new Socket(serverIp, serverPort);
+        socket.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        socket.setSoTimeout(10000);
+
+        Message join = new Message("JOIN_GAME");
+        join.setViewport(VIEWPORT);
+        send(join);
+        Message reply;
+        do {
+            reply = TcpFraming.readMessage(in, codec);
+            if (reply.getAction().equals("ERROR")) {
+                throw new IOException("El servidor rechazó la conexión: " + reply.getError());
+            }
+        } while (!reply.getAction().equals("PLAYER_ID"));
+        playerId = reply.getPlayerId();
+        connected = true;
+    }
+
     @Override
     public void run() {
         try {
             while (connected) {
                 try {
-                    Object obj = in.readObject();
-                    if (obj instanceof Message) {
-                        Message message = (Message) obj;
-                        if (message.getAction().equals("UPDATE_STATE")) {
-                            synchronized (this) {
-                                gameObjects = message.getObjects();
-                                gameOver = message.isGameOver();
-                                playerScores.clear();
-                                playerScores.putAll(message.getPlayerScores());
-                                score = playerScores.getOrDefault(playerId, 0);
+                    Message message = TcpFraming.readMessage(in, codec);
+                    if (message.getAction().equals("UPDATE_STATE")) {
+                        synchronized (this) {
+                            gameObjects = message.getObjects();
+                            if (message.getColumns() > 0) {
+                                boardColumns = message.getColumns();
+                                boardRows = message.getRows();
                             }
-                            updateClient();
-                        } else {
-                            System.err.println("Received unknown object type: " + obj.getClass().getName());
+                            gameOver = message.isGameOver();
+                            gameInProgress = message.isGameInProgress();
+                            playerScores = Map.copyOf(message.getPlayerScores());
+                            score = playerScores.getOrDefault(playerId, 0);
+                        }
+                        long now = System.currentTimeMillis();
+                        Map<Integer, Integer> acks = message.getInputAcks();
+                        prediction.onServerState(message.getObjects(), boardColumns, boardRows, playerId,
+                                message.getTick(), message.getLevel(), acks != null ? acks.getOrDefault(playerId, 0) : 0,
+                                message.isGameInProgress() && !message.isGameOver(), now);
+                        snapshots.add(message.getTick(), message.getObjects(), now);
+                        updateClient();
+                    } else if (message.getAction().equals("MINIMAP")) {
+                        synchronized (this) {
+                            minimap = message.getMinimap();
                         }
                     }
-                } catch (ClassNotFoundException e) {
-                    System.err.println("Error reading object: " + e.getMessage());
-                    e.printStackTrace();
+                    // PING y el resto de mensajes no necesitan respuesta
                 } catch (SocketTimeoutException e) {
                     System.out.println("Tiempo de espera del socket - verificando estado de la conexión");
                     if (!pingServer()) {
@@ -75,6 +119,9 @@ public class ClientNetworkHandler extends Thread {
                 }
             }
         } catch (IOException e) {
+            if (!connected) {
+                return; // disconnect() cerró el socket a propósito
+            }
             System.err.println("Connection lost: " + e.getMessage());
             e.printStackTrace();
             if (!reconnecting && reconnectAttempts < MAX_RECONNECT_ATTEMPTS) {
@@ -90,12 +137,7 @@ public class ClientNetworkHandler extends Thread {
             if (socket.isClosed() || !socket.isConnected()) {
                 return false;
             }
-            synchronized (out) {
-                Message ping = new Message("PING");
-                out.writeObject(ping);
-                out.flush();
-                out.reset();
-            }
+            send(new Message("PING"));
             return true;
         } catch (IOException e) {
             System.err.println("Ping failed: " + e.getMessage());
@@ -112,14 +154,8 @@ public class ClientNetworkHandler extends Thread {
                 if (socket != null && !socket.isClosed()) {
                     socket.close();
                 }
-                socket = new Socket(serverIp, serverPort);
-                out = new ObjectOutputStream(socket.getOutputStream());
-                out.flush();
-                in = new ObjectInputStream(socket.getInputStream());
-                playerId = in.readInt();
-                connected = true;
+                connect();
                 reconnecting = false;
-                socket.setSoTimeout(10000);
                 System.out.println("Reconexión exitosa con ID de jugador: " + playerId);
                 this.run();
             } catch (IOException e) {
@@ -144,8 +180,9 @@ public class ClientNetworkHandler extends Thread {
         }).start();
     }
 
+    // Durante la partida pinta el bucle de GameClient; aquí solo los cambios de lobby y fin de juego
     private void updateClient() {
-        if (client != null) {
+        if (client != null && !isRendering()) {
             SwingUtilities.invokeLater(() -> {
                 client.repaint();
             });
@@ -158,15 +195,15 @@ public class ClientNetworkHandler extends Thread {
             return;
         }
         try {
-            Message message = new Message("PLAYER_INPUT");
-            message.setInput(input);
-            message.setPlayerId(playerId);
-            System.out.println("Enviando entrada: " + input + " para el jugador: " + playerId);
-            synchronized (out) {
-                out.writeObject(message);
-                out.flush();
-                out.reset();
+            Message message;
+            if (input.equals("RESTART")) {
+                message = new Message("RESTART_GAME");
+            } else {
+                message = new Message("PLAYER_INPUT");
+                message.setInput(input);
+                message.setInputSequence(prediction.recordInput(input, System.currentTimeMillis()));
             }
+            send(message);
         } catch (IOException e) {
             System.err.println("Error sending input: " + e.getMessage());
             e.printStackTrace();
@@ -178,22 +215,69 @@ public class ClientNetworkHandler extends Thread {
         }
     }
 
+    // START_GAME, RESTART_GAME...
+    public void sendAction(String action) {
+        try {
+            send(new Message(action));
+        } catch (IOException e) {
+            System.err.println("Error sending action: " + e.getMessage());
+        }
+    }
+
+    private void send(Message message) throws IOException {
+        synchronized (out) {
+            sendBuffer = codec.encode(message, sendBuffer);
+            TcpFraming.write(out, sendBuffer);
+            out.flush();
+        }
+    }
+
     public synchronized ArrayList<GameObject> getGameObjects() {
         return new ArrayList<>(gameObjects);
     }
 
+    // Tablero para el instante 'now': el resto interpolado con retraso y la serpiente propia adelantada
+    public List<GameObject> getRenderObjects(long now) {
+        List<GameObject> objects = snapshots.sample(now, playerId);
+        objects.addAll(prediction.predictSnake(playerId, now));
+        return objects;
+    }
+
+    // La serpiente propia sigue en el tablero (según la última foto)
+    public boolean isOwnSnakeAlive() {
+        return prediction.isSnakeAlive();
+    }
+
+    // Partida en marcha: el tablero cambia aunque no lleguen mensajes
+    public synchronized boolean isRendering() {
+        return gameInProgress && !gameOver;
+    }
+
+    // Tamaño en celdas del tablero de la última foto
+    public synchronized Dimension getBoardSize() {
+        return new Dimension(boardColumns, boardRows);
+    }
+
+    public synchronized Minimap getMinimap() {
+        return minimap;
+    }
+
     public synchronized int getScore(int playerId) {
         return playerScores.getOrDefault(playerId, 0);
     }
 
     public synchronized Map<Integer, Integer> getPlayerScores() {
-        return new HashMap<>(playerScores);
+        return playerScores;
     }
 
     public synchronized boolean isGameOver() {
         return gameOver;
     }
 
+    public synchronized boolean isGameInProgress() {
+        return gameInProgress;
+    }
+
     public int getPlayerId() {
         return playerId;
     }
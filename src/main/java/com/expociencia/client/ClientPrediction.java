@@ -0,0 +1,199 @@
+package com.expociencia.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.expociencia.game.CellKind;
+import com.expociencia.game.GameObject;
+import com.expociencia.game.GameState;
+
+/**
+ * Predicción local de la serpiente propia. Los giros se aplican en pantalla
+ * en cuanto se pulsan, con las mismas reglas de movimiento que GameState,
+ * y cada UPDATE_STATE del servidor es la verdad: se descartan los giros que
+ * ya confirmó y se vuelven a aplicar encima los que aún no ha procesado.
+ *
+ * Solo se predice el avance de la cabeza propia; frutas, crecimiento y
+ * choques los decide siempre el servidor y se corrigen con la siguiente foto.
+ */
+class ClientPrediction {
+    private static final String[] DIRECTIONS = {"UP", "DOWN", "LEFT", "RIGHT"}; // El opuesto de i es i ^ 1
+    private static final int MAX_PREDICTED_TICKS = 6;
+    private static final long STALE_INPUT_MS = 1000; // El servidor la descartó (cola llena, inicio de partida...)
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_TICK_MS = 20;
+    private static final double MAX_TICK_MS = 1000;
+
+    private record PendingInput(int sequence, int direction, long sentAt) {
+    }
+
+    private final ArrayDeque<PendingInput> pending = new ArrayDeque<>();
+    private int nextSequence = 1;
+
+    // Serpiente propia en la última foto del servidor, de cabeza a cola
+    private List<GameObject> serverSnake = new ArrayList<>();
+    private long serverTick = -1;
+    private int level = 1;
+    private int columns = GameState.DEFAULT_COLUMNS;
+    private int rows = GameState.DEFAULT_ROWS;
+    private boolean running = false; // Partida en curso y sin terminar
+    private long tickReceivedAt; // Llegada de la última foto con un tick nuevo
+
+    // Estimaciones: duración de un tick y tiempo desde que se pulsa hasta verlo en una foto
+    private double tickMillis = 150;
+    private double inputDelayMillis = 0;
+
+    // Devuelve la secuencia con la que enviar el giro, o 0 si no es una dirección
+    synchronized int recordInput(String input, long now) {
+        int direction = directionIndex(input);
+        if (direction < 0) {
+            return 0;
+        }
+        int sequence = nextSequence;
+        nextSequence = nextSequence == GameState.MAX_INPUT_SEQUENCE ? 1 : nextSequence + 1;
+        pending.add(new PendingInput(sequence, direction, now));
+        return sequence;
+    }
+
+    // Reconciliación: la foto sustituye a lo predicho y solo quedan los giros sin confirmar
+    synchronized void onServerState(List<GameObject> objects, int columns, int rows, int playerId, long tick,
+                                    int level, int inputAck, boolean running, long now) {
+        if (tick > serverTick) {
+            double sample = (double) (now - tickReceivedAt) / (tick - serverTick);
+            if (serverTick >= 0 && sample >= MIN_TICK_MS && sample <= MAX_TICK_MS) { // Las esperas del lobby no cuentan
+                tickMillis += SMOOTHING * (sample - tickMillis);
+            }
+            serverTick = tick;
+            tickReceivedAt = now;
+        }
+        for (Iterator<PendingInput> it = pending.iterator(); it.hasNext(); ) {
+            PendingInput input = it.next();
+            if (input.sequence() <= inputAck) {
+                if (input.sequence() == inputAck) {
+                    inputDelayMillis += SMOOTHING * ((now - input.sentAt()) - inputDelayMillis);
+                }
+                it.remove();
+            } else if (!running || now - input.sentAt() > STALE_INPUT_MS) {
+                it.remove();
+            }
+        }
+        List<GameObject> snake = new ArrayList<>();
+        for (GameObject obj : objects) {
+            if (obj.getPlayerId() == playerId && obj.getKind().isSnake()) {
+                snake.add(obj);
+            }
+        }
+        serverSnake = snake;
+        this.level = level;
+        this.columns = columns;
+        this.rows = rows;
+        this.running = running;
+    }
+
+    // Segmentos de la serpiente propia adelantada a lo que el servidor mostrará; entre dos ticks
+    // previstos cada segmento se desliza hacia su celda siguiente
+    synchronized List<GameObject> predictSnake(int playerId, long now) {
+        double progress = running ? predictedTicks(now) : 0;
+        if (serverSnake.size() < 2 || progress == 0) {
+            return serverSnake;
+        }
+        List<Integer> cells = new ArrayList<>(serverSnake.size());
+        for (GameObject obj : serverSnake) {
+            cells.add(obj.getY() / GameState.TILE_SIZE * columns + obj.getX() / GameState.TILE_SIZE);
+        }
+        String color = serverSnake.get(0).getColor();
+
+        int steps = (int) progress;
+        List<Integer> next = new ArrayList<>(cells);
+        int moved = moveSnake(cells, steps);
+        if (moved < steps || steps == MAX_PREDICTED_TICKS || moveSnake(next, steps + 1) <= steps) {
+            next = cells; // Sin paso siguiente que anticipar
+        }
+        double alpha = progress - steps;
+        List<GameObject> segments = new ArrayList<>(cells.size());
+        for (int i = 0; i < cells.size(); i++) {
+            int x = (cells.get(i) % columns) * GameState.TILE_SIZE;
+            int y = (cells.get(i) / columns) * GameState.TILE_SIZE;
+            int dx = (next.get(i) % columns) * GameState.TILE_SIZE - x;
+            int dy = (next.get(i) / columns) * GameState.TILE_SIZE - y;
+            if (Math.abs(dx) + Math.abs(dy) == GameState.TILE_SIZE) { // No interpolar al dar la vuelta
+                x += (int) Math.round(dx * alpha);
+                y += (int) Math.round(dy * alpha);
+            }
+            GameObject segment = new GameObject(x, y, i == 0 ? CellKind.SNAKE_HEAD : CellKind.SNAKE_BODY, playerId);
+            segment.setColor(color);
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    // Índice de la última foto: sin recorrer el tablero
+    synchronized boolean isSnakeAlive() {
+        return !serverSnake.isEmpty();
+    }
+
+    // Ticks (con decimales) que el servidor habrá simulado cuando llegue la foto con un giro pulsado ahora
+    private double predictedTicks(long now) {
+        double ticks = (now - tickReceivedAt + inputDelayMillis) / tickMillis;
+        if (!pending.isEmpty()) {
+            ticks = Math.max(ticks, 1); // Un giro pulsado se ve en el acto
+        }
+        return Math.min(ticks, MAX_PREDICTED_TICKS);
+    }
+
+    // Avanza la serpiente (cabeza primero) aplicando los giros pendientes, uno por tick como el
+    // servidor. Devuelve los pasos dados: se para antes de salirse del tablero.
+    private int moveSnake(List<Integer> cells, int steps) {
+        int current = directionOf(cells.get(0), cells.get(1));
+        Iterator<PendingInput> inputs = pending.iterator();
+        int moved = 0;
+        for (int step = 0; step < steps; step++) {
+            while (inputs.hasNext()) {
+                int direction = inputs.next().direction();
+                if (direction != current && direction != (current ^ 1)) {
+                    current = direction;
+                    break;
+                }
+            }
+            int col = cells.get(0) % columns;
+            int row = cells.get(0) / columns;
+            switch (current) {
+                case 0: row--; break;
+                case 1: row++; break;
+                case 2: col--; break;
+                case 3: col++; break;
+            }
+            if (level == 1) {
+                col = Math.floorMod(col, columns);
+                row = Math.floorMod(row, rows);
+            } else if (col < 0 || col >= columns || row < 0 || row >= rows) {
+                break; // Choque con el borde: lo anuncia el servidor
+            }
+            cells.add(0, row * columns + col);
+            cells.remove(cells.size() - 1);
+            moved++;
+        }
+        return moved;
+    }
+
+    // Dirección actual a partir de la cabeza y el primer segmento, teniendo en cuenta la vuelta
+    private int directionOf(int head, int neck) {
+        int dx = head % columns - neck % columns;
+        int dy = head / columns - neck / columns;
+        if (dx != 0) {
+            return (dx == 1 || dx < -1) ? 3 : 2;
+        }
+        return (dy == 1 || dy < -1) ? 1 : 0;
+    }
+
+    private static int directionIndex(String input) {
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            if (DIRECTIONS[i].equals(input)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
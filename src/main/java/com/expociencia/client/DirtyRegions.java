@@ -0,0 +1,245 @@
+package com.expociencia.client;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.expociencia.game.GameObject;
+import com.expociencia.game.GameState;
+
+/**
+ * Calcula qué zonas del tablero cambiaron entre dos cuadros para repintar
+ * solo esas. Cada objeto se resume en un long (casilla, tipo y aspecto);
+ * los dos cuadros se ordenan y se comparan en un solo recorrido, y las
+ * casillas que tocan los objetos distintos se agrupan en rectángulos.
+ * Además de cada casilla se marca su trozo de {@link GameState#CHUNK_SIZE}
+ * casillas de lado: al agrupar solo se recorren los trozos sucios, así en
+ * tableros grandes el coste depende de lo que cambia y no del área.
+ *
+ * Los arrays y rectángulos se reutilizan de un cuadro a otro.
+ */
+class DirtyRegions {
+    // Con más zonas que estas sale más barato repintar el tablero entero
+    private static final int MAX_REGIONS = 12;
+    private static final int SPRITE_SIZE = GameState.TILE_SIZE + 1; // El borde de los segmentos sobresale un píxel
+
+    private static final int KIND_HEAD = 1;
+    private static final int KIND_BODY = 2;
+    private static final int KIND_FRUIT = 3;
+    private static final int KIND_WALL = 4;
+    private static final int LOOK_MASK = 0xFFFFF; // 20 bits: distingue los colores de la paleta y los valores
+
+    private long[] previous = new long[0];
+    private int previousCount = 0;
+    private long[] current = new long[64];
+    private final List<Rectangle> regions = new ArrayList<>();
+    private final List<Rectangle> pool = new ArrayList<>();
+    private final Rectangle board = new Rectangle();
+    private boolean everything = true;
+
+    // --- Casillas y trozos sucios ---
+    private int columns;
+    private int rows;
+    private int chunkColumns;
+    private boolean[] dirtyTiles;
+    private boolean[] dirtyChunks;
+
+    DirtyRegions() {
+        resize(GameState.DEFAULT_COLUMNS, GameState.DEFAULT_ROWS);
+    }
+
+    // Tablero de otro tamaño: se repinta entero en el siguiente cuadro
+    void resize(int columns, int rows) {
+        if (columns == this.columns && rows == this.rows) {
+            return;
+        }
+        this.columns = columns;
+        this.rows = rows;
+        chunkColumns = (columns + GameState.CHUNK_SIZE - 1) / GameState.CHUNK_SIZE;
+        int chunkRows = (rows + GameState.CHUNK_SIZE - 1) / GameState.CHUNK_SIZE;
+        dirtyTiles = new boolean[columns * rows];
+        dirtyChunks = new boolean[chunkColumns * chunkRows];
+        board.setBounds(0, 0, columns * GameState.TILE_SIZE, rows * GameState.TILE_SIZE);
+        everything = true;
+    }
+
+    // Zona fuera de los objetos (marcador, mensajes) que cambió en este cuadro
+    void markArea(int x, int y, int width, int height) {
+        markPixels(x, y, width, height);
+    }
+
+    // Obliga a repintar todo en el siguiente cuadro (primer cuadro, fin de partida...)
+    void markAll() {
+        everything = true;
+    }
+
+    // Regiones en píxeles que difieren del cuadro anterior; la lista vale hasta la siguiente llamada
+    List<Rectangle> update(List<GameObject> objects) {
+        int count = 0;
+        if (current.length < objects.size()) {
+            current = new long[Math.max(objects.size(), current.length * 2)];
+        }
+        for (int i = 0; i < objects.size(); i++) {
+            long key = key(objects.get(i), columns, rows);
+            if (key != 0) {
+                current[count++] = key;
+            }
+        }
+        Arrays.sort(current, 0, count);
+        diff(count);
+
+        long[] swap = previous;
+        previous = current;
+        previousCount = count;
+        current = swap.length > 0 ? swap : new long[previous.length];
+        return collectRegions();
+    }
+
+    // Recorre los dos cuadros ordenados a la vez: lo que solo está en uno de ellos ensucia sus casillas
+    private void diff(int count) {
+        int i = 0;
+        int j = 0;
+        while (i < previousCount || j < count) {
+            if (j == count || (i < previousCount && previous[i] < current[j])) {
+                markKey(previous[i++]);
+            } else if (i == previousCount || current[j] < previous[i]) {
+                markKey(current[j++]);
+            } else {
+                i++;
+                j++;
+            }
+        }
+    }
+
+    private List<Rectangle> collectRegions() {
+        recycle();
+        if (everything) {
+            everything = false;
+            Arrays.fill(dirtyTiles, false);
+            Arrays.fill(dirtyChunks, false);
+            regions.add(board);
+            return regions;
+        }
+        // Tramos horizontales de casillas sucias; un tramo igual al de la fila anterior la alarga.
+        // Los trozos limpios se saltan enteros.
+        for (int band = 0; band * GameState.CHUNK_SIZE < rows; band++) {
+            int firstChunk = band * chunkColumns;
+            if (!anyDirty(firstChunk, firstChunk + chunkColumns)) {
+                continue;
+            }
+            int lastRow = Math.min(rows, (band + 1) * GameState.CHUNK_SIZE);
+            for (int row = band * GameState.CHUNK_SIZE; row < lastRow; row++) {
+                int col = 0;
+                while (col < columns) {
+                    if (!dirtyChunks[firstChunk + col / GameState.CHUNK_SIZE]) {
+                        col = (col / GameState.CHUNK_SIZE + 1) * GameState.CHUNK_SIZE;
+                        continue;
+                    }
+                    if (!dirtyTiles[row * columns + col]) {
+                        col++;
+                        continue;
+                    }
+                    int start = col;
+                    while (col < columns && dirtyTiles[row * columns + col]) {
+                        dirtyTiles[row * columns + col] = false;
+                        col++;
+                    }
+                    addRun(start, col, row);
+                }
+            }
+            Arrays.fill(dirtyChunks, firstChunk, firstChunk + chunkColumns, false);
+        }
+        if (regions.size() > MAX_REGIONS) {
+            recycle();
+            regions.add(board);
+        }
+        return regions;
+    }
+
+    private boolean anyDirty(int fromChunk, int toChunk) {
+        for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+            if (dirtyChunks[chunk]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void recycle() {
+        for (Rectangle region : regions) {
+            if (region != board) {
+                pool.add(region);
+            }
+        }
+        regions.clear();
+    }
+
+    private void addRun(int startCol, int endCol, int row) {
+        int x = startCol * GameState.TILE_SIZE;
+        int width = (endCol - startCol) * GameState.TILE_SIZE;
+        int y = row * GameState.TILE_SIZE;
+        for (Rectangle region : regions) {
+            if (region.x == x && region.width == width && region.y + region.height == y) {
+                region.height += GameState.TILE_SIZE;
+                return;
+            }
+        }
+        Rectangle region = pool.isEmpty() ? new Rectangle() : pool.remove(pool.size() - 1);
+        region.setBounds(x, y, width, GameState.TILE_SIZE);
+        regions.add(region);
+    }
+
+    // Un sprite que empieza en la casilla (col, fila) llega como mucho a la siguiente en cada eje
+    private void markKey(long key) {
+        int tile = (int) (key >>> 32);
+        int col = tile % (columns + 1) - 1;
+        int row = tile / (columns + 1) - 1;
+        markPixels(col * GameState.TILE_SIZE, row * GameState.TILE_SIZE, SPRITE_SIZE, SPRITE_SIZE);
+    }
+
+    private void markPixels(int x, int y, int width, int height) {
+        int firstCol = Math.max(0, Math.floorDiv(x, GameState.TILE_SIZE));
+        int lastCol = Math.min(columns - 1, Math.floorDiv(x + width - 1, GameState.TILE_SIZE));
+        int firstRow = Math.max(0, Math.floorDiv(y, GameState.TILE_SIZE));
+        int lastRow = Math.min(rows - 1, Math.floorDiv(y + height - 1, GameState.TILE_SIZE));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                dirtyTiles[row * columns + col] = true;
+                dirtyChunks[row / GameState.CHUNK_SIZE * chunkColumns + col / GameState.CHUNK_SIZE] = true;
+            }
+        }
+    }
+
+    /**
+     * Casilla de la vista donde empieza el objeto en los 32 bits altos (con
+     * -1 en cada eje para los que asoman por arriba o por la izquierda), y
+     * en los bajos el desplazamiento dentro de la casilla, el tipo y el
+     * aspecto. 0 = no se pinta: también los que quedan fuera de la vista, así
+     * ninguna coordenada, negativa o grande, se confunde con otra casilla.
+     */
+    static long key(GameObject obj, int columns, int rows) {
+        int col = Math.floorDiv(obj.getX(), GameState.TILE_SIZE);
+        int row = Math.floorDiv(obj.getY(), GameState.TILE_SIZE);
+        if (col < -1 || col >= columns || row < -1 || row >= rows) {
+            return 0;
+        }
+        int tile = (row + 1) * (columns + 1) + (col + 1);
+        int offsetX = Math.floorMod(obj.getX(), GameState.TILE_SIZE);
+        int offsetY = Math.floorMod(obj.getY(), GameState.TILE_SIZE);
+        int kind;
+        int look;
+        switch (obj.getKind()) {
+            case SNAKE_HEAD: kind = KIND_HEAD; look = colorHash(obj); break;
+            case SNAKE_BODY: kind = KIND_BODY; look = colorHash(obj); break;
+            case FRUIT: kind = KIND_FRUIT; look = obj.getValue(); break;
+            case WALL: kind = KIND_WALL; look = 0; break;
+            default: return 0;
+        }
+        return (long) tile << 32 | (long) offsetX << 28 | (long) offsetY << 24 | (long) kind << 20 | (look & LOOK_MASK);
+    }
+
+    private static int colorHash(GameObject obj) {
+        return obj.getColor() != null ? obj.getColor().hashCode() : 0;
+    }
+}
@@ -2,9 +2,15 @@ package com.expociencia.client;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import com.expociencia.game.CellKind;
 import com.expociencia.game.GameObject;
 import com.expociencia.game.GameRenderer;
+import com.expociencia.game.GameState;
+import com.expociencia.game.Minimap;
 
 public class GameClient extends JPanel implements KeyListener {
     private ClientNetworkHandler networkHandler;
@@ -12,9 +18,27 @@ public class GameClient extends JPanel implements KeyListener {
     private int playerId;
     private boolean connectedToServer = false;
     private boolean playerEliminated = false;
+    // Bucle de pintado a la frecuencia de la pantalla, independiente del tick del servidor
+    private static final int DEFAULT_REFRESH_RATE = 60;
+    private final Timer renderTimer = new Timer(1000 / refreshRate(), e -> renderFrame());
+
+    // --- Cuadro actual ---
+    // Lo calcula el bucle de pintado; paintComponent solo lo dibuja (entero o una región)
+    private final DirtyRegions dirtyRegions = new DirtyRegions();
+    private List<GameObject> frameObjects = List.of();
+    private Map<Integer, Integer> frameScores = Map.of();
+    private Dimension boardSize = new Dimension(GameState.DEFAULT_COLUMNS, GameState.DEFAULT_ROWS);
+
+    // --- Cámara ---
+    // Si el tablero no cabe en la vista, la cámara sigue a la cabeza propia (en píxeles del tablero)
+    private Dimension viewSize = new Dimension(GameState.DEFAULT_COLUMNS, GameState.DEFAULT_ROWS);
+    private int cameraX = 0;
+    private int cameraY = 0;
+    private Minimap frameMinimap;
+    private boolean renderingFrames = false;
 
     public GameClient(String ip, int port) throws Exception {
-        setPreferredSize(new Dimension(640, 640)); // Aumentado a 40x40 tiles * 16px
+        setPreferredSize(new Dimension(640, 640)); // 40x40 tiles * 16px; cambia si la sala usa otro tablero
         setBackground(Color.black);
         setFocusable(true);
         addKeyListener(this);
@@ -26,6 +50,7 @@ public class GameClient extends JPanel implements KeyListener {
             playerId = networkHandler.getPlayerId();
             connectedToServer = true;
             networkHandler.start();
+            renderTimer.start();
             System.out.println("Cliente inicializado para playerId: " + playerId);
         } catch (Exception e) {
             System.err.println("Falló la inicialización del cliente: " + e.getMessage());
@@ -33,22 +58,115 @@ public class GameClient extends JPanel implements KeyListener {
         }
     }
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        if (connectedToServer) {
-            renderer.render(g, networkHandler.getGameObjects(), networkHandler.getPlayerScores(), networkHandler.isGameOver(), playerId);
+    // Durante la partida: calcula el cuadro y repinta solo las casillas que cambiaron
+    private void renderFrame() {
+        if (!connectedToServer || !networkHandler.isRendering()) {
+            renderingFrames = false; // Lobby y fin de partida se repintan enteros al llegar cada mensaje
+            return;
+        }
+        if (!renderingFrames) {
+            renderingFrames = true;
+            dirtyRegions.markAll(); // Viene del lobby o de la pantalla de fin de partida
+        }
+        nextFrame();
+        for (Rectangle region : dirtyRegions.update(frameObjects)) {
+            paintImmediately(region);
+        }
+    }
 
-            boolean playerSnakeExists = false;
-            for (GameObject obj : networkHandler.getGameObjects()) {
-                if (obj.getType().equals("SNAKE_HEAD") && obj.getPlayerId() == playerId) {
-                    playerSnakeExists = true;
-                    break;
+    private void nextFrame() {
+        Dimension size = networkHandler.getBoardSize();
+        if (!size.equals(boardSize)) {
+            boardSize = size;
+            resizeBoard(size);
+        }
+        Map<Integer, Integer> scores = networkHandler.getPlayerScores();
+        if (scores != frameScores) {
+            Rectangle scoreboard = GameRenderer.getScoreboardBounds(Math.max(scores.size(), frameScores.size()));
+            dirtyRegions.markArea(scoreboard.x, scoreboard.y, scoreboard.width, scoreboard.height);
+        }
+        frameScores = scores;
+        frameObjects = toView(networkHandler.getRenderObjects(System.currentTimeMillis()));
+        playerEliminated = !networkHandler.isOwnSnakeAlive();
+
+        Minimap minimap = fitsInView() ? null : networkHandler.getMinimap();
+        if (minimap != frameMinimap) {
+            Rectangle bounds = renderer.getMinimapBounds(); // El anterior y el nuevo pueden medir distinto
+            dirtyRegions.markArea(bounds.x, bounds.y, bounds.width, bounds.height);
+            renderer.setMinimap(minimap, cameraX, cameraY);
+            bounds = renderer.getMinimapBounds();
+            dirtyRegions.markArea(bounds.x, bounds.y, bounds.width, bounds.height);
+            frameMinimap = minimap;
+        }
+    }
+
+    private boolean fitsInView() {
+        return boardSize.width <= viewSize.width && boardSize.height <= viewSize.height;
+    }
+
+    // Objetos en coordenadas de la vista, con la cabeza propia en el centro y sin salirse del tablero
+    private List<GameObject> toView(List<GameObject> objects) {
+        if (fitsInView()) {
+            return objects;
+        }
+        int viewWidth = viewSize.width * GameState.TILE_SIZE;
+        int viewHeight = viewSize.height * GameState.TILE_SIZE;
+        for (GameObject obj : objects) {
+            if (obj.getKind() == CellKind.SNAKE_HEAD && obj.getPlayerId() == playerId) {
+                int x = Math.max(0, Math.min(boardSize.width * GameState.TILE_SIZE - viewWidth, obj.getX() - viewWidth / 2));
+                int y = Math.max(0, Math.min(boardSize.height * GameState.TILE_SIZE - viewHeight, obj.getY() - viewHeight / 2));
+                if (x != cameraX || y != cameraY) {
+                    cameraX = x;
+                    cameraY = y;
+                    dirtyRegions.markAll(); // Todo se desplaza
+                    renderer.setMinimap(frameMinimap, cameraX, cameraY);
                 }
+                break;
             }
-            playerEliminated = !playerSnakeExists;
+        }
+        List<GameObject> visible = new ArrayList<>(objects.size());
+        for (GameObject obj : objects) {
+            int x = obj.getX() - cameraX;
+            int y = obj.getY() - cameraY;
+            if (x <= -GameState.TILE_SIZE || y <= -GameState.TILE_SIZE || x >= viewWidth || y >= viewHeight) {
+                continue;
+            }
+            GameObject shifted = new GameObject(x, y, obj.getKind(), obj.getPlayerId());
+            shifted.setColor(obj.getColor());
+            shifted.setValue(obj.getValue());
+            visible.add(shifted);
+        }
+        return visible;
+    }
+
+    // La vista es el tablero entero o, si no cabe, VIEWPORT celdas de lado
+    private void resizeBoard(Dimension size) {
+        viewSize = new Dimension(Math.min(size.width, ClientNetworkHandler.VIEWPORT),
+                Math.min(size.height, ClientNetworkHandler.VIEWPORT));
+        cameraX = 0;
+        cameraY = 0;
+        renderer.setBoardSize(viewSize.width, viewSize.height);
+        dirtyRegions.resize(viewSize.width, viewSize.height);
+        setPreferredSize(new Dimension(viewSize.width * GameState.TILE_SIZE, viewSize.height * GameState.TILE_SIZE));
+        // Fuera del pintado actual: la ventana se ajusta al nuevo tablero
+        SwingUtilities.invokeLater(() -> {
+            Window window = SwingUtilities.getWindowAncestor(this);
+            if (window != null) {
+                window.pack();
+            }
+        });
+    }
 
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (connectedToServer) {
+            if (!networkHandler.isRendering()) {
+                nextFrame(); // Sin bucle de pintado: el cuadro se calcula aquí
+            }
+            // El renderer pinta el tablero entero (fondo incluido) recortado a la región pedida
+            renderer.render(g, frameObjects, frameScores, networkHandler.isGameOver(), playerId);
         } else {
+            super.paintComponent(g);
             g.setColor(Color.RED);
             g.setFont(new Font("Arial", Font.BOLD, 24));
             g.drawString("Desconectado del servidor", 100, 250);
@@ -71,20 +189,24 @@ public class GameClient extends JPanel implements KeyListener {
                 playerEliminated = false;
                 return;
             }
+        } else if (!networkHandler.isGameInProgress() && e.getKeyCode() == KeyEvent.VK_ENTER) {
+            // En el lobby: empezar la partida
+            networkHandler.sendAction("START_GAME");
+            return;
         }
 
         switch (e.getKeyCode()) {
             case KeyEvent.VK_UP:
-                networkHandler.sendInput("UP");
+                sendDirection("UP");
                 break;
             case KeyEvent.VK_DOWN:
-                networkHandler.sendInput("DOWN");
+                sendDirection("DOWN");
                 break;
             case KeyEvent.VK_LEFT:
-                networkHandler.sendInput("LEFT");
+                sendDirection("LEFT");
                 break;
             case KeyEvent.VK_RIGHT:
-                networkHandler.sendInput("RIGHT");
+                sendDirection("RIGHT");
                 break;
         }
     }
@@ -95,8 +217,25 @@ public class GameClient extends JPanel implements KeyListener {
     @Override
     public void keyReleased(KeyEvent e) {}
 
+    private static int refreshRate() {
+        try {
+            int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDisplayMode().getRefreshRate();
+            return rate != DisplayMode.REFRESH_RATE_UNKNOWN ? rate : DEFAULT_REFRESH_RATE;
+        } catch (HeadlessException e) {
+            return DEFAULT_REFRESH_RATE;
+        }
+    }
+
+    // El giro ya está aplicado en la predicción: se pinta sin esperar al servidor
+    private void sendDirection(String direction) {
+        networkHandler.sendInput(direction);
+        renderFrame();
+    }
+
     public void connectionLost() {
         connectedToServer = false;
+        renderTimer.stop();
         repaint();
         JOptionPane.showMessageDialog(this,
                 "Se ha perdido la conexión con el servidor.\nReinicia la aplicación para volver a conectar.",
@@ -109,7 +248,7 @@ public class GameClient extends JPanel implements KeyListener {
             if (ip == null || ip.trim().isEmpty()) {
                 System.exit(0);
             }
-            int port = 12345;
+            int port = 12346; // Puerto TCP del servidor (el 12345 es el WebSocket)
             JFrame frame = new JFrame("Snake vs Snakes - Cliente");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             frame.setResizable(false);
@@ -0,0 +1,168 @@
+package com.expociencia.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.expociencia.game.GameObject;
+import com.expociencia.game.GameState;
+
+/**
+ * Búfer de fotos del servidor para pintar a ritmo fijo. Las fotos se ordenan
+ * por tick y se muestran con un pequeño retraso (un tick más el jitter
+ * medido), así casi siempre hay dos fotos alrededor del instante a pintar y
+ * las serpientes se deslizan de una celda a la siguiente en vez de saltar.
+ *
+ * El reloj de reproducción avanza con la duración estimada del tick y se
+ * corrige poco a poco hacia el objetivo; solo salta si se aleja demasiado.
+ */
+class SnapshotBuffer {
+    private static final int CAPACITY = 8;
+    private static final double SMOOTHING = 0.1;
+    private static final double DRIFT_CORRECTION = 0.05; // Fracción del desvío que se corrige en cada cuadro
+    private static final double MAX_DELAY_TICKS = 3;
+    private static final double MIN_TICK_MS = 20;
+    private static final double MAX_TICK_MS = 1000;
+
+    // 'snakes': segmentos de cada jugador de cabeza a cola, indexados al llegar la foto
+    private record Frame(long tick, List<GameObject> objects, Map<Integer, List<GameObject>> snakes) {
+    }
+
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    private long lastArrival;
+    private double tickMillis = 150;
+    private double jitterMillis = 0;
+
+    // Reloj de reproducción en ticks (con decimales); negativo hasta la primera muestra
+    private double renderTick = -1;
+    private long lastSampleAt;
+
+    synchronized void add(long tick, List<GameObject> objects, long now) {
+        Frame last = frames.peekLast();
+        if (last != null && tick <= last.tick()) {
+            if (tick < last.tick()) {
+                frames.clear(); // El servidor empezó de cero: nada que interpolar
+                renderTick = -1;
+            } else {
+                frames.pollLast(); // Cambio estructural en el mismo tick: vale la foto nueva
+            }
+        } else if (last != null) {
+            double interval = (double) (now - lastArrival) / (tick - last.tick());
+            if (interval >= MIN_TICK_MS && interval <= MAX_TICK_MS) { // Las esperas del lobby no cuentan
+                jitterMillis += SMOOTHING * (Math.abs(interval - tickMillis) - jitterMillis);
+                tickMillis += SMOOTHING * (interval - tickMillis);
+            }
+        }
+        if (last == null || tick != last.tick()) {
+            lastArrival = now;
+        }
+        frames.add(new Frame(tick, objects, indexSnakes(objects)));
+        while (frames.size() > CAPACITY) {
+            frames.poll();
+        }
+    }
+
+    // Lista nueva con los objetos interpolados para el instante 'now'; las serpientes de
+    // 'skipPlayerId' se omiten (las pinta la predicción)
+    synchronized List<GameObject> sample(long now, int skipPlayerId) {
+        if (frames.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long latest = frames.peekLast().tick();
+        double target = latest - Math.min(1 + jitterMillis / tickMillis, MAX_DELAY_TICKS);
+        if (renderTick < 0 || renderTick > latest || renderTick < target - MAX_DELAY_TICKS) {
+            renderTick = target;
+        } else {
+            renderTick += (now - lastSampleAt) / tickMillis;
+            renderTick += (target - renderTick) * DRIFT_CORRECTION;
+            renderTick = Math.min(renderTick, latest);
+        }
+        lastSampleAt = now;
+
+        Frame from = null;
+        Frame to = null;
+        for (Frame frame : frames) {
+            if (frame.tick() <= renderTick) {
+                from = frame;
+            } else {
+                to = frame;
+                break;
+            }
+        }
+        if (from == null) {
+            return withoutPlayer(frames.peekFirst().objects(), skipPlayerId);
+        }
+        if (to == null) {
+            return withoutPlayer(from.objects(), skipPlayerId);
+        }
+        double alpha = (renderTick - from.tick()) / (to.tick() - from.tick());
+        return interpolate(from.snakes(), to.objects(), alpha, skipPlayerId);
+    }
+
+    synchronized void clear() {
+        frames.clear();
+        renderTick = -1;
+    }
+
+    private static Map<Integer, List<GameObject>> indexSnakes(List<GameObject> objects) {
+        Map<Integer, List<GameObject>> snakes = new HashMap<>();
+        for (GameObject obj : objects) {
+            if (isSnake(obj)) {
+                snakes.computeIfAbsent(obj.getPlayerId(), id -> new ArrayList<>()).add(obj);
+            }
+        }
+        return snakes;
+    }
+
+    // Frutas y muros de la foto siguiente; cada segmento se desliza desde su posición anterior
+    private static List<GameObject> interpolate(Map<Integer, List<GameObject>> previous, List<GameObject> to,
+                                                double alpha, int skipPlayerId) {
+        List<GameObject> objects = new ArrayList<>(to.size());
+        int owner = Integer.MIN_VALUE;
+        int index = 0;
+        for (GameObject obj : to) {
+            if (!isSnake(obj)) {
+                objects.add(obj);
+                continue;
+            }
+            if (obj.getPlayerId() == skipPlayerId) {
+                continue;
+            }
+            index = obj.getPlayerId() == owner ? index + 1 : 0;
+            owner = obj.getPlayerId();
+            List<GameObject> segments = previous.get(owner);
+            GameObject old = segments != null && index < segments.size() ? segments.get(index) : null;
+            objects.add(old != null ? slide(old, obj, alpha) : obj);
+        }
+        return objects;
+    }
+
+    // El segmento i ocupa en la foto siguiente la celda del segmento i - 1: basta con avanzar hacia ella
+    private static GameObject slide(GameObject from, GameObject to, double alpha) {
+        int dx = to.getX() - from.getX();
+        int dy = to.getY() - from.getY();
+        if (Math.abs(dx) + Math.abs(dy) != GameState.TILE_SIZE) {
+            return to; // Sin moverse, dando la vuelta al tablero o tras perder ticks: se coloca directamente
+        }
+        GameObject segment = new GameObject(from.getX() + (int) Math.round(dx * alpha),
+                from.getY() + (int) Math.round(dy * alpha), to.getKind(), to.getPlayerId());
+        segment.setColor(to.getColor());
+        return segment;
+    }
+
+    private static List<GameObject> withoutPlayer(List<GameObject> objects, int playerId) {
+        List<GameObject> result = new ArrayList<>(objects.size());
+        for (GameObject obj : objects) {
+            if (!(isSnake(obj) && obj.getPlayerId() == playerId)) {
+                result.add(obj);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isSnake(GameObject obj) {
+        return obj.getKind().isSnake();
+    }
+}
@@ -0,0 +1,52 @@
+package com.expociencia.game;
+
+/**
+ * Zona rectangular del tablero, en celdas, alineada a los trozos de
+ * {@link GameState#CHUNK_SIZE}: la parte del tablero que recibe un jugador
+ * con área de interés. Como está alineada, los jugadores con la cabeza en el
+ * mismo trozo comparten zona y el servidor codifica una sola trama para
+ * todos ellos.
+ */
+public record Area(int column, int row, int columns, int rows) {
+
+    /**
+     * Zona que cubre una vista de 'viewport' celdas de lado centrada en la
+     * cabeza (y metida dentro del tablero, como hace la cámara del cliente),
+     * con una celda de margen para el tick que adelanta la predicción.
+     */
+    public static Area around(int headCell, int viewport, int boardColumns, int boardRows) {
+        int firstCol = viewStart(headCell % boardColumns, viewport, boardColumns);
+        int firstRow = viewStart(headCell / boardColumns, viewport, boardRows);
+        int chunkCol = Math.max(0, firstCol - 1) / GameState.CHUNK_SIZE;
+        int chunkRow = Math.max(0, firstRow - 1) / GameState.CHUNK_SIZE;
+        int endCol = chunkEnd(firstCol + viewport, boardColumns);
+        int endRow = chunkEnd(firstRow + viewport, boardRows);
+        int column = chunkCol * GameState.CHUNK_SIZE;
+        int row = chunkRow * GameState.CHUNK_SIZE;
+        return new Area(column, row, endCol - column, endRow - row);
+    }
+
+    // Primera celda de la vista sobre un eje: la cabeza en el centro sin salirse del tablero
+    private static int viewStart(int head, int viewport, int size) {
+        return Math.max(0, Math.min(size - viewport, head - viewport / 2));
+    }
+
+    // Fin (exclusivo) del trozo que contiene la celda 'end', margen incluido
+    private static int chunkEnd(int end, int size) {
+        int last = Math.min(size - 1, end);
+        return Math.min(size, (last / GameState.CHUNK_SIZE + 1) * GameState.CHUNK_SIZE);
+    }
+
+    public boolean contains(int col, int row) {
+        return col >= column && col < column + columns && row >= this.row && row < this.row + rows;
+    }
+
+    public boolean containsCell(int cell, int boardColumns) {
+        return contains(cell % boardColumns, cell / boardColumns);
+    }
+
+    // Coordenadas en píxeles, como las de StateDelta
+    public boolean containsPixel(int x, int y) {
+        return contains(x / GameState.TILE_SIZE, y / GameState.TILE_SIZE);
+    }
+}
@@ -0,0 +1,199 @@
+package com.expociencia.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tablero compacto de una foto: cada serpiente es un array de celdas
+ * empaquetadas (fila * columnas + columna) con su jugador y color una sola
+ * vez, y frutas y muros son arrays de celdas. Lleva sus propias dimensiones,
+ * porque cada partida puede tener un tamaño distinto; el tamaño de cada
+ * casilla es siempre {@link GameState#TILE_SIZE}.
+ *
+ * Es lo que se publica en cada tick y lo que codifican los MessageCodec; los GameObject
+ * solo existen como vista de compatibilidad ({@link #toObjects()}).
+ * Los arrays no se modifican una vez creado.
+ */
+public final class Board {
+
+    public static final Board EMPTY = empty(GameState.DEFAULT_COLUMNS, GameState.DEFAULT_ROWS);
+
+    /**
+     * Una serpiente de la foto: sus celdas de la cabeza a la cola son
+     * cells[offset, offset + length). Las fotos del juego comparten el array
+     * del cuerpo sin copiarlo (ver SnakeBody), así que el array puede ser
+     * mayor que la serpiente; esas posiciones no cambian una vez publicada.
+     */
+    public static final class Snake {
+        private final int playerId;
+        private final String color;
+        private final int[] cells;
+        private final int offset;
+        private final int length;
+
+        public Snake(int playerId, String color, int[] cells) {
+            this(playerId, color, cells, 0, cells.length);
+        }
+
+        public Snake(int playerId, String color, int[] cells, int offset, int length) {
+            this.playerId = playerId;
+            this.color = color;
+            this.cells = cells;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int playerId() {
+            return playerId;
+        }
+
+        public String color() {
+            return color;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        // Segmento i contando desde la cabeza (0 = cabeza)
+        public int cell(int index) {
+            return cells[offset + index];
+        }
+
+        // Copia de cabeza a cola; para recorrerla basta con cell(i)
+        public int[] cells() {
+            return Arrays.copyOfRange(cells, offset, offset + length);
+        }
+    }
+
+    private final int columns;
+    private final int rows;
+    private final List<Snake> snakes;
+    private final int[] fruitCells;
+    private final int[] fruitValues; // Valor de la fruta en la misma posición de 'fruitCells'
+    private final int[] wallCells;
+
+    public Board(int columns, int rows, List<Snake> snakes, int[] fruitCells, int[] fruitValues, int[] wallCells) {
+        this.columns = columns;
+        this.rows = rows;
+        this.snakes = snakes;
+        this.fruitCells = fruitCells;
+        this.fruitValues = fruitValues;
+        this.wallCells = wallCells;
+    }
+
+    // Tablero sin nada (lobby) de las dimensiones dadas
+    public static Board empty(int columns, int rows) {
+        return new Board(columns, rows, List.of(), new int[0], new int[0], new int[0]);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    // Tablero de 40x40 de siempre: los formatos compactos lo codifican como antes
+    public boolean isDefaultSize() {
+        return columns == GameState.DEFAULT_COLUMNS && rows == GameState.DEFAULT_ROWS;
+    }
+
+    public List<Snake> getSnakes() {
+        return snakes;
+    }
+
+    public int[] getFruitCells() {
+        return fruitCells;
+    }
+
+    public int[] getFruitValues() {
+        return fruitValues;
+    }
+
+    public int[] getWallCells() {
+        return wallCells;
+    }
+
+    /**
+     * Lo que ve un jugador con área de interés: frutas, muros y segmentos
+     * dentro de la zona. Todas las serpientes conservan su cabeza (y su
+     * color) aunque quede fuera: la primera celda sigue siendo la cabeza y
+     * el cliente puede aplicar los deltas de las que entren en la zona. Las
+     * dimensiones son las del tablero entero y las celdas no cambian.
+     */
+    public Board crop(Area area) {
+        List<Snake> visible = new ArrayList<>(snakes.size());
+        for (Snake snake : snakes) {
+            int[] kept = new int[snake.length()];
+            int count = 0;
+            for (int i = 0; i < snake.length(); i++) {
+                if (i == 0 || area.containsCell(snake.cell(i), columns)) {
+                    kept[count++] = snake.cell(i);
+                }
+            }
+            visible.add(new Snake(snake.playerId(), snake.color(), Arrays.copyOf(kept, count)));
+        }
+        int[] fruits = new int[fruitCells.length];
+        int[] values = new int[fruitCells.length];
+        int fruitCount = 0;
+        for (int i = 0; i < fruitCells.length; i++) {
+            if (area.containsCell(fruitCells[i], columns)) {
+                fruits[fruitCount] = fruitCells[i];
+                values[fruitCount++] = fruitValues[i];
+            }
+        }
+        int[] walls = Arrays.stream(wallCells).filter(cell -> area.containsCell(cell, columns)).toArray();
+        return new Board(columns, rows, visible, Arrays.copyOf(fruits, fruitCount), Arrays.copyOf(values, fruitCount), walls);
+    }
+
+    // Celdas de serpiente por trozo, para el minimapa de los jugadores con área de interés
+    public Minimap minimap() {
+        int chunkColumns = (columns + GameState.CHUNK_SIZE - 1) / GameState.CHUNK_SIZE;
+        int chunkRows = (rows + GameState.CHUNK_SIZE - 1) / GameState.CHUNK_SIZE;
+        int[] counts = new int[chunkColumns * chunkRows];
+        for (Snake snake : snakes) {
+            for (int i = 0; i < snake.length(); i++) {
+                int cell = snake.cell(i);
+                counts[(cell / columns) / GameState.CHUNK_SIZE * chunkColumns + (cell % columns) / GameState.CHUNK_SIZE]++;
+            }
+        }
+        byte[] snakeCells = new byte[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            snakeCells[i] = (byte) Math.min(255, counts[i]);
+        }
+        return new Minimap(chunkColumns, chunkRows, snakeCells);
+    }
+
+    // Vista de compatibilidad: serpientes (cabeza primero), frutas y muros
+    public List<GameObject> toObjects() {
+        int count = fruitCells.length + wallCells.length;
+        for (Snake snake : snakes) {
+            count += snake.length();
+        }
+        List<GameObject> objects = new ArrayList<>(count);
+        for (Snake snake : snakes) {
+            for (int i = 0; i < snake.length(); i++) {
+                GameObject segment = cellObject(snake.cell(i), i == 0 ? CellKind.SNAKE_HEAD : CellKind.SNAKE_BODY,
+                        snake.playerId());
+                segment.setColor(snake.color());
+                objects.add(segment);
+            }
+        }
+        for (int i = 0; i < fruitCells.length; i++) {
+            GameObject fruit = cellObject(fruitCells[i], CellKind.FRUIT, -1);
+            fruit.setValue(fruitValues[i]);
+            objects.add(fruit);
+        }
+        for (int cell : wallCells) {
+            objects.add(cellObject(cell, CellKind.WALL, -1));
+        }
+        return objects;
+    }
+
+    private GameObject cellObject(int cell, CellKind kind, int playerId) {
+        return new GameObject((cell % columns) * GameState.TILE_SIZE, (cell / columns) * GameState.TILE_SIZE, kind, playerId);
+    }
+}
@@ -0,0 +1,26 @@
+package com.expociencia.game;
+
+/**
+ * Qué ocupa una casilla del tablero. El nombre coincide con el 'type' que
+ * siempre han enviado los mensajes JSON ("SNAKE_HEAD", "FRUIT"...).
+ */
+public enum CellKind {
+    SNAKE_HEAD,
+    SNAKE_BODY,
+    FRUIT,
+    WALL;
+
+    private static final CellKind[] VALUES = values();
+
+    public boolean isSnake() {
+        return this == SNAKE_HEAD || this == SNAKE_BODY;
+    }
+
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    public static CellKind fromCode(int code) {
+        return VALUES[code];
+    }
+}
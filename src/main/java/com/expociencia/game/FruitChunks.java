@@ -0,0 +1,92 @@
+package com.expociencia.game;
+
+import java.util.Arrays;
+
+/**
+ * Frutas repartidas en trozos de {@link GameState#CHUNK_SIZE} x CHUNK_SIZE
+ * celdas. Buscar o quitar la fruta de una celda solo recorre las de su
+ * trozo, así el coste no crece con el tamaño del tablero ni con el número
+ * total de frutas. Cada trozo guarda celdas y valores en arrays que solo
+ * se reservan cuando recibe su primera fruta.
+ *
+ * No es thread-safe: GameState lo usa siempre bajo su lock.
+ */
+class FruitChunks {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final int columns;
+    private final int chunkColumns;
+    private final int[][] cells;
+    private final int[][] values;
+    private final int[] counts;
+    private int total = 0;
+
+    FruitChunks(int columns, int rows) {
+        this.columns = columns;
+        this.chunkColumns = (columns + GameState.CHUNK_SIZE - 1) / GameState.CHUNK_SIZE;
+        int chunkRows = (rows + GameState.CHUNK_SIZE - 1) / GameState.CHUNK_SIZE;
+        this.cells = new int[chunkColumns * chunkRows][];
+        this.values = new int[cells.length][];
+        this.counts = new int[cells.length];
+    }
+
+    int chunkOf(int cell) {
+        return (cell / columns) / GameState.CHUNK_SIZE * chunkColumns + (cell % columns) / GameState.CHUNK_SIZE;
+    }
+
+    void add(int cell, int value) {
+        int chunk = chunkOf(cell);
+        int count = counts[chunk];
+        if (cells[chunk] == null) {
+            cells[chunk] = new int[INITIAL_CAPACITY];
+            values[chunk] = new int[INITIAL_CAPACITY];
+        } else if (count == cells[chunk].length) {
+            cells[chunk] = Arrays.copyOf(cells[chunk], count * 2);
+            values[chunk] = Arrays.copyOf(values[chunk], count * 2);
+        }
+        cells[chunk][count] = cell;
+        values[chunk][count] = value;
+        counts[chunk]++;
+        total++;
+    }
+
+    // Quita la fruta de la celda y devuelve su valor, o -1 si no había ninguna
+    int remove(int cell) {
+        int chunk = chunkOf(cell);
+        int count = counts[chunk];
+        for (int i = 0; i < count; i++) {
+            if (cells[chunk][i] == cell) {
+                int value = values[chunk][i];
+                // Dentro del trozo el orden no importa: la última ocupa el hueco
+                cells[chunk][i] = cells[chunk][count - 1];
+                values[chunk][i] = values[chunk][count - 1];
+                counts[chunk]--;
+                total--;
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    int size() {
+        return total;
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+    }
+
+    // Copia todas las frutas, trozo a trozo, en arrays planos de tamaño size()
+    void copyTo(int[] cellsOut, int[] valuesOut) {
+        int position = 0;
+        for (int chunk = 0; chunk < counts.length && position < total; chunk++) {
+            int count = counts[chunk];
+            if (count > 0) {
+                System.arraycopy(cells[chunk], 0, cellsOut, position, count);
+                System.arraycopy(values[chunk], 0, valuesOut, position, count);
+                position += count;
+            }
+        }
+    }
+}
@@ -1,55 +1,159 @@
 package com.expociencia.game;
 
 import java.awt.*;
+import java.awt.image.VolatileImage;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
+/**
+ * Pinta el tablero sin reservar memoria en cada cuadro: fuentes y colores
+ * son constantes, cada tipo de segmento y cada valor de fruta se dibuja una
+ * vez en una VolatileImage y luego solo se copia, el fondo con los muros es
+ * otra capa que se rehace cuando cambian los muros, y el marcador solo se
+ * recalcula cuando cambian las puntuaciones.
+ */
 public class GameRenderer {
+    private static final Font FRUIT_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font SCORE_FONT = new Font("Arial", Font.BOLD, 14);
+    private static final Font GAME_OVER_FONT = new Font("Arial", Font.BOLD, 48);
+    private static final Font RESTART_FONT = new Font("Arial", Font.PLAIN, 20);
+    private static final Color SCOREBOARD_BACKGROUND = new Color(0, 0, 0, 128); // Fondo semitransparente
+    private static final String GAME_OVER_TEXT = "Game Over";
+    private static final String RESTART_TEXT = "Press ENTER to play again";
+    private static final int MAX_FRUIT_VALUE = 9;
+    private static final int SPRITE_SIZE = GameState.TILE_SIZE + 1; // drawRect pinta el borde un píxel por fuera
+    private static final int SCOREBOARD_X = 5;
+    private static final int SCOREBOARD_Y = 5;
+    private static final int MINIMAP_SCALE = 4; // Píxeles por trozo
+    private static final int MINIMAP_MARGIN = 5;
+    private static final Color MINIMAP_BACKGROUND = new Color(0, 0, 0, 150);
+    // Densidad de serpientes por trozo: más celdas ocupadas, verde más opaco
+    private static final Color[] MINIMAP_LEVELS = {
+            new Color(0, 255, 0, 80), new Color(0, 255, 0, 140), new Color(0, 255, 0, 200), new Color(0, 255, 0, 255)};
 
-    public void render(Graphics g, ArrayList<GameObject> objects, Map<Integer, Integer> playerScores, boolean gameOver, int ownPlayerId) {
+    // --- Capas y sprites cacheados ---
+    private final Map<String, Sprite> headSprites = new HashMap<>();
+    private final Map<String, Sprite> bodySprites = new HashMap<>();
+    private final Sprite[] fruitSprites = new Sprite[MAX_FRUIT_VALUE + 1];
+    private int boardWidth = GameState.DEFAULT_COLUMNS * GameState.TILE_SIZE;
+    private int boardHeight = GameState.DEFAULT_ROWS * GameState.TILE_SIZE;
+    private Sprite background = new Sprite(boardWidth, boardHeight, Transparency.OPAQUE, this::paintBackground);
+    private List<GameObject> walls = new ArrayList<>();
+    private long wallSignature = 0;
+
+    // --- Marcador ---
+    private Map<Integer, Integer> shownScores; // Última copia que se pintó
+    private int shownOwnPlayerId = Integer.MIN_VALUE;
+    private String[] scoreLines = new String[0];
+    private int ownScoreLine = -1;
+    private Sprite scoreboard;
+
+    // --- Minimapa (área de interés) ---
+    private Minimap minimap;
+    private int viewChunkX; // Vista actual en píxeles de trozo del minimapa
+    private int viewChunkY;
+
+    // Zona a repintar del cuadro actual; los objetos fuera de ella no se dibujan
+    private final Rectangle clip = new Rectangle();
+
+    public void render(Graphics g, List<GameObject> objects, Map<Integer, Integer> playerScores, boolean gameOver, int ownPlayerId) {
         Graphics2D g2d = (Graphics2D) g;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
+        // Fondo con los muros: se rehace solo si los muros cambian
+        updateWalls(objects);
+        background.draw(g2d, 0, 0);
+
         // Dibujar todos los objetos del juego
-        for (GameObject obj : objects) {
-            switch (obj.getType()) {
-                case "SNAKE_HEAD":
-                    drawSnakeSegment(g2d, obj, true);
+        clip.setBounds(0, 0, boardWidth, boardHeight);
+        g2d.getClipBounds(clip);
+        for (int i = 0; i < objects.size(); i++) {
+            GameObject obj = objects.get(i);
+            if (!inClip(obj)) {
+                continue;
+            }
+            switch (obj.getKind()) {
+                case SNAKE_HEAD:
+                    snakeSprite(headSprites, obj.getColor(), true).draw(g2d, obj.getX(), obj.getY());
                     break;
-                case "SNAKE_BODY":
-                    drawSnakeSegment(g2d, obj, false);
+                case SNAKE_BODY:
+                    snakeSprite(bodySprites, obj.getColor(), false).draw(g2d, obj.getX(), obj.getY());
                     break;
-                case "FRUIT":
+                case FRUIT:
                     drawFruit(g2d, obj);
                     break;
-                case "WALL":
-                    drawWall(g2d, obj);
+                default:
                     break;
             }
         }
 
         // Dibujar el tablero de puntuaciones
-        drawScoreboard(g2d, playerScores, ownPlayerId);
+        updateScoreboard(playerScores, ownPlayerId);
+        scoreboard.draw(g2d, SCOREBOARD_X, SCOREBOARD_Y);
+        if (minimap != null) {
+            drawMinimap(g2d);
+        }
 
         // Dibujar el mensaje de Game Over
         if (gameOver) {
             g2d.setColor(Color.RED);
-            g2d.setFont(new Font("Arial", Font.BOLD, 48));
-            FontMetrics metrics = g.getFontMetrics();
-            String gameOverMsg = "Game Over";
-            g2d.drawString(gameOverMsg, (GameState.BOARD_WIDTH - metrics.stringWidth(gameOverMsg)) / 2, GameState.BOARD_HEIGHT / 2);
+            g2d.setFont(GAME_OVER_FONT);
+            FontMetrics metrics = g2d.getFontMetrics();
+            g2d.drawString(GAME_OVER_TEXT, (boardWidth - metrics.stringWidth(GAME_OVER_TEXT)) / 2, boardHeight / 2);
 
-            g2d.setFont(new Font("Arial", Font.PLAIN, 20));
-            metrics = g.getFontMetrics();
-            String restartMsg = "Press ENTER to play again";
-            g2d.drawString(restartMsg, (GameState.BOARD_WIDTH - metrics.stringWidth(restartMsg)) / 2, GameState.BOARD_HEIGHT / 2 + 30);
+            g2d.setFont(RESTART_FONT);
+            metrics = g2d.getFontMetrics();
+            g2d.drawString(RESTART_TEXT, (boardWidth - metrics.stringWidth(RESTART_TEXT)) / 2, boardHeight / 2 + 30);
         }
     }
 
-    private Color parseColor(String colorName) {
+    // Tamaño del tablero en celdas; al cambiar se rehace la capa del fondo
+    public void setBoardSize(int columns, int rows) {
+        int width = columns * GameState.TILE_SIZE;
+        int height = rows * GameState.TILE_SIZE;
+        if (width != boardWidth || height != boardHeight) {
+            boardWidth = width;
+            boardHeight = height;
+            background = new Sprite(width, height, Transparency.OPAQUE, this::paintBackground);
+        }
+    }
+
+    /**
+     * Minimapa del tablero entero, con la vista (cámara en píxeles del
+     * tablero) recuadrada; null lo oculta. Solo se usa cuando el tablero no
+     * cabe en la vista.
+     */
+    public void setMinimap(Minimap minimap, int cameraX, int cameraY) {
+        this.minimap = minimap;
+        int chunkPixels = GameState.CHUNK_SIZE * GameState.TILE_SIZE;
+        viewChunkX = cameraX * MINIMAP_SCALE / chunkPixels;
+        viewChunkY = cameraY * MINIMAP_SCALE / chunkPixels;
+    }
+
+    // Zona que ocupa el minimapa, para repintarlo cuando cambia
+    public Rectangle getMinimapBounds() {
+        if (minimap == null) {
+            return new Rectangle();
+        }
+        int width = minimap.chunkColumns() * MINIMAP_SCALE;
+        int height = minimap.chunkRows() * MINIMAP_SCALE;
+        return new Rectangle(boardWidth - width - MINIMAP_MARGIN, boardHeight - height - MINIMAP_MARGIN, width, height);
+    }
+
+    // Zona que ocupa el marcador con 'players' jugadores, para repintarlo cuando cambia
+    public static Rectangle getScoreboardBounds(int players) {
+        return new Rectangle(SCOREBOARD_X, SCOREBOARD_Y, 121, 21 + players * 15);
+    }
+
+    private boolean inClip(GameObject obj) {
+        return obj.getX() < clip.x + clip.width && obj.getX() + SPRITE_SIZE > clip.x
+                && obj.getY() < clip.y + clip.height && obj.getY() + SPRITE_SIZE > clip.y;
+    }
+
+    private static Color parseColor(String colorName) {
         if (colorName == null) return Color.WHITE;
         switch (colorName.toUpperCase()) {
             case "CYAN": return Color.CYAN;
@@ -62,62 +166,229 @@ public class GameRenderer {
         }
     }
 
-    private void drawSnakeSegment(Graphics2D g, GameObject segment, boolean isHead) {
-        g.setColor(parseColor(segment.getColor()));
-        g.fillRect(segment.getX(), segment.getY(), segment.getWidth(), segment.getHeight());
+    // --- Serpientes ---
+
+    // El color se interpreta una sola vez, al crear el sprite
+    private Sprite snakeSprite(Map<String, Sprite> sprites, String colorName, boolean isHead) {
+        Sprite sprite = sprites.get(colorName);
+        if (sprite == null) {
+            Color color = parseColor(colorName);
+            sprite = new Sprite(SPRITE_SIZE, SPRITE_SIZE, Transparency.TRANSLUCENT,
+                    g -> paintSnakeSegment(g, color, isHead));
+            sprites.put(colorName, sprite);
+        }
+        return sprite;
+    }
+
+    private static void paintSnakeSegment(Graphics2D g, Color color, boolean isHead) {
+        int size = GameState.TILE_SIZE;
+        g.setColor(color);
+        g.fillRect(0, 0, size, size);
 
         g.setColor(Color.DARK_GRAY);
-        g.drawRect(segment.getX(), segment.getY(), segment.getWidth(), segment.getHeight());
+        g.drawRect(0, 0, size, size);
 
         if (isHead) {
             g.setColor(Color.BLACK);
-            g.fillOval(segment.getX() + 3, segment.getY() + 3, 4, 4);
-            g.fillOval(segment.getX() + segment.getWidth() - 7, segment.getY() + 3, 4, 4);
+            g.fillOval(3, 3, 4, 4);
+            g.fillOval(size - 7, 3, 4, 4);
         }
     }
 
+    // --- Frutas ---
+
     private void drawFruit(Graphics2D g, GameObject fruit) {
+        int value = fruit.getValue();
+        if (value < 0 || value > MAX_FRUIT_VALUE) {
+            paintFruit(g, fruit.getX(), fruit.getY(), value); // No debería pasar: el servidor genera 1..9
+            return;
+        }
+        if (fruitSprites[value] == null) {
+            fruitSprites[value] = new Sprite(GameState.TILE_SIZE, GameState.TILE_SIZE, Transparency.TRANSLUCENT,
+                    sprite -> paintFruit(sprite, 0, 0, value));
+        }
+        fruitSprites[value].draw(g, fruit.getX(), fruit.getY());
+    }
+
+    private static void paintFruit(Graphics2D g, int x, int y, int value) {
+        int size = GameState.TILE_SIZE;
         g.setColor(Color.RED);
-        g.fillOval(fruit.getX(), fruit.getY(), fruit.getWidth(), fruit.getHeight());
+        g.fillOval(x, y, size, size);
 
         g.setColor(Color.WHITE);
-        g.setFont(new Font("Arial", Font.BOLD, 12));
-        String value = String.valueOf(fruit.getHealth());
+        g.setFont(FRUIT_FONT);
+        String text = String.valueOf(value);
         FontMetrics metrics = g.getFontMetrics();
-        int x = fruit.getX() + (fruit.getWidth() - metrics.stringWidth(value)) / 2;
-        int y = fruit.getY() + ((fruit.getHeight() - metrics.getHeight()) / 2) + metrics.getAscent();
-        g.drawString(value, x, y);
+        int textX = x + (size - metrics.stringWidth(text)) / 2;
+        int textY = y + ((size - metrics.getHeight()) / 2) + metrics.getAscent();
+        g.drawString(text, textX, textY);
     }
 
-    private void drawScoreboard(Graphics2D g, Map<Integer, Integer> scores, int ownPlayerId) {
-        g.setFont(new Font("Arial", Font.BOLD, 14));
-        g.setColor(new Color(0, 0, 0, 128)); // Fondo semitransparente
-        g.fillRect(5, 5, 120, 20 + (scores.size() * 15));
+    // --- Minimapa ---
 
-        g.setColor(Color.WHITE);
-        int y = 20;
-        g.drawString("Scores:", 10, y);
-        y += 20;
+    private void drawMinimap(Graphics2D g) {
+        int left = boardWidth - minimap.chunkColumns() * MINIMAP_SCALE - MINIMAP_MARGIN;
+        int top = boardHeight - minimap.chunkRows() * MINIMAP_SCALE - MINIMAP_MARGIN;
+        g.setColor(MINIMAP_BACKGROUND);
+        g.fillRect(left, top, minimap.chunkColumns() * MINIMAP_SCALE, minimap.chunkRows() * MINIMAP_SCALE);
+        for (int row = 0; row < minimap.chunkRows(); row++) {
+            for (int col = 0; col < minimap.chunkColumns(); col++) {
+                int cells = minimap.snakeCellsAt(col, row);
+                if (cells > 0) {
+                    g.setColor(MINIMAP_LEVELS[Math.min(MINIMAP_LEVELS.length - 1, cells / 16)]);
+                    g.fillRect(left + col * MINIMAP_SCALE, top + row * MINIMAP_SCALE, MINIMAP_SCALE, MINIMAP_SCALE);
+                }
+            }
+        }
+        int chunkPixels = GameState.CHUNK_SIZE * GameState.TILE_SIZE;
+        g.setColor(Color.YELLOW);
+        g.drawRect(left + viewChunkX, top + viewChunkY, boardWidth * MINIMAP_SCALE / chunkPixels,
+                boardHeight * MINIMAP_SCALE / chunkPixels);
+    }
+
+    // --- Fondo y muros ---
 
-        List<Map.Entry<Integer, Integer>> sortedScores = scores.entrySet().stream()
-            .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-            .collect(Collectors.toList());
+    // Firma barata de los muros del cuadro; solo si cambia se copian y se repinta el fondo
+    private void updateWalls(List<GameObject> objects) {
+        long signature = 0;
+        for (int i = 0; i < objects.size(); i++) {
+            GameObject obj = objects.get(i);
+            if (obj.getKind() == CellKind.WALL) {
+                signature = signature * 31 + ((long) obj.getY() << 16 | obj.getX()) + 1;
+            }
+        }
+        if (signature == wallSignature) {
+            return;
+        }
+        List<GameObject> current = new ArrayList<>();
+        for (GameObject obj : objects) {
+            if (obj.getKind() == CellKind.WALL) {
+                current.add(obj);
+            }
+        }
+        walls = current;
+        wallSignature = signature;
+        background.invalidate();
+    }
 
-        for (Map.Entry<Integer, Integer> entry : sortedScores) {
+    private void paintBackground(Graphics2D g) {
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, boardWidth, boardHeight);
+        g.setColor(Color.GRAY);
+        for (GameObject wall : walls) {
+            g.fillRect(wall.getX(), wall.getY(), GameState.TILE_SIZE, GameState.TILE_SIZE);
+        }
+    }
+
+    // --- Marcador ---
+
+    // Ordena y formatea solo cuando llega otra tabla de puntuaciones con valores distintos
+    private void updateScoreboard(Map<Integer, Integer> scores, int ownPlayerId) {
+        if (scoreboard != null && ownPlayerId == shownOwnPlayerId
+                && (scores == shownScores || scores.equals(shownScores))) {
+            shownScores = scores;
+            return;
+        }
+        List<Map.Entry<Integer, Integer>> sortedScores = new ArrayList<>(scores.entrySet());
+        sortedScores.sort(Map.Entry.<Integer, Integer>comparingByValue().reversed());
+
+        String[] lines = new String[sortedScores.size()];
+        int ownLine = -1;
+        for (int i = 0; i < lines.length; i++) {
+            Map.Entry<Integer, Integer> entry = sortedScores.get(i);
             String scoreText = "Player " + entry.getKey() + ": " + entry.getValue();
             if (entry.getKey() == ownPlayerId) {
-                g.setColor(Color.YELLOW);
-                g.drawString("-> " + scoreText, 10, y);
+                lines[i] = "-> " + scoreText;
+                ownLine = i;
             } else {
-                g.setColor(Color.WHITE);
-                g.drawString(scoreText, 10, y);
+                lines[i] = scoreText;
             }
+        }
+        if (scoreboard == null || lines.length != scoreLines.length) {
+            Rectangle bounds = getScoreboardBounds(lines.length);
+            scoreboard = new Sprite(bounds.width, bounds.height, Transparency.TRANSLUCENT, this::paintScoreboard);
+        } else {
+            scoreboard.invalidate();
+        }
+        scoreLines = lines;
+        ownScoreLine = ownLine;
+        shownScores = scores;
+        shownOwnPlayerId = ownPlayerId;
+    }
+
+    // Coordenadas relativas a la esquina del marcador
+    private void paintScoreboard(Graphics2D g) {
+        g.setColor(SCOREBOARD_BACKGROUND);
+        g.fillRect(0, 0, 120, 20 + (scoreLines.length * 15));
+
+        g.setFont(SCORE_FONT);
+        g.setColor(Color.WHITE);
+        int y = 15;
+        g.drawString("Scores:", 5, y);
+        y += 20;
+        for (int i = 0; i < scoreLines.length; i++) {
+            g.setColor(i == ownScoreLine ? Color.YELLOW : Color.WHITE);
+            g.drawString(scoreLines[i], 5, y);
             y += 15;
         }
     }
 
-    private void drawWall(Graphics2D g, GameObject wall) {
-        g.setColor(Color.GRAY);
-        g.fillRect(wall.getX(), wall.getY(), wall.getWidth(), wall.getHeight());
+    /**
+     * Imagen acelerada con su propio pintor. Si el sistema pierde la
+     * VolatileImage (cambio de modo, otra pantalla...) se vuelve a pintar
+     * antes de copiarla.
+     */
+    private static final class Sprite {
+        private final int width;
+        private final int height;
+        private final int transparency;
+        private final Consumer<Graphics2D> painter;
+        private VolatileImage image;
+        private boolean dirty = true;
+
+        Sprite(int width, int height, int transparency, Consumer<Graphics2D> painter) {
+            this.width = width;
+            this.height = height;
+            this.transparency = transparency;
+            this.painter = painter;
+        }
+
+        void invalidate() {
+            dirty = true;
+        }
+
+        void draw(Graphics2D g, int x, int y) {
+            GraphicsConfiguration config = g.getDeviceConfiguration();
+            do {
+                int status = image == null ? VolatileImage.IMAGE_INCOMPATIBLE : image.validate(config);
+                if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                    if (image != null) {
+                        image.flush();
+                    }
+                    image = config.createCompatibleVolatileImage(width, height, transparency);
+                    dirty = true;
+                } else if (status == VolatileImage.IMAGE_RESTORED) {
+                    dirty = true;
+                }
+                if (dirty) {
+                    paint();
+                }
+                g.drawImage(image, x, y, null);
+            } while (image.contentsLost());
+        }
+
+        private void paint() {
+            Graphics2D g = image.createGraphics();
+            try {
+                g.setComposite(AlphaComposite.Clear);
+                g.fillRect(0, 0, width, height);
+                g.setComposite(AlphaComposite.SrcOver);
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                painter.accept(g);
+            } finally {
+                g.dispose();
+            }
+            dirty = false;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package com.expociencia.game;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Foto inmutable del estado al final de un tick (o de un cambio estructural).
+ * GameState la publica en una referencia volatile; los lectores (envíos,
+ * métricas, espectadores) la usan sin tomar el lock del juego ni copiar nada.
+ * Las listas y mapas no se pueden modificar.
+ *
+ * El tablero va en forma compacta ({@link Board}); la lista de GameObject
+ * solo se crea si alguien la pide.
+ */
+public final class GameSnapshot {
+    // Foto inicial, antes de que entre nadie
+    static GameSnapshot empty(Board board) {
+        return new GameSnapshot(board, Map.of(), Map.of(), false, false, 1, 0, Map.of());
+    }
+
+    private final Board board;
+    private volatile List<GameObject> objects; // Vista de compatibilidad, se crea al pedirla
+    private final Map<Integer, Integer> playerScores;
+    private final Map<Integer, String> playerNames;
+    private final boolean gameOver;
+    private final boolean gameInProgress;
+    private final int level;
+    private final long tick;
+    private final Map<Integer, Integer> inputAcks;
+
+    // Las colecciones deben ser copias propias: se envuelven sin volver a copiar
+    GameSnapshot(Board board, Map<Integer, Integer> playerScores, Map<Integer, String> playerNames,
+                 boolean gameOver, boolean gameInProgress, int level, long tick, Map<Integer, Integer> inputAcks) {
+        this.board = board;
+        this.playerScores = Collections.unmodifiableMap(playerScores);
+        this.playerNames = Collections.unmodifiableMap(playerNames);
+        this.gameOver = gameOver;
+        this.gameInProgress = gameInProgress;
+        this.level = level;
+        this.tick = tick;
+        this.inputAcks = Collections.unmodifiableMap(inputAcks);
+    }
+
+    public Board getBoard() {
+        return board;
+    }
+
+    // Si dos hilos la piden a la vez se puede crear dos veces; ambas copias son iguales
+    public List<GameObject> getObjects() {
+        List<GameObject> view = objects;
+        if (view == null) {
+            view = Collections.unmodifiableList(board.toObjects());
+            objects = view;
+        }
+        return view;
+    }
+
+    public Map<Integer, Integer> getPlayerScores() {
+        return playerScores;
+    }
+
+    public Map<Integer, String> getPlayerNames() {
+        return playerNames;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    public boolean isGameInProgress() {
+        return gameInProgress;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    // Ticks simulados desde que se creó la partida; no cambia en las fotos de cambios estructurales
+    public long getTick() {
+        return tick;
+    }
+
+    // Última secuencia de entrada consumida por el tick para cada jugador
+    public Map<Integer, Integer> getInputAcks() {
+        return inputAcks;
+    }
+}
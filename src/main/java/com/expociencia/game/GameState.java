@@ -1,104 +1,179 @@
 package com.expociencia.game;
 
+import com.expociencia.messages.StateDelta;
 import com.expociencia.server.ServerLogger;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 public class GameState {
-    private static final int TILE_SIZE = 16;
-    private static final int ROWS = 40;
-    private static final int COLUMNS = 40;
-    public static final int BOARD_WIDTH = TILE_SIZE * COLUMNS;
-    public static final int BOARD_HEIGHT = TILE_SIZE * ROWS;
+    public static final int TILE_SIZE = 16;
+    // Tablero de siempre; las salas "arena" usan otro tamaño entre MIN_SIZE y MAX_SIZE
+    public static final int DEFAULT_ROWS = 40;
+    public static final int DEFAULT_COLUMNS = 40;
+    public static final int MIN_SIZE = 20;
+    public static final int MAX_SIZE = 500;
+    // Lado en celdas de los trozos en que se reparte el tablero (frutas, zonas a repintar)
+    public static final int CHUNK_SIZE = 16;
+    // En tableros grandes las frutas iniciales crecen con el área: una por cada tantas celdas
+    private static final int CELLS_PER_INITIAL_FRUIT = 400;
+
+    private final int columns;
+    private final int rows;
 
     // --- Estructuras de Datos (sin cambios) ---
-    private final Map<Integer, List<GameObject>> snakes = new ConcurrentHashMap<>();
+    // Cada serpiente es un buffer circular de celdas; los GameObject se crean solo al serializar
+    private final Map<Integer, SnakeBody> snakes = new ConcurrentHashMap<>();
     private final Map<Integer, String> snakeDirections = new ConcurrentHashMap<>();
     private final Map<Integer, Boolean> playerAliveStatus = new ConcurrentHashMap<>();
     private final Map<Integer, Integer> playerScores = new ConcurrentHashMap<>();
     private final Map<Integer, Integer> snakeGrowthCounters = new ConcurrentHashMap<>();
-    private final List<GameObject> fruits = Collections.synchronizedList(new ArrayList<>());
-    private final List<GameObject> walls = Collections.synchronizedList(new ArrayList<>());
+    // Frutas por trozos y muros como celdas empaquetadas, bajo gameStateLock
+    private final FruitChunks fruits;
+    private int[] wallCells = new int[0];
     private final Map<Integer, String> playerNames = new ConcurrentHashMap<>();
     private volatile boolean gameInProgress = false;
 
+    // --- Entradas ---
+    // Giros pendientes de cada jugador; los hilos de red encolan sin tomar gameStateLock
+    // y el tick los consume al empezar, como mucho un giro por tick
+    private static final String[] DIRECTIONS = {"UP", "DOWN", "LEFT", "RIGHT"}; // El opuesto de i es i ^ 1
+    private static final int INPUT_QUEUE_CAPACITY = 4;
+    // Cada entrada de la cola lleva su secuencia y la dirección en los dos bits bajos
+    public static final int MAX_INPUT_SEQUENCE = 0x1FFFFFFF;
+    private final Map<Integer, InputQueue> inputQueues = new ConcurrentHashMap<>();
+    // Última secuencia consumida de cada jugador; el cliente la usa para descartar su predicción
+    private final Map<Integer, Integer> inputAcks = new HashMap<>();
+    private long tick = 0;
+
+    // --- Movimiento por fases ---
+    // Con menos serpientes repartir la fase de propuesta entre hilos cuesta más de lo que ahorra
+    private static final int PARALLEL_MIN_SNAKES = 64;
+    private static final int BLOCKED = -1; // Choca con el borde, un muro o una serpiente
+    private static final int CONTESTED = -2; // Otra cabeza quiere la misma celda
+    // Reutilizados en cada tick, bajo gameStateLock
+    private int[] movingIds = new int[16];
+    private int[] targets = new int[16]; // Celda propuesta de cada jugador de 'movingIds', o BLOCKED / CONTESTED
+    private boolean[] contested = new boolean[16];
+    private final int[] claims; // Cabezas que piden cada celda; a cero entre ticks
+
+    // Índice de ocupación por celda, se mantiene al día con serpientes, frutas y muros
+    private final OccupancyGrid grid;
+
+    // Cambios acumulados desde el último envío (protocolo delta)
+    private StateDelta pendingDelta = new StateDelta();
+    // Cambios estructurales (jugadores, inicio/reinicio) que obligan a enviar un estado completo
+    private boolean keyframeRequired = false;
+
     private int currentLevel = 1;
-    private boolean levelChanged = false;
     private static final int MAX_LEVEL = 5; // Puedes subir esto si quieres más niveles de velocidad
     private boolean gameOver = false;
-    private final Random random = new Random();
+    private final Random random;
     private final Object gameStateLock = new Object();
 
+    // Última foto publicada; se sustituye entera bajo gameStateLock y se lee sin lock
+    private volatile GameSnapshot snapshot;
+
     public GameState() {
+        this(DEFAULT_COLUMNS, DEFAULT_ROWS);
         // No generes frutas ni mapa hasta que el juego comience
         //loadLevelMap(1); // Carga los muros (si el nivel 1 tuviera)
     }
 
+    // Dimensiones ya validadas (ver clampSize)
+    public GameState(int columns, int rows) {
+        this(columns, rows, new Random());
+    }
+
+    // Con semilla fija para escenarios reproducibles (benchmarks)
+    GameState(Random random) {
+        this(DEFAULT_COLUMNS, DEFAULT_ROWS, random);
+    }
+
+    GameState(int columns, int rows, Random random) {
+        this.columns = columns;
+        this.rows = rows;
+        this.random = random;
+        this.grid = new OccupancyGrid(columns, rows);
+        this.fruits = new FruitChunks(columns, rows);
+        this.claims = new int[columns * rows];
+        this.snapshot = GameSnapshot.empty(Board.empty(columns, rows));
+    }
+
+    // Lado de tablero aceptable para una partida; 0 o negativo = el de siempre
+    public static int clampSize(int size) {
+        return size <= 0 ? DEFAULT_COLUMNS : Math.max(MIN_SIZE, Math.min(MAX_SIZE, size));
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
     // --- Lógica de Frutas (sin cambios) ---
     private void spawnInitialFruits(int numberOfFruits) {
         for (int i = 0; i < numberOfFruits; i++) {
             spawnFruit();
         }
     }
-    private void spawnFruit() {
+    // Devuelve la celda de la nueva fruta, o -1 si no queda ninguna celda libre
+    int spawnFruit() {
         synchronized (gameStateLock) {
-            int x, y;
-            boolean positionOccupied;
-            do {
-                positionOccupied = false;
-                x = random.nextInt(COLUMNS) * TILE_SIZE;
-                y = random.nextInt(ROWS) * TILE_SIZE;
-
-                // Evitar que la fruta aparezca sobre una serpiente o sobre otra fruta
-                for (List<GameObject> snake : snakes.values()) {
-                    for (GameObject segment : snake) {
-                        if (segment.getX() == x && segment.getY() == y) {
-                            positionOccupied = true;
-                            break;
-                        }
-                    }
-                    if (positionOccupied) break;
-                }
-                if (!positionOccupied) {
-                    for(GameObject fruit : fruits) {
-                        if (fruit.getX() == x && fruit.getY() == y) {
-                            positionOccupied = true;
-                            break;
-                        }
-                    }
-                }
-                // Evitar muros
-                if (!positionOccupied) {
-                    for (GameObject wall : walls) {
-                        if (wall.getX() == x && wall.getY() == y) {
-                            positionOccupied = true;
-                            break;
-                        }
-                    }
-                }
-            } while (positionOccupied);
+            // Una sola elección entre las celdas libres: sin reintentos aunque el tablero esté casi lleno
+            int cell = grid.randomFreeCell(random);
+            if (cell < 0) {
+                return -1;
+            }
+            int x = (cell % columns) * TILE_SIZE;
+            int y = (cell / columns) * TILE_SIZE;
 
             int fruitValue = random.nextInt(9) + 1; // Frutas con valor de 1 a 9
-            GameObject fruit = new GameObject(x, y, TILE_SIZE, TILE_SIZE, "FRUIT", -1);
-            fruit.setHealth(fruitValue); // Usamos 'health' para guardar el valor
-            fruits.add(fruit);
+            fruits.add(cell, fruitValue);
+            grid.set(cell, OccupancyGrid.FRUIT, -1);
+            pendingDelta.addFruit(x, y, fruitValue);
+            return cell;
+        }
+    }
+
+    // Quita la fruta de la celda (si la hay) y devuelve su valor, o -1 si no había ninguna
+    int removeFruitAt(int cell) {
+        synchronized (gameStateLock) {
+            // Solo se miran las frutas del trozo de la celda
+            int value = fruits.remove(cell);
+            if (value >= 0) {
+                grid.clearIf(cell, OccupancyGrid.FRUIT, -1); // Si una cabeza la ocupó, no se toca
+                pendingDelta.removeFruit((cell % columns) * TILE_SIZE, (cell / columns) * TILE_SIZE);
+            }
+            return value;
         }
     }
 
     // --- Lógica de Jugadores (ACTUALIZADA) ---
     public void addPlayer(int playerId, String playerName) {
         synchronized (gameStateLock) {
-            int startX = (random.nextInt(COLUMNS / 2) + COLUMNS / 4) * TILE_SIZE;
-            int startY = (random.nextInt(ROWS / 2) + ROWS / 4) * TILE_SIZE;
+            // Buscar una posición inicial libre (cabeza y cuerpo), con un número limitado de intentos
+            int startCol, startRow;
+            int attempts = 0;
+            do {
+                startCol = random.nextInt(columns / 2) + columns / 4;
+                startRow = random.nextInt(rows / 2) + rows / 4;
+            } while (++attempts < 20
+                    && !(grid.isEmpty(grid.cellOf(startCol, startRow)) && grid.isEmpty(grid.cellOf(startCol - 1, startRow))));
 
-            List<GameObject> snake = new ArrayList<>();
-            GameObject head = new GameObject(startX, startY, TILE_SIZE, TILE_SIZE, "SNAKE_HEAD", playerId);
-            head.setColor(getRandomColor());
-            snake.add(head);
-            snake.add(new GameObject(startX - TILE_SIZE, startY, TILE_SIZE, TILE_SIZE, "SNAKE_BODY", playerId));
+            SnakeBody snake = new SnakeBody(playerId, getRandomColor());
+            snake.addTail(grid.cellOf(startCol, startRow));
+            snake.addTail(grid.cellOf(startCol - 1, startRow));
 
+            removeSnakeFromGrid(playerId);
             snakes.put(playerId, snake);
+            for (int i = 0; i < snake.length(); i++) {
+                grid.set(snake.cellAt(i), OccupancyGrid.SNAKE, playerId);
+            }
             snakeDirections.put(playerId, "RIGHT");
+            inputQueues.computeIfAbsent(playerId, id -> new InputQueue(INPUT_QUEUE_CAPACITY)).clear();
             playerAliveStatus.put(playerId, true);
             playerScores.putIfAbsent(playerId, 0);
             snakeGrowthCounters.put(playerId, 2);
@@ -109,6 +184,8 @@ public class GameState {
             if (gameOver) {
                 gameOver = false;
             }
+            keyframeRequired = true;
+            publishSnapshot();
             ServerLogger.log("Jugador " + playerId + " (" + playerName + ") añadido.");
         }
     }
@@ -120,34 +197,63 @@ public class GameState {
 
     public void removePlayer(int playerId) {
         synchronized (gameStateLock) {
+            removeSnakeFromGrid(playerId);
             snakes.remove(playerId);
             snakeDirections.remove(playerId);
+            inputQueues.remove(playerId);
+            inputAcks.remove(playerId);
             playerAliveStatus.remove(playerId);
             playerScores.remove(playerId);
             snakeGrowthCounters.remove(playerId);
             playerNames.remove(playerId); // Limpiar nombre
+            keyframeRequired = true;
             ServerLogger.log("Jugador " + playerId + " eliminado.");
             checkGameOver();
+            publishSnapshot();
         }
     }
 
-    public void handleInput(int playerId, String input) {
-        synchronized (gameStateLock) {
+    // Llamado desde los hilos de red: solo encola, nunca espera al tick.
+    // 'sequence' es la secuencia del cliente (0 si no predice); se confirma al consumirla.
+    public void handleInput(int playerId, String input, int sequence) {
+        InputQueue queue = inputQueues.get(playerId);
+        int direction = directionIndex(input);
+        if (queue != null && direction >= 0) {
+            // Si ya hay demasiados giros pendientes, se descarta
+            queue.offer((sequence & MAX_INPUT_SEQUENCE) << 2 | direction);
+        }
+    }
+
+    private static int directionIndex(String input) {
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            if (DIRECTIONS[i].equals(input)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Aplica el primer giro válido de cada jugador vivo; el resto queda para los siguientes ticks
+    private void applyQueuedInputs() {
+        for (Map.Entry<Integer, InputQueue> entry : inputQueues.entrySet()) {
+            int playerId = entry.getKey();
+            InputQueue queue = entry.getValue();
             if (!playerAliveStatus.getOrDefault(playerId, false)) {
                 // Si está muerto, no puede mover la serpiente
-                // (La lógica de RESTART está en GameServer)
-                return;
+                queue.clear();
+                continue;
             }
 
-            String currentDirection = snakeDirections.get(playerId);
-            if (input.equals("UP") && !currentDirection.equals("DOWN")) {
-                snakeDirections.put(playerId, "UP");
-            } else if (input.equals("DOWN") && !currentDirection.equals("UP")) {
-                snakeDirections.put(playerId, "DOWN");
-            } else if (input.equals("LEFT") && !currentDirection.equals("RIGHT")) {
-                snakeDirections.put(playerId, "LEFT");
-            } else if (input.equals("RIGHT") && !currentDirection.equals("LEFT")) {
-                snakeDirections.put(playerId, "RIGHT");
+            int current = directionIndex(snakeDirections.get(playerId));
+            int queued;
+            while ((queued = queue.poll()) != InputQueue.EMPTY) {
+                int direction = queued & 3;
+                inputAcks.put(playerId, queued >>> 2); // Confirmada aunque se ignore: el cliente aplica la misma regla
+                // Ignorar la misma dirección y el giro de 180 grados
+                if (direction != current && direction != (current ^ 1)) {
+                    snakeDirections.put(playerId, DIRECTIONS[direction]);
+                    break;
+                }
             }
         }
     }
@@ -161,116 +267,196 @@ public class GameState {
             }
             if (snakes.isEmpty() && !playerAliveStatus.isEmpty()) {
                 checkGameOver();
+                publishSnapshot();
                 return;
             }
 
             // --- INICIO DE LA LÓGICA DE ACTUALIZACIÓN ---
             // (Este era el código que faltaba)
+            tick++;
+            applyQueuedInputs();
+
+            // Mover las serpientes en dos fases: proponer (en paralelo, sobre la ocupación del
+            // tick anterior) y resolver (en orden de jugador, sin depender del orden del mapa)
+            int moving = collectMovingPlayers();
+            proposeHeads(moving);
+            resolveHeads(moving);
+            commitMoves(moving);
+            checkGameOver();
+            checkLevelUp();
+            publishSnapshot();
+            // --- FIN DE LA LÓGICA DE ACTUALIZACIÓN ---
+        }
+    }
 
-            // Mover cada serpiente
-            for (Integer playerId : snakes.keySet()) {
-                if (!playerAliveStatus.getOrDefault(playerId, false)) {
-                    continue;
-                }
-
-                List<GameObject> snake = snakes.get(playerId);
-                GameObject head = snake.get(0);
-                String direction = snakeDirections.get(playerId);
-
-                int newX = head.getX();
-                int newY = head.getY();
+    // --- Lógica de Colisión y Niveles (Sin cambios) ---
 
-                switch (direction) {
-                    case "UP": newY -= TILE_SIZE; break;
-                    case "DOWN": newY += TILE_SIZE; break;
-                    case "LEFT": newX -= TILE_SIZE; break;
-                    case "RIGHT": newX += TILE_SIZE; break;
-                }
+    // Jugadores vivos ordenados por id en 'movingIds'; devuelve cuántos son
+    private int collectMovingPlayers() {
+        if (movingIds.length < snakes.size()) {
+            movingIds = new int[snakes.size() * 2];
+            targets = new int[movingIds.length];
+            contested = new boolean[movingIds.length];
+        }
+        int count = 0;
+        for (Integer playerId : snakes.keySet()) {
+            if (playerAliveStatus.getOrDefault(playerId, false) && count < movingIds.length) {
+                movingIds[count++] = playerId;
+            }
+        }
+        Arrays.sort(movingIds, 0, count);
+        return count;
+    }
 
-                // Lógica de "Wrap-Around" para el Nivel 1
-                if (currentLevel == 1) {
-                    if (newX < 0) newX = BOARD_WIDTH - TILE_SIZE;
-                    if (newX >= BOARD_WIDTH) newX = 0;
-                    if (newY < 0) newY = BOARD_HEIGHT - TILE_SIZE;
-                    if (newY >= BOARD_HEIGHT) newY = 0;
-                }
+    // Fase 1: cada serpiente calcula su nueva cabeza sin escribir nada compartido
+    private void proposeHeads(int count) {
+        if (count >= PARALLEL_MIN_SNAKES) {
+            IntStream.range(0, count).parallel().forEach(i -> targets[i] = proposeHead(movingIds[i]));
+        } else {
+            for (int i = 0; i < count; i++) {
+                targets[i] = proposeHead(movingIds[i]);
+            }
+        }
+    }
 
-                // Detección de colisiones
-                if (detectCollision(newX, newY, playerId)) {
-                    eliminatePlayer(playerId);
-                    continue;
-                }
+    // Celda a la que avanza la cabeza, o BLOCKED si choca con el borde, un muro o una serpiente
+    private int proposeHead(int playerId) {
+        int head = snakes.get(playerId).headCell();
+        int col = head % columns;
+        int row = head / columns;
+        switch (snakeDirections.get(playerId)) {
+            case "UP": row--; break;
+            case "DOWN": row++; break;
+            case "LEFT": col--; break;
+            case "RIGHT": col++; break;
+        }
 
-                GameObject newHead = new GameObject(newX, newY, TILE_SIZE, TILE_SIZE, "SNAKE_HEAD", playerId);
-                newHead.setColor(head.getColor());
-                head.setType("SNAKE_BODY");
-                snake.add(0, newHead);
-
-                // Comprobar si come fruta
-                Iterator<GameObject> fruitIterator = fruits.iterator();
-                while (fruitIterator.hasNext()) {
-                    GameObject fruit = fruitIterator.next();
-                    if (newHead.getX() == fruit.getX() && newHead.getY() == fruit.getY()) {
-                        int fruitValue = fruit.getHealth();
-                        playerScores.compute(playerId, (k, v) -> v == null ? fruitValue : v + fruitValue);
-                        snakeGrowthCounters.compute(playerId, (k, v) -> v == null ? fruitValue : v + fruitValue);
-
-                        fruitIterator.remove();
-                        spawnFruit();
-                        break;
-                    }
-                }
+        // Lógica de "Wrap-Around" para el Nivel 1
+        if (currentLevel == 1) {
+            col = Math.floorMod(col, columns);
+            row = Math.floorMod(row, rows);
+        } else if (col < 0 || col >= columns || row < 0 || row >= rows) {
+            return BLOCKED; // Colisión con los bordes del tablero (solo a partir del nivel 2)
+        }
 
-                // Gestionar crecimiento
-                if (snakeGrowthCounters.getOrDefault(playerId, 0) > 0) {
-                    snakeGrowthCounters.compute(playerId, (k, v) -> v - 1);
-                } else {
-                    snake.remove(snake.size() - 1);
-                }
+        // Muros y serpientes: una sola consulta al índice de ocupación
+        int cell = grid.cellOf(col, row);
+        int kind = grid.kindAt(cell);
+        if (kind == OccupancyGrid.WALL) {
+            return BLOCKED;
+        }
+        if (kind == OccupancyGrid.SNAKE) {
+            // La punta de una cola que no crece queda libre este tick, sea propia o ajena;
+            // la fase de resolución comprueba que su dueño no coma justo ahora
+            int owner = grid.ownerAt(cell);
+            SnakeBody other = snakes.get(owner);
+            if (other == null || other.tailCell() != cell || snakeGrowthCounters.getOrDefault(owner, 0) > 0) {
+                return BLOCKED;
             }
-            checkGameOver();
-            checkLevelUp();
-            // --- FIN DE LA LÓGICA DE ACTUALIZACIÓN ---
         }
+        return cell;
     }
 
-    // --- Lógica de Colisión y Niveles (Sin cambios) ---
+    // Fase 2: choques entre cabezas del mismo tick, sin favorecer a nadie
+    private void resolveHeads(int count) {
+        // Dos o más cabezas en la misma celda (también por una fruta): mueren todas
+        for (int i = 0; i < count; i++) {
+            if (targets[i] >= 0) {
+                claims[targets[i]]++;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            contested[i] = targets[i] >= 0 && claims[targets[i]] > 1;
+        }
+        for (int i = 0; i < count; i++) {
+            if (targets[i] >= 0) {
+                claims[targets[i]] = 0;
+            }
+        }
+        // Con los contestados ya decididos: la cola de quien come este tick no se mueve
+        for (int i = 0; i < count; i++) {
+            int cell = targets[i];
+            if (contested[i]) {
+                targets[i] = CONTESTED;
+            } else if (cell >= 0 && grid.kindAt(cell) == OccupancyGrid.SNAKE && tailStays(grid.ownerAt(cell), count)) {
+                targets[i] = BLOCKED;
+            }
+        }
+    }
 
-    private boolean detectCollision(int x, int y, int playerId) {
-        // Colisión con los bordes del tablero (solo a partir del nivel 2)
-        if (currentLevel > 1 && (x < 0 || x >= BOARD_WIDTH || y < 0 || y >= BOARD_HEIGHT)) {
-            return true;
+    // La cola del dueño no se mueve si este tick come (su cabeza propuesta está en una fruta y nadie
+    // se la disputa). Si el dueño muere, su cuerpo desaparece y la celda queda libre igualmente.
+    private boolean tailStays(int owner, int count) {
+        int index = Arrays.binarySearch(movingIds, 0, count, owner);
+        if (index < 0 || contested[index]) {
+            return false;
         }
+        int target = targets[index]; // Una propuesta a fruta nunca pasa a BLOCKED en este recorrido
+        return target >= 0 && grid.kindAt(target) == OccupancyGrid.FRUIT;
+    }
 
-        // Colisión con los muros del nivel
-        for (GameObject wall : walls) {
-            if (wall.getX() == x && wall.getY() == y) {
-                return true;
+    // Fase 3: aplicar eliminaciones y movimientos en orden de jugador
+    private void commitMoves(int count) {
+        for (int i = 0; i < count; i++) {
+            if (targets[i] < 0) {
+                eliminatePlayer(movingIds[i]);
             }
         }
+        int eaten = 0;
+        for (int i = 0; i < count; i++) {
+            int headCell = targets[i];
+            if (headCell < 0) {
+                continue;
+            }
+            int playerId = movingIds[i];
+            SnakeBody snake = snakes.get(playerId);
+            snake.addHead(headCell);
+            pendingDelta.addHead(playerId, (headCell % columns) * TILE_SIZE, (headCell / columns) * TILE_SIZE);
+            boolean ateFruit = grid.kindAt(headCell) == OccupancyGrid.FRUIT;
+            grid.set(headCell, OccupancyGrid.SNAKE, playerId);
+
+            // Comprobar si come fruta (el índice ya nos dice si hay una en la celda)
+            int fruitValue = ateFruit ? removeFruitAt(headCell) : -1;
+            if (fruitValue >= 0) {
+                playerScores.compute(playerId, (k, v) -> v == null ? fruitValue : v + fruitValue);
+                snakeGrowthCounters.compute(playerId, (k, v) -> v == null ? fruitValue : v + fruitValue);
+                pendingDelta.setScore(playerId, playerScores.get(playerId));
+                eaten++;
+            }
 
-        for (Map.Entry<Integer, List<GameObject>> entry : snakes.entrySet()) {
-            List<GameObject> snake = entry.getValue();
-            for (int i = 0; i < snake.size(); i++) {
-                GameObject segment = snake.get(i);
-                if (segment.getX() == x && segment.getY() == y) {
-                    if (entry.getKey().equals(playerId) && i == snake.size() - 1) {
-                        // Es la punta de la cola propia, que se moverá, así que no es colisión
-                        continue;
-                    }
-                    return true;
+            // Gestionar crecimiento
+            if (snakeGrowthCounters.getOrDefault(playerId, 0) > 0) {
+                snakeGrowthCounters.compute(playerId, (k, v) -> v - 1);
+            } else {
+                int tailCell = snake.removeTail();
+                pendingDelta.addTail(playerId, (tailCell % columns) * TILE_SIZE, (tailCell / columns) * TILE_SIZE);
+                if (tailCell != headCell) { // La cabeza pudo ocupar la celda que deja la cola
+                    grid.clearIf(tailCell, OccupancyGrid.SNAKE, playerId);
                 }
             }
         }
-        return false;
+        // Las frutas nuevas aparecen cuando ya se movieron todas: no caen en una celda recién liberada a medias
+        for (int i = 0; i < eaten; i++) {
+            spawnFruit();
+        }
     }
 
     private void eliminatePlayer(int playerId) {
         playerAliveStatus.put(playerId, false);
+        removeSnakeFromGrid(playerId);
         snakes.remove(playerId); // Eliminar la serpiente del tablero
+        pendingDelta.addEliminated(playerId);
         ServerLogger.log("Jugador " + playerId + " eliminado.");
     }
 
+    private void removeSnakeFromGrid(int playerId) {
+        SnakeBody snake = snakes.get(playerId);
+        if (snake == null) return;
+        for (int i = 0; i < snake.length(); i++) {
+            grid.clearIf(snake.cellAt(i), OccupancyGrid.SNAKE, playerId);
+        }
+    }
+
     private void checkGameOver() {
         if (playerAliveStatus.isEmpty()) return;
 
@@ -279,9 +465,11 @@ public class GameState {
 
         if (totalPlayers > 1 && alivePlayers <= 1) {
             gameOver = true;
+            keyframeRequired = true;
             ServerLogger.log("Fin del juego. Solo queda un jugador o ninguno.");
         } else if (totalPlayers == 1 && alivePlayers == 0) {
             gameOver = true;
+            keyframeRequired = true;
             ServerLogger.log("Fin del juego. El único jugador ha sido eliminado.");
         }
     }
@@ -296,7 +484,7 @@ public class GameState {
 
         if (totalScore >= scoreThreshold) {
             currentLevel++;
-            levelChanged = true; // Avisa a GameServer para que acelere
+            // Room mira el nivel en cada tick y ajusta el intervalo de su bucle
             ServerLogger.log("Subiendo a Nivel de Velocidad " + currentLevel);
 
             // --- CAMBIO AQUÍ ---
@@ -312,16 +500,11 @@ public class GameState {
         return currentLevel;
     }
 
-    public boolean hasLevelChanged() {
-        if (levelChanged) {
-            levelChanged = false; // Resetear bandera después de leerla
-            return true;
-        }
-        return false;
-    }
-
     private void loadLevelMap(int level) {
-        walls.clear();
+        for (int cell : wallCells) {
+            grid.clearIf(cell, OccupancyGrid.WALL, -1);
+        }
+        int[] walls = new int[0];
         switch (level) {
             case 1:
                 // Nivel 1: Sin muros (Wraparound)
@@ -330,7 +513,11 @@ public class GameState {
                 // Si por algún error subimos de nivel, no hacemos nada
                 break;
         }
-        ServerLogger.log("Mapa para el Nivel " + level + " cargado con " + walls.size() + " muros.");
+        for (int cell : walls) {
+            grid.set(cell, OccupancyGrid.WALL, -1);
+        }
+        wallCells = walls;
+        ServerLogger.log("Mapa para el Nivel " + level + " cargado con " + walls.length + " muros.");
     }
 
     // --- NUEVAS FUNCIONES DE ESTADO ---
@@ -342,10 +529,11 @@ public class GameState {
             gameInProgress = true;
             gameOver = false;
             currentLevel = 1;
-            levelChanged = false;
 
             // Cargar mapa y frutas AHORA
             // (Asegúrate de que los jugadores existentes no tengan puntajes)
+            // Los giros pulsados en el lobby no cuentan
+            inputQueues.values().forEach(InputQueue::clear);
             for (Integer playerId : playerScores.keySet()) {
                 playerScores.put(playerId, 0);
                 snakeGrowthCounters.put(playerId, 2);
@@ -353,7 +541,10 @@ public class GameState {
             }
 
             loadLevelMap(1);
-            spawnInitialFruits(5 + playerNames.size()); // Más frutas si hay más jugadores
+            // Más frutas si hay más jugadores, y en tableros grandes según el área
+            spawnInitialFruits(Math.max(5 + playerNames.size(), columns * rows / CELLS_PER_INITIAL_FRUIT));
+            keyframeRequired = true;
+            publishSnapshot();
         }
     }
 
@@ -368,55 +559,122 @@ public class GameState {
             playerScores.clear();
             snakeGrowthCounters.clear();
             fruits.clear();
-            walls.clear();
+            wallCells = new int[0];
             playerNames.clear(); // Limpiar nombres
+            grid.clearAll();
+            keyframeRequired = true;
 
             // --- Resetear Banderas ---
             gameInProgress = false; // Volver al Lobby
             gameOver = false;
             currentLevel = 1;
-            levelChanged = false;
 
             // Re-añadir jugadores (para que estén listos para la siguiente ronda)
             for (int id : playerIds) {
                 addPlayer(id, names.getOrDefault(id, "Player " + id));
             }
 
+            publishSnapshot(); // También sin jugadores que re-añadir
             ServerLogger.log("Juego reiniciado. Volviendo al lobby.");
         }
     }
 
-    // --- Getters (ACTUALIZADOS) ---
+    // --- Escenarios para benchmarks ---
 
-    public ArrayList<GameObject> getGameObjects() {
+    // Partida en curso y sin frutas, con una serpiente por jugador en las celdas dadas
+    // (cabeza primero) avanzando a la derecha. Sin frutas las longitudes no cambian,
+    // así cada update() del benchmark hace el mismo trabajo.
+    void startScenario(List<int[]> snakeCells) {
         synchronized (gameStateLock) {
-            ArrayList<GameObject> objects = new ArrayList<>();
-            // Solo mostrar objetos si el juego está en marcha O terminado
-            // (pero no en el lobby)
-            if (gameInProgress || gameOver) {
-                for (List<GameObject> snake : snakes.values()) {
-                    objects.addAll(snake);
+            resetGame();
+            for (int playerId = 0; playerId < snakeCells.size(); playerId++) {
+                SnakeBody snake = new SnakeBody(playerId, getRandomColor());
+                for (int cell : snakeCells.get(playerId)) {
+                    snake.addTail(cell);
+                    grid.set(cell, OccupancyGrid.SNAKE, playerId);
                 }
-                objects.addAll(fruits);
-                objects.addAll(walls);
+                snakes.put(playerId, snake);
+                snakeDirections.put(playerId, "RIGHT");
+                inputQueues.put(playerId, new InputQueue(INPUT_QUEUE_CAPACITY));
+                playerAliveStatus.put(playerId, true);
+                playerScores.put(playerId, 0);
+                snakeGrowthCounters.put(playerId, 0);
+                playerNames.put(playerId, "P" + playerId);
             }
-            return objects;
+            gameInProgress = true;
+            keyframeRequired = true;
+            publishSnapshot();
         }
     }
 
-    public Map<Integer, Integer> getPlayerScores() {
+    // --- Protocolo delta ---
+
+    // Devuelve los cambios acumulados desde la última llamada y empieza un delta nuevo
+    public StateDelta drainDelta() {
         synchronized (gameStateLock) {
-            return new HashMap<>(playerScores);
+            StateDelta delta = pendingDelta;
+            pendingDelta = new StateDelta();
+            return delta;
         }
     }
 
-    // Nuevo getter para nombres
-    public Map<Integer, String> getPlayerNames() {
+    public boolean consumeKeyframeRequired() {
         synchronized (gameStateLock) {
-            return new HashMap<>(playerNames);
+            boolean required = keyframeRequired;
+            keyframeRequired = false;
+            return required;
         }
     }
 
+    // --- Getters (ACTUALIZADOS) ---
+
+    // Foto del estado tras el último tick o cambio estructural; no toma el lock
+    public GameSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public Board getBoard() {
+        return snapshot.getBoard();
+    }
+
+    // Vista de compatibilidad de la última foto
+    public List<GameObject> getGameObjects() {
+        return snapshot.getObjects();
+    }
+
+    // Llamar siempre con gameStateLock
+    private void publishSnapshot() {
+        Board board = Board.empty(columns, rows);
+        // Solo mostrar objetos si el juego está en marcha O terminado
+        // (pero no en el lobby)
+        if (gameInProgress || gameOver) {
+            List<Board.Snake> boardSnakes = new ArrayList<>(snakes.size());
+            for (SnakeBody snake : snakes.values()) {
+                boardSnakes.add(snake.snapshot()); // Sin copiar el cuerpo
+            }
+            int[] fruitCells = new int[fruits.size()];
+            int[] fruitValues = new int[fruits.size()];
+            fruits.copyTo(fruitCells, fruitValues);
+            board = new Board(columns, rows, boardSnakes, fruitCells, fruitValues, wallCells);
+        }
+        snapshot = new GameSnapshot(board, new HashMap<>(playerScores), new HashMap<>(playerNames),
+                gameOver, gameInProgress, currentLevel, tick, new HashMap<>(inputAcks));
+    }
+
+    // Para las pruebas: el índice de ocupación tal como lo deja el último tick
+    OccupancyGrid getGrid() {
+        return grid;
+    }
+
+    public Map<Integer, Integer> getPlayerScores() {
+        return snapshot.getPlayerScores();
+    }
+
+    // Nuevo getter para nombres
+    public Map<Integer, String> getPlayerNames() {
+        return snapshot.getPlayerNames();
+    }
+
     public boolean isGameOver() {
         return gameOver;
     }
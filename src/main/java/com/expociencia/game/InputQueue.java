@@ -0,0 +1,74 @@
+package com.expociencia.game;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cola circular acotada de entradas de un jugador: varios productores (los
+ * hilos de red) y un único consumidor (el tick, bajo el lock de GameState).
+ * Encolar nunca bloquea ni toma el lock del juego; si la cola está llena la
+ * entrada se descarta.
+ *
+ * Cada hueco guarda un número de secuencia que indica si está libre para
+ * la vuelta actual del productor o ya tiene un valor para el consumidor.
+ */
+final class InputQueue {
+    static final int EMPTY = -1;
+
+    private final int[] values;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // Siguiente posición a escribir (productores)
+    private long head = 0; // Siguiente posición a leer (solo el consumidor)
+
+    // 'capacity' debe ser potencia de dos
+    InputQueue(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("La capacidad debe ser potencia de dos: " + capacity);
+        }
+        values = new int[capacity];
+        sequences = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    boolean offer(int value) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    values[index] = value;
+                    sequences.set(index, pos + 1); // Publica el valor al consumidor
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false; // Llena: el consumidor aún no liberó este hueco
+            } else {
+                pos = tail.get(); // Otro productor se adelantó
+            }
+        }
+    }
+
+    // Devuelve EMPTY si no hay entradas pendientes
+    int poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return EMPTY;
+        }
+        int value = values[index];
+        sequences.set(index, head + mask + 1); // Libera el hueco para la siguiente vuelta
+        head++;
+        return value;
+    }
+
+    void clear() {
+        while (poll() != EMPTY) {
+            // Descartar
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.expociencia.game;
+
+/**
+ * Resumen del tablero entero para los jugadores que solo reciben su zona:
+ * por cada trozo de {@link GameState#CHUNK_SIZE} x CHUNK_SIZE celdas, cuántas
+ * ocupan serpientes (como byte sin signo, saturado en 255). Fila a fila,
+ * igual que las celdas.
+ */
+public record Minimap(int chunkColumns, int chunkRows, byte[] snakeCells) {
+
+    public int snakeCellsAt(int chunkCol, int chunkRow) {
+        return snakeCells[chunkRow * chunkColumns + chunkCol] & 0xFF;
+    }
+}
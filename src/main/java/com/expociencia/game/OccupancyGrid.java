@@ -0,0 +1,135 @@
+package com.expociencia.game;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Índice de ocupación del tablero: una celda por tile, guardando el tipo de
+ * objeto y el dueño en un solo int. Permite resolver colisiones y colocar
+ * frutas en O(1) en lugar de recorrer todas las serpientes.
+ *
+ * Las celdas vacías se mantienen además en un conjunto indexado (array denso
+ * más la posición de cada celda en él, con borrado por intercambio con la
+ * última), así elegir una celda libre al azar es una sola consulta aunque el
+ * tablero esté casi lleno.
+ */
+class OccupancyGrid {
+    static final int EMPTY = 0;
+    static final int SNAKE = 1;
+    static final int FRUIT = 2;
+    static final int WALL = 3;
+
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    private final int columns;
+    private final int rows;
+    private final int[] cells;
+
+    // --- Celdas libres ---
+    private final int[] freeCells; // Las 'freeCount' primeras posiciones son las celdas vacías
+    private final int[] freeIndex; // Posición de cada celda en 'freeCells', o -1 si está ocupada
+    private int freeCount;
+
+    OccupancyGrid(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        this.cells = new int[columns * rows];
+        this.freeCells = new int[cells.length];
+        this.freeIndex = new int[cells.length];
+        resetFreeCells();
+    }
+
+    int cellOf(int col, int row) {
+        return row * columns + col;
+    }
+
+    int size() {
+        return cells.length;
+    }
+
+    int kindAt(int cell) {
+        return cells[cell] & KIND_MASK;
+    }
+
+    // El dueño se guarda desplazado en +1 para que -1 (frutas, muros) quepa como 0
+    int ownerAt(int cell) {
+        return (cells[cell] >>> KIND_BITS) - 1;
+    }
+
+    boolean isEmpty(int cell) {
+        return cells[cell] == EMPTY;
+    }
+
+    void set(int cell, int kind, int owner) {
+        cells[cell] = ((owner + 1) << KIND_BITS) | kind;
+        markOccupied(cell);
+    }
+
+    void clear(int cell) {
+        cells[cell] = EMPTY;
+        markFree(cell);
+    }
+
+    // Solo libera la celda si sigue perteneciendo al objeto indicado
+    void clearIf(int cell, int kind, int owner) {
+        if (kindAt(cell) == kind && ownerAt(cell) == owner) {
+            clear(cell);
+        }
+    }
+
+    void clearAll() {
+        Arrays.fill(cells, EMPTY);
+        resetFreeCells();
+    }
+
+    int freeCount() {
+        return freeCount;
+    }
+
+    // Celda vacía al azar en una sola elección, o -1 si el tablero está lleno
+    int randomFreeCell(Random random) {
+        return freeCount == 0 ? -1 : freeCells[random.nextInt(freeCount)];
+    }
+
+    // Celda libre en la posición 'index' (de 0 a freeCount() - 1); para comprobar el índice en las pruebas
+    int freeCellAt(int index) {
+        return freeCells[index];
+    }
+
+    private void markOccupied(int cell) {
+        int index = freeIndex[cell];
+        if (index < 0) {
+            return;
+        }
+        // Borrado por intercambio: la última celda libre pasa al hueco
+        int last = freeCells[--freeCount];
+        freeCells[index] = last;
+        freeIndex[last] = index;
+        freeIndex[cell] = -1;
+    }
+
+    private void markFree(int cell) {
+        if (freeIndex[cell] >= 0) {
+            return;
+        }
+        freeCells[freeCount] = cell;
+        freeIndex[cell] = freeCount++;
+    }
+
+    private void resetFreeCells() {
+        for (int cell = 0; cell < cells.length; cell++) {
+            freeCells[cell] = cell;
+            freeIndex[cell] = cell;
+        }
+        freeCount = cells.length;
+    }
+
+    int getColumns() {
+        return columns;
+    }
+
+    int getRows() {
+        return rows;
+    }
+}
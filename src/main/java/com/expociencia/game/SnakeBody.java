@@ -0,0 +1,96 @@
+package com.expociencia.game;
+
+/**
+ * Cuerpo de una serpiente como celdas empaquetadas (fila * columnas +
+ * columna) en cells[head, head + length), de la cabeza a la cola. Mover la
+ * serpiente es O(1): la nueva cabeza se escribe justo delante (el array se
+ * llena hacia el principio) y la cola solo acorta la longitud.
+ *
+ * Así las fotos pueden compartir el array sin copiarlo ({@link #snapshot()}):
+ * una vez publicada, una posición no se vuelve a escribir, porque las
+ * cabezas nuevas van siempre por delante de cualquier foto anterior. Cuando
+ * no queda sitio delante, el cuerpo se copia a un array nuevo (con holgura
+ * para tantos ticks como celdas tiene) y el viejo queda para las fotos que
+ * aún lo usen.
+ */
+class SnakeBody {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int playerId;
+    private final String color;
+    private int[] cells = new int[INITIAL_CAPACITY];
+    private int head = INITIAL_CAPACITY / 2; // Índice de la cabeza: sitio delante para moverse y detrás para addTail
+    private int length = 0;
+
+    SnakeBody(int playerId, String color) {
+        this.playerId = playerId;
+        this.color = color;
+    }
+
+    void addHead(int cell) {
+        if (head == 0) {
+            relocate();
+        }
+        cells[--head] = cell;
+        length++;
+    }
+
+    // Para construir la serpiente inicial de cabeza a cola, antes de publicar ninguna foto
+    void addTail(int cell) {
+        if (head + length == cells.length) {
+            relocate();
+        }
+        cells[head + length] = cell;
+        length++;
+    }
+
+    int removeTail() {
+        int tail = tailCell();
+        length--;
+        return tail;
+    }
+
+    int headCell() {
+        return cells[head];
+    }
+
+    int tailCell() {
+        return cells[head + length - 1];
+    }
+
+    // Segmento i contando desde la cabeza (0 = cabeza)
+    int cellAt(int index) {
+        return cells[head + index];
+    }
+
+    // Vista para las fotos, sin copiar: las posiciones que cubre ya no cambian
+    Board.Snake snapshot() {
+        return new Board.Snake(playerId, color, cells, head, length);
+    }
+
+    int length() {
+        return length;
+    }
+
+    int getPlayerId() {
+        return playerId;
+    }
+
+    String getColor() {
+        return color;
+    }
+
+    /**
+     * Copia el cuerpo al final de un array nuevo con sitio delante para otros
+     * tantos movimientos (y uno detrás para addTail). Coste amortizado de una
+     * celda por movimiento; el array anterior no se toca.
+     */
+    private void relocate() {
+        int capacity = Math.max(INITIAL_CAPACITY, length * 2 + 2);
+        int[] moved = new int[capacity];
+        int newHead = capacity - length - 1;
+        System.arraycopy(cells, head, moved, newHead, length);
+        cells = moved;
+        head = newHead;
+    }
+}
@@ -0,0 +1,621 @@
+package com.expociencia.messages;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.expociencia.game.Area;
+import com.expociencia.game.Board;
+import com.expociencia.game.GameState;
+import com.expociencia.game.Minimap;
+
+/**
+ * Formato binario compacto. Cada mensaje empieza con un byte de operación;
+ * los ids y contadores van como varint (LEB128 sin signo), las celdas como
+ * un short sin signo (fila * 40 + columna) y los colores como índice en una
+ * paleta fija. En tableros de otro tamaño (salas "arena") los mensajes de
+ * estado llevan FLAG_GRID_CELLS: cada celda va como dos varint (columna y
+ * fila) y UPDATE_STATE añade columnas y filas tras la secuencia. Con
+ * FLAG_AREA el tablero viene recortado a una zona (área de interés), que va
+ * justo después como cuatro varint. El estado completo se escribe directamente desde el
+ * {@link Board} compacto: jugador y color una vez por serpiente y después
+ * solo sus celdas.
+ *
+ * Lo decodifican src/main/resources/public/game.js y frontend/src/lib/binary-codec.ts:
+ * cualquier cambio aquí debe reflejarse en ambos. Los campos de predicción
+ * (secuencia de PLAYER_INPUT; tick, nivel y confirmaciones de UPDATE_STATE)
+ * van al final y son opcionales: los clientes web no los leen ni los envían.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    public static final String NAME = "binary";
+    public static final BinaryMessageCodec INSTANCE = new BinaryMessageCodec();
+
+    // --- Códigos de operación ---
+    static final byte OP_PLAYER_ID = 1;
+    static final byte OP_UPDATE_STATE = 2;
+    static final byte OP_STATE_DELTA = 3;
+    static final byte OP_JOIN_GAME = 4;
+    static final byte OP_PLAYER_INPUT = 5;
+    static final byte OP_START_GAME = 6;
+    static final byte OP_RESTART_GAME = 7;
+    static final byte OP_REQUEST_KEYFRAME = 8;
+    static final byte OP_PING = 9;
+    static final byte OP_SPECTATE = 10;
+    static final byte OP_MINIMAP = 11;
+    static final byte OP_ERROR = 12;
+
+    private static final int FLAG_GAME_OVER = 1;
+    private static final int FLAG_GAME_IN_PROGRESS = 2;
+    private static final int FLAG_GRID_CELLS = 4;
+    private static final int FLAG_AREA = 8;
+    private static final int FLAG_HAS_SCORE = 1;
+    private static final int FLAG_HAS_NAME = 2;
+    private static final int NO_COLOR = 0xFF;
+    // Cotas de maxStateLength: 64 KB para jugadores, confirmaciones y cabecera (~1500 jugadores de
+    // 40 bytes como mucho) y 16 bytes por celda. Una celda cuesta 4 como mucho (dos varint de
+    // 2 bytes en las "arena"), 5 con el valor de la fruta y hasta 13 si es una serpiente recortada
+    // de una sola celda (jugador, color y longitud); el resto es margen.
+    private static final int STATE_RESERVE = 64 * 1024;
+    private static final int MAX_BYTES_PER_CELL = 16;
+
+    // Mismo orden que los colores que reparte GameState
+    private static final String[] COLORS = {"CYAN", "MAGENTA", "YELLOW", "ORANGE", "PINK", "GREEN", "BLUE", "RED", "WHITE"};
+    private static final String[] INPUTS = {"UP", "DOWN", "LEFT", "RIGHT", "RESTART"};
+
+    private BinaryMessageCodec() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    @Override
+    public int maxStateLength(int columns, int rows) {
+        return STATE_RESERVE + columns * rows * MAX_BYTES_PER_CELL;
+    }
+
+    // --- Codificación ---
+
+    @Override
+    public ByteBuffer encode(Message message, ByteBuffer out) {
+        Writer w = new Writer(out);
+        switch (message.getAction()) {
+            case "PLAYER_ID":
+                w.u8(OP_PLAYER_ID);
+                w.varint(message.getPlayerId());
+                break;
+            case "UPDATE_STATE": {
+                Board board = message.getBoard() != null ? message.getBoard() : Board.EMPTY;
+                w.gridCells = !board.isDefaultSize();
+                w.u8(OP_UPDATE_STATE);
+                Area area = message.getArea();
+                w.u8(flags(message) | (w.gridCells ? FLAG_GRID_CELLS : 0) | (area != null ? FLAG_AREA : 0));
+                w.varlong(message.getSequence());
+                if (w.gridCells) {
+                    w.varint(board.getColumns());
+                    w.varint(board.getRows());
+                }
+                if (area != null) {
+                    w.varint(area.column());
+                    w.varint(area.row());
+                    w.varint(area.columns());
+                    w.varint(area.rows());
+                }
+                writePlayers(w, message.getPlayerScores(), message.getPlayerNames());
+                writeBoard(w, board);
+                writePrediction(w, message);
+                break;
+            }
+            case "STATE_DELTA":
+                // Los deltas van en píxeles: basta con saber si el tablero es el de siempre
+                w.gridCells = message.getColumns() > 0 && (message.getColumns() != GameState.DEFAULT_COLUMNS
+                        || message.getRows() != GameState.DEFAULT_ROWS);
+                w.u8(OP_STATE_DELTA);
+                w.u8(flags(message) | (w.gridCells ? FLAG_GRID_CELLS : 0));
+                w.varlong(message.getSequence());
+                writeDelta(w, message.getDelta());
+                break;
+            case "JOIN_GAME":
+                w.u8(OP_JOIN_GAME);
+                w.string(message.getPlayerName());
+                w.string(message.getProtocol());
+                w.string(message.getCodec());
+                w.string(message.getRoomCode());
+                w.varint(message.getBoardSize());
+                w.varint(message.getViewport());
+                break;
+            case "SPECTATE":
+                w.u8(OP_SPECTATE);
+                w.string(message.getCodec());
+                w.string(message.getRoomCode());
+                break;
+            case "MINIMAP": {
+                Minimap minimap = message.getMinimap();
+                w.u8(OP_MINIMAP);
+                w.varint(minimap.chunkColumns());
+                w.varint(minimap.chunkRows());
+                w.bytes(minimap.snakeCells());
+                break;
+            }
+            case "ERROR":
+                w.u8(OP_ERROR);
+                w.string(message.getError());
+                break;
+            case "PLAYER_INPUT":
+                w.u8(OP_PLAYER_INPUT);
+                w.u8(indexOf(INPUTS, message.getInput()));
+                w.varint(message.getInputSequence());
+                break;
+            case "START_GAME":
+                w.u8(OP_START_GAME);
+                break;
+            case "RESTART_GAME":
+                w.u8(OP_RESTART_GAME);
+                break;
+            case "REQUEST_KEYFRAME":
+                w.u8(OP_REQUEST_KEYFRAME);
+                break;
+            case "PING":
+                w.u8(OP_PING);
+                break;
+            default:
+                throw new IllegalArgumentException("Acción sin código binario: " + message.getAction());
+        }
+        ByteBuffer encoded = w.buffer;
+        encoded.flip();
+        return encoded;
+    }
+
+    private int flags(Message message) {
+        return (message.isGameOver() ? FLAG_GAME_OVER : 0) | (message.isGameInProgress() ? FLAG_GAME_IN_PROGRESS : 0);
+    }
+
+    private void writePlayers(Writer w, Map<Integer, Integer> scores, Map<Integer, String> names) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        if (scores != null) ids.addAll(scores.keySet());
+        if (names != null) ids.addAll(names.keySet());
+        w.varint(ids.size());
+        for (int id : ids) {
+            Integer score = scores != null ? scores.get(id) : null;
+            String name = names != null ? names.get(id) : null;
+            w.varint(id);
+            w.u8((score != null ? FLAG_HAS_SCORE : 0) | (name != null ? FLAG_HAS_NAME : 0));
+            if (score != null) w.varint(score);
+            if (name != null) w.string(name);
+        }
+    }
+
+    private void writeBoard(Writer w, Board board) {
+        // Serpientes: [jugador, color, longitud, celdas...] con los segmentos de cabeza a cola
+        w.varint(board.getSnakes().size());
+        for (Board.Snake snake : board.getSnakes()) {
+            w.varint(snake.playerId());
+            w.u8(colorIndex(snake.color()));
+            w.varint(snake.length());
+            for (int i = 0; i < snake.length(); i++) {
+                w.boardCell(snake.cell(i), board.getColumns());
+            }
+        }
+
+        int[] fruitCells = board.getFruitCells();
+        int[] fruitValues = board.getFruitValues();
+        w.varint(fruitCells.length);
+        for (int i = 0; i < fruitCells.length; i++) {
+            w.boardCell(fruitCells[i], board.getColumns());
+            w.u8(fruitValues[i]);
+        }
+
+        w.varint(board.getWallCells().length);
+        for (int cell : board.getWallCells()) {
+            w.boardCell(cell, board.getColumns());
+        }
+    }
+
+    private void writePrediction(Writer w, Message message) {
+        Map<Integer, Integer> acks = message.getInputAcks() != null ? message.getInputAcks() : Map.of();
+        w.varlong(message.getTick());
+        w.u8(message.getLevel());
+        w.varint(acks.size());
+        for (Map.Entry<Integer, Integer> ack : acks.entrySet()) {
+            w.varint(ack.getKey());
+            w.varint(ack.getValue());
+        }
+    }
+
+    private void writeDelta(Writer w, StateDelta delta) {
+        w.varint(delta.getHeads().size());
+        for (int[] head : delta.getHeads()) {
+            w.varint(head[0]);
+            w.cell(head[1], head[2]);
+        }
+        w.varint(delta.getTails().size());
+        for (int[] tail : delta.getTails()) {
+            w.varint(tail[0]);
+            w.cell(tail[1], tail[2]);
+        }
+        w.varint(delta.getFruitsAdded().size());
+        for (int[] fruit : delta.getFruitsAdded()) {
+            w.cell(fruit[0], fruit[1]);
+            w.u8(fruit[2]);
+        }
+        w.varint(delta.getFruitsRemoved().size());
+        for (int[] fruit : delta.getFruitsRemoved()) {
+            w.cell(fruit[0], fruit[1]);
+        }
+        w.varint(delta.getEliminated().size());
+        for (int playerId : delta.getEliminated()) {
+            w.varint(playerId);
+        }
+        w.varint(delta.getPlayerScores().size());
+        for (Map.Entry<Integer, Integer> score : delta.getPlayerScores().entrySet()) {
+            w.varint(score.getKey());
+            w.varint(score.getValue());
+        }
+    }
+
+    // --- Decodificación ---
+
+    /**
+     * Para el servidor: como decode, pero rechaza los mensajes que solo envía
+     * el servidor (PLAYER_ID, UPDATE_STATE, STATE_DELTA, MINIMAP, ERROR) antes de
+     * leerlos, así un cliente no puede hacerle decodificar tableros.
+     */
+    public Message decodeFromClient(ByteBuffer data) {
+        byte op = data.get(data.position());
+        if (op == OP_PLAYER_ID || op == OP_UPDATE_STATE || op == OP_STATE_DELTA || op == OP_MINIMAP || op == OP_ERROR) {
+            throw new IllegalArgumentException("Mensaje del servidor recibido de un cliente: " + op);
+        }
+        return decode(data);
+    }
+
+    @Override
+    public Message decode(ByteBuffer data) {
+        byte op = data.get();
+        Message message;
+        switch (op) {
+            case OP_PLAYER_ID:
+                message = new Message("PLAYER_ID");
+                message.setPlayerId(readVarint(data));
+                break;
+            case OP_UPDATE_STATE: {
+                message = new Message("UPDATE_STATE");
+                int flags = readFlags(data, message);
+                boolean gridCells = (flags & FLAG_GRID_CELLS) != 0;
+                message.setSequence(readVarlong(data));
+                int columns = gridCells ? readVarint(data) : GameState.DEFAULT_COLUMNS;
+                int rows = gridCells ? readVarint(data) : GameState.DEFAULT_ROWS;
+                message.setDimensions(columns, rows);
+                if ((flags & FLAG_AREA) != 0) {
+                    message.setArea(new Area(readVarint(data), readVarint(data), readVarint(data), readVarint(data)));
+                }
+                readPlayers(data, message);
+                message.setBoard(readBoard(data, columns, rows, gridCells));
+                if (data.hasRemaining()) {
+                    readPrediction(data, message);
+                }
+                break;
+            }
+            case OP_STATE_DELTA: {
+                message = new Message("STATE_DELTA");
+                int flags = readFlags(data, message);
+                boolean gridCells = (flags & FLAG_GRID_CELLS) != 0;
+                message.setSequence(readVarlong(data));
+                message.setDelta(readDelta(data, gridCells));
+                break;
+            }
+            case OP_JOIN_GAME:
+                message = new Message("JOIN_GAME");
+                message.setPlayerName(readString(data));
+                message.setProtocol(readString(data));
+                message.setCodec(readString(data));
+                if (data.hasRemaining()) { // La sala se añadió después: puede faltar
+                    message.setRoomCode(readString(data));
+                }
+                if (data.hasRemaining()) { // Igual que el tamaño del tablero y la vista
+                    message.setBoardSize(readVarint(data));
+                }
+                if (data.hasRemaining()) {
+                    message.setViewport(readVarint(data));
+                }
+                break;
+            case OP_SPECTATE:
+                message = new Message("SPECTATE");
+                message.setCodec(readString(data));
+                message.setRoomCode(readString(data));
+                break;
+            case OP_PLAYER_INPUT:
+                message = new Message("PLAYER_INPUT");
+                int input = data.get() & 0xFF;
+                if (input >= INPUTS.length) {
+                    throw new IllegalArgumentException("Dirección desconocida: " + input);
+                }
+                message.setInput(INPUTS[input]);
+                if (data.hasRemaining()) { // Los clientes web no envían secuencia
+                    message.setInputSequence(readVarint(data));
+                }
+                break;
+            case OP_START_GAME:
+                message = new Message("START_GAME");
+                break;
+            case OP_RESTART_GAME:
+                message = new Message("RESTART_GAME");
+                break;
+            case OP_REQUEST_KEYFRAME:
+                message = new Message("REQUEST_KEYFRAME");
+                break;
+            case OP_PING:
+                message = new Message("PING");
+                break;
+            case OP_MINIMAP: {
+                message = new Message("MINIMAP");
+                int chunkColumns = readVarint(data);
+                int chunkRows = readVarint(data);
+                if (chunkColumns < 0 || chunkRows < 0) {
+                    throw new IllegalArgumentException("Minimapa de tamaño negativo: " + chunkColumns + "x" + chunkRows);
+                }
+                long size = (long) chunkColumns * chunkRows;
+                checkLength(data, size);
+                byte[] snakeCells = new byte[(int) size];
+                data.get(snakeCells);
+                message.setMinimap(new Minimap(chunkColumns, chunkRows, snakeCells));
+                break;
+            }
+            case OP_ERROR:
+                message = new Message("ERROR");
+                message.setError(readString(data));
+                break;
+            default:
+                throw new IllegalArgumentException("Código de operación desconocido: " + op);
+        }
+        return message;
+    }
+
+    // Devuelve los flags para los que dependen del resto del mensaje (FLAG_GRID_CELLS, FLAG_AREA)
+    private int readFlags(ByteBuffer data, Message message) {
+        int flags = data.get() & 0xFF;
+        message.setGameOver((flags & FLAG_GAME_OVER) != 0);
+        message.setGameInProgress((flags & FLAG_GAME_IN_PROGRESS) != 0);
+        return flags;
+    }
+
+    private void readPrediction(ByteBuffer data, Message message) {
+        message.setTick(readVarlong(data));
+        message.setLevel(data.get() & 0xFF);
+        Map<Integer, Integer> acks = new HashMap<>();
+        int count = readLength(data, 2);
+        for (int i = 0; i < count; i++) {
+            acks.put(readVarint(data), readVarint(data));
+        }
+        message.setInputAcks(acks);
+    }
+
+    private void readPlayers(ByteBuffer data, Message message) {
+        Map<Integer, Integer> scores = new HashMap<>();
+        Map<Integer, String> names = new HashMap<>();
+        int count = readLength(data, 2);
+        for (int i = 0; i < count; i++) {
+            int id = readVarint(data);
+            int flags = data.get() & 0xFF;
+            if ((flags & FLAG_HAS_SCORE) != 0) scores.put(id, readVarint(data));
+            if ((flags & FLAG_HAS_NAME) != 0) names.put(id, readString(data));
+        }
+        message.setPlayerScores(scores);
+        message.setPlayerNames(names);
+    }
+
+    private Board readBoard(ByteBuffer data, int columns, int rows, boolean gridCells) {
+        int count = readLength(data, 3);
+        List<Board.Snake> snakes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int playerId = readVarint(data);
+            String color = colorName(data.get() & 0xFF);
+            int[] cells = new int[readLength(data, 2)];
+            for (int j = 0; j < cells.length; j++) {
+                cells[j] = readCell(data, gridCells, columns);
+            }
+            snakes.add(new Board.Snake(playerId, color, cells));
+        }
+        int[] fruitCells = new int[readLength(data, 3)];
+        int[] fruitValues = new int[fruitCells.length];
+        for (int i = 0; i < fruitCells.length; i++) {
+            fruitCells[i] = readCell(data, gridCells, columns);
+            fruitValues[i] = data.get() & 0xFF;
+        }
+        int[] wallCells = new int[readLength(data, 2)];
+        for (int i = 0; i < wallCells.length; i++) {
+            wallCells[i] = readCell(data, gridCells, columns);
+        }
+        return new Board(columns, rows, snakes, fruitCells, fruitValues, wallCells);
+    }
+
+    // Sin las dimensiones del tablero: las celdas se empaquetan con el ancho máximo, que vale para cualquiera
+    private StateDelta readDelta(ByteBuffer data, boolean gridCells) {
+        int stride = gridCells ? GameState.MAX_SIZE : GameState.DEFAULT_COLUMNS;
+        StateDelta delta = new StateDelta();
+        int heads = readLength(data, 3);
+        for (int i = 0; i < heads; i++) {
+            int playerId = readVarint(data);
+            int cell = readCell(data, gridCells, stride);
+            delta.addHead(playerId, cellX(cell, stride), cellY(cell, stride));
+        }
+        int tails = readLength(data, 3);
+        for (int i = 0; i < tails; i++) {
+            int playerId = readVarint(data);
+            int cell = readCell(data, gridCells, stride);
+            delta.addTail(playerId, cellX(cell, stride), cellY(cell, stride));
+        }
+        int added = readLength(data, 3);
+        for (int i = 0; i < added; i++) {
+            int cell = readCell(data, gridCells, stride);
+            delta.addFruit(cellX(cell, stride), cellY(cell, stride), data.get() & 0xFF);
+        }
+        int removed = readLength(data, 2);
+        for (int i = 0; i < removed; i++) {
+            int cell = readCell(data, gridCells, stride);
+            delta.getFruitsRemoved().add(new int[]{cellX(cell, stride), cellY(cell, stride)});
+        }
+        int eliminated = readLength(data, 1);
+        for (int i = 0; i < eliminated; i++) {
+            delta.addEliminated(readVarint(data));
+        }
+        int scores = readLength(data, 2);
+        for (int i = 0; i < scores; i++) {
+            delta.setScore(readVarint(data), readVarint(data));
+        }
+        return delta;
+    }
+
+    // --- Utilidades ---
+
+    private static int cellX(int cell, int columns) {
+        return (cell % columns) * GameState.TILE_SIZE;
+    }
+
+    private static int cellY(int cell, int columns) {
+        return (cell / columns) * GameState.TILE_SIZE;
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) return i;
+        }
+        throw new IllegalArgumentException("Valor sin código binario: " + value);
+    }
+
+    private static int colorIndex(String color) {
+        for (int i = 0; i < COLORS.length; i++) {
+            if (COLORS[i].equals(color)) return i;
+        }
+        return NO_COLOR;
+    }
+
+    private static String colorName(int index) {
+        return index < COLORS.length ? COLORS[index] : null;
+    }
+
+    // Celda empaquetada con 'columns' columnas
+    private static int readCell(ByteBuffer data, boolean gridCells, int columns) {
+        if (gridCells) {
+            int col = readVarint(data);
+            return readVarint(data) * columns + col;
+        }
+        return data.getShort() & 0xFFFF;
+    }
+
+    private static int readVarint(ByteBuffer data) {
+        return (int) readVarlong(data);
+    }
+
+    private static long readVarlong(ByteBuffer data) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Número de elementos que vienen a continuación, de al menos
+     * 'minBytes' bytes cada uno. Los tamaños los manda el otro extremo: uno
+     * que no cabe en lo que queda del mensaje se rechaza antes de reservar
+     * nada (si no, unos pocos bytes podrían pedir un array de 2 GB).
+     */
+    private static int readLength(ByteBuffer data, int minBytes) {
+        int count = readVarint(data);
+        checkLength(data, (long) count * minBytes);
+        return count;
+    }
+
+    private static void checkLength(ByteBuffer data, long bytes) {
+        if (bytes < 0 || bytes > data.remaining()) {
+            throw new IllegalArgumentException("Longitud fuera del mensaje: " + bytes + " bytes (quedan " + data.remaining() + ")");
+        }
+    }
+
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[readLength(data, 1)];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Escritor sobre un buffer reutilizable que crece solo cuando hace falta
+    private static final class Writer {
+        ByteBuffer buffer;
+        boolean gridCells; // Celdas como columna y fila (tableros que no son de 40x40)
+
+        Writer(ByteBuffer buffer) {
+            this.buffer = buffer;
+            buffer.clear();
+        }
+
+        void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                buffer = CodecBuffers.grow(buffer, bytes);
+            }
+        }
+
+        void u8(int value) {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        // Celda a partir de sus píxeles (deltas)
+        void cell(int x, int y) {
+            gridCell(x / GameState.TILE_SIZE, y / GameState.TILE_SIZE);
+        }
+
+        // Celda empaquetada con el ancho del tablero
+        void boardCell(int cell, int columns) {
+            gridCell(cell % columns, cell / columns);
+        }
+
+        private void gridCell(int col, int row) {
+            if (gridCells) {
+                varint(col);
+                varint(row);
+            } else {
+                ensure(2);
+                buffer.putShort((short) (row * GameState.DEFAULT_COLUMNS + col));
+            }
+        }
+
+        void varint(int value) {
+            varlong(value & 0xFFFFFFFFL);
+        }
+
+        void varlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void bytes(byte[] bytes) {
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void string(String value) {
+            byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.expociencia.messages;
+import java.nio.ByteBuffer;
+
+// Utilidades compartidas por los codecs para trabajar con buffers reutilizables
+final class CodecBuffers {
+
+    private CodecBuffers() {
+    }
+
+    // Devuelve un buffer del mismo tipo (directo o no) con al menos 'extra' bytes libres
+    static ByteBuffer grow(ByteBuffer buffer, int extra) {
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + extra);
+        ByteBuffer grown = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+}
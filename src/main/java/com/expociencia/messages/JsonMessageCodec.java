@@ -0,0 +1,148 @@
+package com.expociencia.messages;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.expociencia.game.Board;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Formato JSON original (Gson). Se mantiene como formato por defecto para
+ * los clientes que no negocian otro.
+ */
+public class JsonMessageCodec implements MessageCodec {
+    public static final String NAME = "json";
+    public static final JsonMessageCodec INSTANCE = new JsonMessageCodec();
+    // Cotas de maxStateLength: una celda son como mucho 7 caracteres ("249999,") o 9 con el valor
+    // de la fruta, y una serpiente de una sola celda unos 60 con su objeto; los jugadores, 256 KB
+    private static final int STATE_RESERVE = 256 * 1024;
+    private static final int MAX_BYTES_PER_CELL = 64;
+
+    private final Gson gson = new GsonBuilder().registerTypeAdapter(Board.Snake.class, new SnakeAdapter()).create();
+    // Reutilizados por hilo para no crear un String intermedio en cada envío
+    private final ThreadLocal<StringBuilder> text = ThreadLocal.withInitial(() -> new StringBuilder(16 * 1024));
+    private final ThreadLocal<CharsetEncoder> encoder = ThreadLocal.withInitial(StandardCharsets.UTF_8::newEncoder);
+
+    private JsonMessageCodec() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return false;
+    }
+
+    @Override
+    public int maxStateLength(int columns, int rows) {
+        return STATE_RESERVE + columns * rows * MAX_BYTES_PER_CELL;
+    }
+
+    @Override
+    public ByteBuffer encode(Message message, ByteBuffer out) {
+        StringBuilder json = text.get();
+        json.setLength(0);
+        gson.toJson(message, json);
+
+        CharBuffer chars = CharBuffer.wrap(json);
+        CharsetEncoder utf8 = encoder.get();
+        utf8.reset();
+        out.clear();
+        CoderResult result;
+        while ((result = utf8.encode(chars, out, true)).isOverflow()) {
+            out = CodecBuffers.grow(out, chars.remaining());
+        }
+        while (utf8.flush(out).isOverflow()) {
+            out = CodecBuffers.grow(out, 16);
+        }
+        if (result.isError()) {
+            throw new IllegalStateException("No se pudo codificar el mensaje: " + result);
+        }
+        out.flip();
+        return out;
+    }
+
+    @Override
+    public Message decode(ByteBuffer data) {
+        return fromJson(StandardCharsets.UTF_8.decode(data).toString());
+    }
+
+    public Message fromJson(String json) {
+        return gson.fromJson(json, Message.class);
+    }
+
+    public String toJson(Message message) {
+        return gson.toJson(message);
+    }
+
+    // Las serpientes de la foto comparten el array del cuerpo: en JSON solo van sus celdas
+    private static final class SnakeAdapter extends TypeAdapter<Board.Snake> {
+        @Override
+        public void write(JsonWriter out, Board.Snake snake) throws IOException {
+            if (snake == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("playerId").value(snake.playerId());
+            if (snake.color() != null) {
+                out.name("color").value(snake.color());
+            }
+            out.name("cells").beginArray();
+            for (int i = 0; i < snake.length(); i++) {
+                out.value(snake.cell(i));
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public Board.Snake read(JsonReader in) throws IOException {
+            int playerId = 0;
+            String color = null;
+            int[] cells = new int[0];
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "playerId":
+                        playerId = in.nextInt();
+                        break;
+                    case "color":
+                        color = in.nextString();
+                        break;
+                    case "cells":
+                        cells = readCells(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Board.Snake(playerId, color, cells);
+        }
+
+        private static int[] readCells(JsonReader in) throws IOException {
+            int[] cells = new int[16];
+            int count = 0;
+            in.beginArray();
+            while (in.hasNext()) {
+                if (count == cells.length) cells = Arrays.copyOf(cells, count * 2);
+                cells[count++] = in.nextInt();
+            }
+            in.endArray();
+            return Arrays.copyOf(cells, count);
+        }
+    }
+}
@@ -1,16 +1,19 @@
 package com.expociencia.messages;
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.expociencia.game.Area;
+import com.expociencia.game.Board;
 import com.expociencia.game.GameObject;
+import com.expociencia.game.Minimap;
 
-public class Message implements Serializable {
-    private static final long serialVersionUID = 4L; // Versión actualizada
+public class Message {
 
     private String action; // e.g., "JOIN_GAME", "PLAYER_INPUT", "START_GAME", "RESTART_GAME"
-    private ArrayList<GameObject> objects;
+    private List<GameObject> objects; // Solo clientes antiguos; el servidor envía 'board'
+    private Board board; // Tablero compacto (UPDATE_STATE)
     private boolean gameOver;
     private String input; // e.g., "UP", "DOWN"
     private int playerId;
@@ -21,6 +24,31 @@ public class Message implements Serializable {
     private Map<Integer, String> playerNames = new HashMap<>(); // Para la tabla de puntuación
     private boolean gameInProgress; // Para saber si estamos en el lobby o jugando
 
+    // --- Protocolo delta ---
+    private String protocol; // "delta" en JOIN_GAME si el cliente sabe aplicar STATE_DELTA
+    private long sequence; // Número de secuencia de UPDATE_STATE / STATE_DELTA
+    private StateDelta delta; // Cambios del tick (solo en STATE_DELTA)
+    private String codec; // "binary" en JOIN_GAME para recibir el formato binario compacto
+    private String roomCode; // Sala a la que se une el jugador (JOIN_GAME)
+    private int boardSize; // Lado del tablero si el JOIN_GAME crea la sala; 0 = el de siempre
+
+    // --- Tamaño del tablero (UPDATE_STATE y STATE_DELTA) ---
+    private int columns;
+    private int rows;
+
+    // --- Área de interés ---
+    private int viewport; // Lado en celdas de la vista del cliente (JOIN_GAME); 0 = el tablero entero
+    private Area area; // Zona que trae el tablero recortado (UPDATE_STATE); null = el tablero entero
+    private Minimap minimap; // Resumen del tablero entero (MINIMAP)
+
+    // --- Predicción en el cliente ---
+    private int inputSequence; // Secuencia del giro (PLAYER_INPUT); 0 si el cliente no predice
+    private long tick; // Tick de la foto (UPDATE_STATE)
+    private int level; // Nivel actual: en el 1 los bordes dan la vuelta
+    private Map<Integer, Integer> inputAcks; // Última secuencia consumida por jugador (UPDATE_STATE)
+
+    private String error; // Motivo por el que el servidor rechaza la petición (ERROR)
+
     public Message(String action) {
         this.action = action;
         this.objects = new ArrayList<>();
@@ -39,12 +67,24 @@ public class Message implements Serializable {
     public void setAction(String action) {
         this.action = action;
     }
-    public ArrayList<GameObject> getObjects() {
+    // Con 'board' y sin lista se devuelve la vista de compatibilidad del tablero (se crea una vez)
+    public List<GameObject> getObjects() {
+        if (objects == null && board != null) {
+            objects = board.toObjects();
+        }
         return objects;
     }
-    public void setObjects(ArrayList<GameObject> objects) {
+    public void setObjects(List<GameObject> objects) {
         this.objects = objects;
     }
+    public Board getBoard() {
+        return board;
+    }
+    // Sustituye a la lista de objetos: en el JSON solo viaja el tablero compacto
+    public void setBoard(Board board) {
+        this.board = board;
+        this.objects = null;
+    }
     public boolean isGameOver() {
         return gameOver;
     }
@@ -87,4 +127,98 @@ public class Message implements Serializable {
     public void setGameInProgress(boolean gameInProgress) {
         this.gameInProgress = gameInProgress;
     }
+    public String getProtocol() {
+        return protocol;
+    }
+    public void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+    public long getSequence() {
+        return sequence;
+    }
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+    public StateDelta getDelta() {
+        return delta;
+    }
+    public void setDelta(StateDelta delta) {
+        this.delta = delta;
+    }
+    public String getCodec() {
+        return codec;
+    }
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+    public String getRoomCode() {
+        return roomCode;
+    }
+    public void setRoomCode(String roomCode) {
+        this.roomCode = roomCode;
+    }
+    public int getBoardSize() {
+        return boardSize;
+    }
+    public void setBoardSize(int boardSize) {
+        this.boardSize = boardSize;
+    }
+    public int getColumns() {
+        return columns;
+    }
+    public int getRows() {
+        return rows;
+    }
+    public void setDimensions(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+    }
+    public int getViewport() {
+        return viewport;
+    }
+    public void setViewport(int viewport) {
+        this.viewport = viewport;
+    }
+    public Area getArea() {
+        return area;
+    }
+    public void setArea(Area area) {
+        this.area = area;
+    }
+    public Minimap getMinimap() {
+        return minimap;
+    }
+    public void setMinimap(Minimap minimap) {
+        this.minimap = minimap;
+    }
+    public int getInputSequence() {
+        return inputSequence;
+    }
+    public void setInputSequence(int inputSequence) {
+        this.inputSequence = inputSequence;
+    }
+    public long getTick() {
+        return tick;
+    }
+    public void setTick(long tick) {
+        this.tick = tick;
+    }
+    public int getLevel() {
+        return level;
+    }
+    public void setLevel(int level) {
+        this.level = level;
+    }
+    public Map<Integer, Integer> getInputAcks() {
+        return inputAcks;
+    }
+    public void setInputAcks(Map<Integer, Integer> inputAcks) {
+        this.inputAcks = inputAcks;
+    }
+    public String getError() {
+        return error;
+    }
+    public void setError(String error) {
+        this.error = error;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.expociencia.messages;
+import java.nio.ByteBuffer;
+
+/**
+ * Formato de cable de un {@link Message}. Cada conexión elige el suyo al
+ * unirse (campo "codec" de JOIN_GAME); JSON es el formato por defecto.
+ */
+public interface MessageCodec {
+
+    String getName();
+
+    // true si las tramas deben viajar como binarias en lugar de texto
+    boolean isBinary();
+
+    /**
+     * Escribe el mensaje desde el principio de {@code out}; si no cabe, usa un
+     * buffer mayor. Devuelve el buffer usado, ya preparado para leer.
+     */
+    ByteBuffer encode(Message message, ByteBuffer out);
+
+    Message decode(ByteBuffer data);
+
+    /**
+     * Cota del tamaño codificado de un UPDATE_STATE con el tablero entero de
+     * columns x rows, para fijar los límites de tramas y colas según la sala.
+     */
+    int maxStateLength(int columns, int rows);
+
+    static MessageCodec forName(String name) {
+        return BinaryMessageCodec.NAME.equals(name) ? BinaryMessageCodec.INSTANCE : JsonMessageCodec.INSTANCE;
+    }
+}
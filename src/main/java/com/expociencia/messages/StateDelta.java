@@ -0,0 +1,105 @@
+package com.expociencia.messages;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import com.expociencia.game.Area;
+
+/**
+ * Cambios de un tick respecto al estado anterior. Se envía dentro de un
+ * mensaje "STATE_DELTA" a los clientes que negociaron el protocolo delta.
+ * El cliente aplica los cambios en este orden: cabezas, colas, frutas
+ * retiradas, frutas nuevas, jugadores eliminados y puntuaciones.
+ */
+public class StateDelta {
+
+    private List<int[]> heads = new ArrayList<>(); // [playerId, x, y] nueva cabeza
+    private List<int[]> tails = new ArrayList<>(); // [playerId, x, y] cola retirada
+    private List<int[]> fruitsAdded = new ArrayList<>(); // [x, y, valor]
+    private List<int[]> fruitsRemoved = new ArrayList<>(); // [x, y]
+    private List<Integer> eliminated = new ArrayList<>();
+    private Map<Integer, Integer> playerScores = new HashMap<>(); // Solo las que cambiaron
+
+    public void addHead(int playerId, int x, int y) {
+        heads.add(new int[]{playerId, x, y});
+    }
+
+    public void addTail(int playerId, int x, int y) {
+        tails.add(new int[]{playerId, x, y});
+    }
+
+    public void addFruit(int x, int y, int value) {
+        fruitsAdded.add(new int[]{x, y, value});
+    }
+
+    public void removeFruit(int x, int y) {
+        // Una fruta que aparece y se come en el mismo tick no llega a enviarse
+        for (int i = 0; i < fruitsAdded.size(); i++) {
+            int[] fruit = fruitsAdded.get(i);
+            if (fruit[0] == x && fruit[1] == y) {
+                fruitsAdded.remove(i);
+                return;
+            }
+        }
+        fruitsRemoved.add(new int[]{x, y});
+    }
+
+    public void addEliminated(int playerId) {
+        eliminated.add(playerId);
+    }
+
+    public void setScore(int playerId, int score) {
+        playerScores.put(playerId, score);
+    }
+
+    /**
+     * Solo los cambios dentro de la zona (jugadores con área de interés).
+     * También van las cabezas de 'leaving' (jugadores cuya cabeza estaba
+     * dentro), para que el cliente no se quede con una cabeza vieja;
+     * eliminados y puntuaciones van todos.
+     */
+    public StateDelta within(Area area, IntPredicate leaving) {
+        StateDelta view = new StateDelta();
+        for (int[] head : heads) {
+            if (area.containsPixel(head[1], head[2]) || leaving.test(head[0])) view.heads.add(head);
+        }
+        for (int[] tail : tails) {
+            if (area.containsPixel(tail[1], tail[2])) view.tails.add(tail);
+        }
+        for (int[] fruit : fruitsAdded) {
+            if (area.containsPixel(fruit[0], fruit[1])) view.fruitsAdded.add(fruit);
+        }
+        for (int[] fruit : fruitsRemoved) {
+            if (area.containsPixel(fruit[0], fruit[1])) view.fruitsRemoved.add(fruit);
+        }
+        view.eliminated = eliminated;
+        view.playerScores = playerScores;
+        return view;
+    }
+
+    public boolean isEmpty() {
+        return heads.isEmpty() && tails.isEmpty() && fruitsAdded.isEmpty() && fruitsRemoved.isEmpty()
+                && eliminated.isEmpty() && playerScores.isEmpty();
+    }
+
+    public List<int[]> getHeads() {
+        return heads;
+    }
+    public List<int[]> getTails() {
+        return tails;
+    }
+    public List<int[]> getFruitsAdded() {
+        return fruitsAdded;
+    }
+    public List<int[]> getFruitsRemoved() {
+        return fruitsRemoved;
+    }
+    public List<Integer> getEliminated() {
+        return eliminated;
+    }
+    public Map<Integer, Integer> getPlayerScores() {
+        return playerScores;
+    }
+}
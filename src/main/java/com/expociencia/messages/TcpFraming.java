@@ -0,0 +1,75 @@
+package com.expociencia.messages;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.expociencia.game.GameState;
+
+/**
+ * Tramas sobre TCP: un int (big-endian) con la longitud y después el mensaje
+ * en el formato binario de {@link BinaryMessageCodec}, el mismo que usan los
+ * clientes WebSocket que negocian "binary". Los servidores TCP
+ * (NioGameServer y TcpGameServer) solo aceptan ese formato.
+ */
+public final class TcpFraming {
+    public static final int HEADER_LENGTH = 4;
+    // Lo que envía el servidor: cabe el estado completo del mayor tablero posible (unos 4 MB
+    // lleno de punta a punta; el de 40x40 no llega a 30 KB). Más que esto es un error.
+    public static final int MAX_FRAME_LENGTH =
+            BinaryMessageCodec.INSTANCE.maxStateLength(GameState.MAX_SIZE, GameState.MAX_SIZE);
+    // Lo que envían los clientes: entradas, JOIN_GAME y poco más
+    public static final int MAX_CLIENT_FRAME_LENGTH = 64 * 1024;
+
+    private TcpFraming() {
+    }
+
+    // Escribe la trama sin hacer flush: quien escribe decide cuándo vaciar el lote
+    public static void write(DataOutputStream out, ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        out.writeInt(length);
+        if (payload.hasArray()) {
+            out.write(payload.array(), payload.arrayOffset() + payload.position(), length);
+        } else {
+            byte[] bytes = new byte[length];
+            payload.duplicate().get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    // Copia el mensaje detrás de su cabecera de longitud, en un buffer nuevo listo para escribir
+    public static ByteBuffer frame(ByteBuffer payload, boolean direct) {
+        ByteBuffer source = payload.duplicate();
+        int capacity = HEADER_LENGTH + source.remaining();
+        ByteBuffer framed = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        framed.putInt(source.remaining()).put(source).flip();
+        return framed;
+    }
+
+    public static ByteBuffer read(DataInputStream in) throws IOException {
+        return read(in, MAX_FRAME_LENGTH);
+    }
+
+    public static ByteBuffer read(DataInputStream in, int maxLength) throws IOException {
+        int length = in.readInt();
+        checkLength(length, maxLength);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    public static void checkLength(int length, int maxLength) throws IOException {
+        if (length <= 0 || length > maxLength) {
+            throw new IOException("Longitud de trama inválida: " + length);
+        }
+    }
+
+    // Comodidad para los clientes: el codec es el mismo MessageCodec que usa el servidor
+    public static void writeMessage(DataOutputStream out, MessageCodec codec, Message message) throws IOException {
+        write(out, codec.encode(message, ByteBuffer.allocate(64)));
+    }
+
+    public static Message readMessage(DataInputStream in, MessageCodec codec) throws IOException {
+        return codec.decode(read(in));
+    }
+}
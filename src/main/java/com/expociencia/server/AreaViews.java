@@ -0,0 +1,118 @@
+package com.expociencia.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.expociencia.game.Area;
+import com.expociencia.game.Board;
+import com.expociencia.messages.MessageCodec;
+import com.expociencia.messages.StateDelta;
+
+/**
+ * Envíos por zona para los jugadores con área de interés. Cada zona (ver
+ * {@link Area}) recorta el tablero y el delta del tick una sola vez, y cada
+ * variante (codec x estado/delta) se codifica una vez para todos los
+ * jugadores que la comparten, igual que las tramas de la sala. Así el coste
+ * por jugador depende del tamaño de su vista, no del tablero entero.
+ *
+ * Las zonas que nadie usó en el envío anterior se descartan.
+ * No es thread-safe: Room la usa siempre bajo su broadcastLock.
+ */
+class AreaViews {
+    private final Map<Area, View> views = new HashMap<>();
+    // Serpientes del tablero actual por jugador; se indexan al pedir la primera
+    private final Map<Integer, Board.Snake> snakes = new HashMap<>();
+    private Board board = Board.EMPTY;
+    private StateDelta delta = new StateDelta();
+    private long round = 0;
+
+    // Al empezar cada envío de la sala, con la foto y el delta que se van a enviar
+    void begin(Board board, StateDelta delta) {
+        this.board = board;
+        this.delta = delta;
+        round++;
+        snakes.clear();
+        views.values().removeIf(view -> view.usedIn < round - 1);
+        views.values().forEach(View::reset);
+    }
+
+    // Zona alrededor de la cabeza del jugador; sin serpiente, la última que recibió o el centro del tablero
+    Area areaFor(ClientSession session) {
+        Board.Snake own = snake(session.getPlayerId());
+        int columns = board.getColumns();
+        int rows = board.getRows();
+        if (own != null) {
+            return Area.around(own.cell(0), session.getViewport(), columns, rows);
+        }
+        if (session.getArea() != null) {
+            return session.getArea();
+        }
+        return Area.around(rows / 2 * columns + columns / 2, session.getViewport(), columns, rows);
+    }
+
+    View view(Area area) {
+        View view = views.computeIfAbsent(area, View::new);
+        view.usedIn = round;
+        return view;
+    }
+
+    private Board.Snake snake(int playerId) {
+        if (snakes.isEmpty()) {
+            for (Board.Snake snake : board.getSnakes()) {
+                snakes.put(snake.playerId(), snake);
+            }
+        }
+        return snakes.get(playerId);
+    }
+
+    // Lo que se envía a una zona en el envío actual; cada parte se calcula la primera vez que se pide
+    final class View {
+        private final Area area;
+        private final Map<MessageCodec, BroadcastFrame> stateFrames = new HashMap<>();
+        private final Map<MessageCodec, BroadcastFrame> deltaFrames = new HashMap<>();
+        private long usedIn;
+        private Board croppedBoard;
+        private StateDelta croppedDelta;
+
+        private View(Area area) {
+            this.area = area;
+        }
+
+        private void reset() {
+            stateFrames.values().forEach(BroadcastFrame::invalidate);
+            deltaFrames.values().forEach(BroadcastFrame::invalidate);
+            croppedBoard = null;
+            croppedDelta = null;
+        }
+
+        Area area() {
+            return area;
+        }
+
+        Board board() {
+            if (croppedBoard == null) {
+                croppedBoard = board.crop(area);
+            }
+            return croppedBoard;
+        }
+
+        // La cabeza anterior de cada serpiente es su segunda celda en la foto nueva
+        StateDelta delta() {
+            if (croppedDelta == null) {
+                croppedDelta = delta.within(area, playerId -> {
+                    Board.Snake snake = snake(playerId);
+                    return snake != null && snake.length() > 1 && area.containsCell(snake.cell(1), board.getColumns());
+                });
+            }
+            return croppedDelta;
+        }
+
+        BroadcastFrame stateFrame(MessageCodec codec) {
+            return stateFrames.computeIfAbsent(codec, c -> new BroadcastFrame(c, true));
+        }
+
+        BroadcastFrame deltaFrame(MessageCodec codec) {
+            return deltaFrames.computeIfAbsent(codec, c -> new BroadcastFrame(c, false));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.expociencia.server;
+
+import java.nio.ByteBuffer;
+
+import com.expociencia.messages.Message;
+import com.expociencia.messages.MessageCodec;
+import com.expociencia.messages.TcpFraming;
+import org.java_websocket.WebSocket;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.TextFrame;
+
+/**
+ * Trama que se codifica una sola vez por tick y se envía igual a todas las
+ * conexiones que usan el mismo codec. El mensaje se escribe en un ByteBuffer
+ * directo que se conserva entre ticks, así no se crea un String ni se
+ * re-codifica el mensaje por cada cliente.
+ * No es thread-safe: Room la usa siempre bajo su broadcastLock.
+ */
+class BroadcastFrame {
+    private static final int INITIAL_CAPACITY = 4 * 1024; // Crece si hace falta; cada sala tiene sus propias tramas
+
+    private final MessageCodec codec;
+    // Estado completo: deja obsoleta cualquier trama de difusión anterior aún sin enviar
+    private final boolean keyframe;
+    private final DataFrame frame;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+    private boolean encoded = false;
+    private int length;
+    // Copia con la cabecera de longitud de TcpFraming; se crea como mucho una vez por tick
+    private ByteBuffer tcpFrame;
+
+    BroadcastFrame(MessageCodec codec, boolean keyframe) {
+        this.codec = codec;
+        this.keyframe = keyframe;
+        this.frame = codec.isBinary() ? new BinaryFrame() : new TextFrame();
+    }
+
+    // Devuelve lo que tardó en codificarse, en nanosegundos (también va a ServerMetrics)
+    long encode(Message message) {
+        long start = System.nanoTime();
+        buffer = codec.encode(message, buffer);
+        length = buffer.remaining();
+        // El draft copia el payload al construir la trama de cada conexión y lo rebobina
+        frame.setPayload(buffer);
+        tcpFrame = null;
+        encoded = true;
+        long elapsed = System.nanoTime() - start;
+        ServerMetrics.BROADCAST_ENCODE.record(elapsed);
+        return elapsed;
+    }
+
+    // Marca la trama como obsoleta al empezar un nuevo envío
+    void invalidate() {
+        encoded = false;
+    }
+
+    boolean isEncoded() {
+        return encoded;
+    }
+
+    boolean isKeyframe() {
+        return keyframe;
+    }
+
+    // Tamaño del mensaje codificado, sin cabeceras del transporte
+    int length() {
+        return length;
+    }
+
+    // Vista de solo lectura del mensaje codificado, para transportes sin tramas WebSocket
+    ByteBuffer payload() {
+        return buffer.asReadOnlyBuffer().position(0).limit(length);
+    }
+
+    /**
+     * La trama lista para TCP (longitud + mensaje) en un buffer directo propio
+     * de este tick: no se reutiliza, así que las conexiones pueden tenerla
+     * encolada aunque la sala ya esté codificando el siguiente tick. Cada
+     * llamada devuelve una vista con su propia posición sobre los mismos bytes.
+     */
+    ByteBuffer tcpFrame() {
+        if (tcpFrame == null) {
+            tcpFrame = TcpFraming.frame(payload(), true).asReadOnlyBuffer();
+        }
+        return tcpFrame.duplicate();
+    }
+
+    void sendTo(WebSocket client) {
+        try {
+            client.sendFrame(frame);
+        } catch (WebsocketNotConnectedException e) {
+            // La conexión se cerró entre isOpen() y el envío; onClose se encargará de ella
+        }
+    }
+}
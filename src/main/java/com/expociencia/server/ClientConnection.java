@@ -0,0 +1,38 @@
+package com.expociencia.server;
+
+import com.expociencia.messages.Message;
+import com.expociencia.messages.MessageCodec;
+
+/**
+ * Conexión de un jugador, sea cual sea el transporte (WebSocket o TCP).
+ * Room y RoomRegistry solo trabajan con esta interfaz.
+ */
+interface ClientConnection {
+
+    boolean isOpen();
+
+    // Envío puntual (no de difusión) en el formato de la conexión
+    void send(Message message, MessageCodec codec);
+
+    // Trama de difusión ya codificada, compartida con el resto de la sala
+    void send(BroadcastFrame frame);
+
+    // Tramas escritas pero aún no enviadas al cliente
+    int getQueuedFrames();
+
+    // Bytes de esas tramas
+    long getQueuedBytes();
+
+    OutboundStats getOutboundStats();
+
+    // null hasta que el jugador se une a una sala
+    ClientSession getSession();
+
+    void setSession(ClientSession session);
+
+    String getRemoteAddress();
+
+    // Cierra la conexión sin bloquear ni esperar a vaciar lo pendiente; la salida de la sala
+    // llega por el camino normal de desconexión (puede ser en este mismo hilo)
+    void close();
+}
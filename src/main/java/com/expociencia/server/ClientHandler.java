@@ -1,174 +1,222 @@
 package com.expociencia.server;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.expociencia.messages.BinaryMessageCodec;
 import com.expociencia.messages.Message;
-import com.expociencia.game.GameState;
+import com.expociencia.messages.MessageCodec;
+import com.expociencia.messages.TcpFraming;
 
 import java.io.*;
 
-public class ClientHandler extends Thread {
-    private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
-    private GameState gameState;
-    private int playerId;
-    private volatile boolean running = true;
-
-    public ClientHandler(Socket socket, GameState gameState, int playerId) throws IOException {
-        this.socket = socket;
-        this.gameState = gameState;
-        this.playerId = playerId;
-
-        try {
-            // Set socket timeout to avoid hanging on read operations
-            socket.setSoTimeout(10000); // 10 seconds timeout
-
-            // Initialize output stream first
-            this.out = new ObjectOutputStream(socket.getOutputStream());
-            this.out.flush();
-
-            // Initialize input stream
-            this.in = new ObjectInputStream(socket.getInputStream());
-
-            // Send player ID to client
-            this.out.writeInt(playerId);
-            this.out.flush();
-
-            // Add player to game state
-            //gameState.addPlayer(playerId);
-
-            // Send initial game state
-            sendInitialState();
-
-            ServerLogger.log("Manejador de cliente inicializado para el jugador: " + playerId);
-        } catch (IOException e) {
-            ServerLogger.error("Error initializing client handler for player " + playerId + ": " + e.getMessage(), e);
-            closeResources();
-            throw e;
-        }
+/**
+ * Conexión TCP de un cliente de escritorio. Cada ClientHandler corre en su
+ * propio hilo virtual: la lectura bloqueante no ocupa un hilo de plataforma.
+ * Los mensajes viajan en tramas con longitud (ver {@link TcpFraming}) en el
+ * formato binario de los clientes WebSocket, y la conexión se une a una sala
+ * con JOIN_GAME igual que ellos.
+ *
+ * Las escrituras pasan por una cola acotada que vacía un segundo hilo
+ * virtual, para que un cliente lento nunca bloquee el tick de su sala. Un
+ * estado completo nuevo sustituye a las tramas de difusión que aún esperan.
+ */
+public class ClientHandler implements Runnable, ClientConnection {
+    private static final int READ_TIMEOUT_MS = 10000; // 10 segundos sin recibir nada: comprobar la conexión
+    private static final int MAX_PENDING_FRAMES = 64;
+
+    private final Socket socket;
+    private final RoomRegistry rooms;
+    private final String remoteAddress;
+    private final BlockingQueue<Pending> outQueue = new ArrayBlockingQueue<>(MAX_PENDING_FRAMES);
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final OutboundStats stats = new OutboundStats();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile ClientSession session;
+    private Thread writerThread;
+
+    // 'broadcast': trama de difusión de la sala, que un estado completo posterior deja obsoleta
+    private record Pending(ByteBuffer payload, boolean broadcast) {
     }
 
-    private void sendInitialState() throws IOException {
-        Message initialState = new Message("UPDATE_STATE");
-        initialState.setObjects(gameState.getGameObjects());
-        initialState.setGameOver(gameState.isGameOver());
-        initialState.setPlayerScores(gameState.getPlayerScores());
-        sendMessage(initialState);
-        ServerLogger.log("Estado inicial del juego enviado al jugador: " + playerId);
+    public ClientHandler(Socket socket, RoomRegistry rooms) {
+        this.socket = socket;
+        this.rooms = rooms;
+        this.remoteAddress = String.valueOf(socket.getRemoteSocketAddress());
     }
 
     @Override
     public void run() {
         try {
-            while (running && !socket.isClosed()) {
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            writerThread = Thread.ofVirtual().name("tcp-writer-" + remoteAddress).start(() -> writeLoop(out));
+            ServerLogger.log("Nueva conexión TCP entrante: " + remoteAddress);
+
+            while (!closed.get()) {
                 try {
-                    Object obj = in.readObject();
-                    if (obj instanceof Message) {
-                        Message message = (Message) obj;
-                        ServerLogger.log("Mensaje recibido del jugador " + playerId + ": " + message);
-
-                        if (message.getAction().equals("PLAYER_INPUT")) {
-                            ServerLogger.log("Entrada del jugador " + playerId + ": " + message.getInput());
-                            gameState.handleInput(playerId, message.getInput());
-
-                            // Send immediate update after input
-                            sendMessage(createUpdateMessage());
-                        }
-                    } else {
-                        ServerLogger.error("Received unknown object type from player " + playerId + ": " + (obj != null ? obj.getClass().getName() : "null"), null);
+                    Message message = BinaryMessageCodec.INSTANCE.decodeFromClient(TcpFraming.read(in, TcpFraming.MAX_CLIENT_FRAME_LENGTH));
+                    if ("JOIN_GAME".equals(message.getAction()) || "SPECTATE".equals(message.getAction())) {
+                        message.setCodec(BinaryMessageCodec.NAME); // Por TCP solo existe el formato binario
                     }
-                } catch (ClassNotFoundException e) {
-                    ServerLogger.error("Error reading message from client " + playerId + ": " + e.getMessage(), e);
+                    rooms.handleMessage(this, message);
                 } catch (SocketTimeoutException e) {
-                    ServerLogger.log("Tiempo de espera del socket para el jugador " + playerId + " - verificando estado de la conexión");
-                    if (!checkConnection()) {
-                        throw new IOException("Client not responding");
-                    }
+                    // Sin tráfico del cliente: un PING fallará al escribir si la conexión está muerta
+                    send(new Message("PING"), BinaryMessageCodec.INSTANCE);
                 }
             }
-        } catch (IOException e) {
-            ServerLogger.error("Client " + playerId + " disconnected: " + e.getMessage(), null);
+        } catch (EOFException e) {
+            // El cliente cerró la conexión
+        } catch (IOException | RuntimeException e) {
+            if (!closed.get()) {
+                ServerLogger.error("Error en la conexión TCP " + remoteAddress + ": " + e.getMessage(), null);
+            }
         } finally {
             disconnect();
         }
     }
 
-    private boolean checkConnection() {
+    // Escribe las tramas pendientes y solo hace flush cuando la cola se vacía
+    private void writeLoop(DataOutputStream out) {
         try {
-            if (socket.isClosed() || !socket.isConnected()) {
-                return false;
+            while (!closed.get()) {
+                Pending frame = outQueue.take();
+                write(out, frame);
+                while ((frame = outQueue.poll()) != null) {
+                    write(out, frame);
+                }
+                out.flush();
             }
-            // Send a ping message to check if client is still responsive
-            Message ping = new Message("PING");
-            sendMessage(ping);
-            return true;
+        } catch (InterruptedException e) {
+            // Cierre de la conexión
         } catch (IOException e) {
-            ServerLogger.error("Connection check failed for player " + playerId + ": " + e.getMessage(), e);
-            return false;
+            if (!closed.get()) {
+                ServerLogger.error("Error enviando al cliente TCP " + remoteAddress + ": " + e.getMessage(), null);
+            }
+        } finally {
+            disconnect();
         }
     }
 
-    private Message createUpdateMessage() {
-        Message update = new Message("UPDATE_STATE");
-        update.setObjects(gameState.getGameObjects());
-        update.setGameOver(gameState.isGameOver());
-        update.setPlayerScores(gameState.getPlayerScores());
-        return update;
+    private void write(DataOutputStream out, Pending frame) throws IOException {
+        queuedBytes.addAndGet(-frame.payload().remaining());
+        TcpFraming.write(out, frame.payload());
     }
 
-    public void sendMessage(Message message) throws IOException {
-        if (socket.isClosed()) {
-            throw new IOException("Socket is closed for player " + playerId);
-        }
+    // --- ClientConnection ---
 
-        try {
-            synchronized (out) {
-                out.writeObject(message);
-                out.flush();
-                out.reset();
-            }
-        } catch (IOException e) {
-            ServerLogger.error("Error sending message to client " + playerId + ": " + e.getMessage(), e);
-            disconnect();
-            throw e;
-        }
+    @Override
+    public boolean isOpen() {
+        return !closed.get();
     }
 
-    private void disconnect() {
-        running = false;
-        closeResources();
-        gameState.removePlayer(playerId);
-        ServerLogger.log("Manejador de cliente para el jugador " + playerId + " desconectado");
+    @Override
+    public void send(Message message, MessageCodec codec) {
+        enqueue(new Pending(BinaryMessageCodec.INSTANCE.encode(message, ByteBuffer.allocate(64)), false));
     }
 
-    private void closeResources() {
-        try {
-            if (in != null) {
-                in.close();
-            }
-        } catch (IOException e) {
-            ServerLogger.error("Error closing input stream for player " + playerId + ": " + e.getMessage(), e);
+    @Override
+    public void send(BroadcastFrame frame) {
+        // La trama se reutiliza en el siguiente tick: copiar los bytes para el hilo escritor
+        ByteBuffer payload = frame.payload();
+        ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+        copy.put(payload).flip();
+        if (frame.isKeyframe()) {
+            dropStaleBroadcasts();
         }
-        try {
-            if (out != null) {
-                out.close();
+        enqueue(new Pending(copy, true));
+    }
+
+    // Lo que el escritor aún no ha tomado ya no hace falta: el estado nuevo lo incluye
+    private void dropStaleBroadcasts() {
+        int dropped = 0;
+        for (Pending pending : outQueue) {
+            if (pending.broadcast() && outQueue.remove(pending)) {
+                queuedBytes.addAndGet(-pending.payload().remaining());
+                dropped++;
             }
-        } catch (IOException e) {
-            ServerLogger.error("Error closing output stream for player " + playerId + ": " + e.getMessage(), e);
         }
+        if (dropped > 0) {
+            stats.coalesced(dropped);
+        }
+    }
+
+    private void enqueue(Pending frame) {
+        if (closed.get()) {
+            return;
+        }
+        int bytes = frame.payload().remaining();
+        queuedBytes.addAndGet(bytes);
+        if (outQueue.offer(frame)) {
+            stats.queued(bytes);
+        } else {
+            queuedBytes.addAndGet(-bytes);
+            // Ni siquiera mantiene el ritmo de los estados completos: se da por perdido.
+            // Solo se cierra el socket; la salida de la sala la hace el hilo lector, fuera del tick.
+            ServerLogger.error("Cliente TCP " + remoteAddress + " desconectado: demasiadas tramas pendientes", null);
+            closeSocket();
+        }
+    }
+
+    @Override
+    public int getQueuedFrames() {
+        return outQueue.size();
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    @Override
+    public OutboundStats getOutboundStats() {
+        return stats;
+    }
+
+    @Override
+    public ClientSession getSession() {
+        return session;
+    }
+
+    @Override
+    public void setSession(ClientSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public void close() {
+        closeSocket(); // El hilo lector termina y sale de la sala
+    }
+
+    private void closeSocket() {
         try {
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
-                ServerLogger.log("Socket del cliente cerrado para el jugador: " + playerId);
-            }
+            socket.close();
         } catch (IOException e) {
-            ServerLogger.error("Error closing socket for player " + playerId + ": " + e.getMessage(), e);
+            ServerLogger.error("Error cerrando el socket de " + remoteAddress + ": " + e.getMessage(), e);
         }
     }
 
-    @Override
-    public void interrupt() {
-        super.interrupt();
-        disconnect();
+    // Idempotente: lo llaman el hilo lector y el escritor al terminar
+    void disconnect() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+        closeSocket();
+        if (!rooms.disconnect(this)) {
+            ServerLogger.log("Conexión TCP (no unida) cerrada: " + remoteAddress);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package com.expociencia.server;
+
+import com.expociencia.game.Area;
+import com.expociencia.messages.MessageCodec;
+
+/**
+ * Estado del protocolo asociado a cada conexión unida a una sala, como
+ * jugador o como espectador.
+ */
+class ClientSession {
+    // Los espectadores no tienen jugador
+    static final int SPECTATOR_ID = -1;
+
+    private final int playerId;
+    private final Room room;
+    private final boolean deltaProtocol;
+    private final MessageCodec codec;
+    // Lado de la vista con área de interés; 0 = recibe el tablero entero
+    private final int viewport;
+    // Zona del último estado completo enviado (solo el hilo que hace los envíos de la sala)
+    private Area area;
+    // El cliente necesita un estado completo antes de poder aplicar más deltas
+    private volatile boolean keyframeNeeded = true;
+    // Envíos saltados seguidos por tener la cola llena (solo el hilo que hace los envíos de la sala)
+    private int skippedFrames = 0;
+
+    ClientSession(int playerId, Room room, boolean deltaProtocol, MessageCodec codec, int viewport) {
+        this.playerId = playerId;
+        this.room = room;
+        this.deltaProtocol = deltaProtocol;
+        this.codec = codec;
+        this.viewport = viewport;
+    }
+
+    int getPlayerId() {
+        return playerId;
+    }
+
+    Room getRoom() {
+        return room;
+    }
+
+    boolean isSpectator() {
+        return playerId == SPECTATOR_ID;
+    }
+
+    MessageCodec getCodec() {
+        return codec;
+    }
+
+    boolean usesDelta() {
+        return deltaProtocol;
+    }
+
+    int getViewport() {
+        return viewport;
+    }
+
+    boolean hasViewport() {
+        return viewport > 0;
+    }
+
+    Area getArea() {
+        return area;
+    }
+
+    void setArea(Area area) {
+        this.area = area;
+    }
+
+    boolean needsKeyframe() {
+        return keyframeNeeded;
+    }
+
+    void requestKeyframe() {
+        keyframeNeeded = true;
+    }
+
+    void keyframeSent() {
+        keyframeNeeded = false;
+    }
+
+    int frameSkipped() {
+        return ++skippedFrames;
+    }
+
+    void frameDelivered() {
+        skippedFrames = 0;
+    }
+}
@@ -3,11 +3,11 @@ package com.expociencia.server;
 import java.net.*;
 import java.util.*;
 import java.io.*;
-import java.util.concurrent.ConcurrentHashMap;
-import com.google.gson.Gson;
+import java.nio.ByteBuffer;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.net.InetSocketAddress;
-import com.expociencia.game.GameState;
+import com.expociencia.messages.BinaryMessageCodec;
+import com.expociencia.messages.JsonMessageCodec;
 import com.expociencia.messages.Message;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
@@ -17,35 +17,31 @@ import org.java_websocket.server.WebSocketServer;
 
 public class GameServer extends WebSocketServer {
 
-    private GameState gameState;
-    private Timer gameTimer;
-    private int updateInterval = 150;
-
-    // Almacena conexiones (clientes) que se han unido al juego
-    private Map<WebSocket, Integer> playerConnections = new ConcurrentHashMap<>();
-    private int nextPlayerId = 0;
-    private Gson gson = new Gson();
+    // Cada código de sala tiene su propia partida y su propio bucle de juego
+    private final RoomRegistry rooms;
 
     public GameServer(int port) throws IOException {
+        this(port, new RoomRegistry());
+    }
+
+    // Salas compartidas con otros transportes (TcpTransport)
+    public GameServer(int port, RoomRegistry rooms) throws IOException {
         super(new InetSocketAddress(port));
-        gameState = new GameState();
+        this.rooms = rooms;
         ServerLogger.log("Servidor WebSocket iniciado en el puerto " + port);
     }
 
     @Override
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
         // NO añadir al jugador todavía. Solo esperar a que envíe su nombre.
+        conn.setAttachment(new WebSocketConnection(conn));
         ServerLogger.log("Nueva conexión entrante: " + conn.getRemoteSocketAddress());
     }
 
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
-        Integer playerId = playerConnections.remove(conn);
-        if (playerId != null) {
-            gameState.removePlayer(playerId);
-            ServerLogger.log("Cliente desconectado: Jugador " + playerId);
-            broadcastState(); // Notificar a todos que el jugador se fue
-        } else {
+        WebSocketConnection connection = conn.getAttachment();
+        if (connection == null || !rooms.disconnect(connection)) {
             ServerLogger.log("Conexión (no unida) cerrada: " + conn.getRemoteSocketAddress());
         }
     }
@@ -53,67 +49,22 @@ public class GameServer extends WebSocketServer {
     @Override
     public void onMessage(WebSocket conn, String message) {
         try {
-            Message inputMessage = gson.fromJson(message, Message.class);
-            Integer playerId = playerConnections.get(conn); // Puede ser null si aún no se une
-
-            // --- Lógica de Mensajes Múltiples ---
-            switch (inputMessage.getAction()) {
-                case "JOIN_GAME":
-                    if (playerId == null) { // Nuevo jugador
-                        int newPlayerId = nextPlayerId++;
-                        playerConnections.put(conn, newPlayerId);
-
-                        String playerName = inputMessage.getPlayerName();
-                        if (playerName == null || playerName.trim().isEmpty()) {
-                            playerName = "Player " + newPlayerId;
-                        }
-                        // Truncar a 6 caracteres
-                        if (playerName.length() > 6) {
-                            playerName = playerName.substring(0, 6);
-                        }
-
-                        gameState.addPlayer(newPlayerId, playerName);
-
-                        // Enviar al jugador su ID
-                        Message idMessage = new Message("PLAYER_ID");
-                        idMessage.setPlayerId(newPlayerId);
-                        conn.send(gson.toJson(idMessage));
-
-                        ServerLogger.log("Jugador " + newPlayerId + " (" + playerName + ") se unió.");
-                        broadcastState(); // Enviar estado del lobby a todos
-                    }
-                    break;
-
-                case "PLAYER_INPUT":
-                    if (playerId != null) {
-                        gameState.handleInput(playerId, inputMessage.getInput());
-                    }
-                    break;
-
-                case "START_GAME":
-                    // Solo el primer jugador (ID 0) puede iniciar el juego
-                    if (playerId != null && !gameState.isGameInProgress()) {
-                        ServerLogger.log("Jugador " + playerId + " inició el juego.");
-                        gameState.startGame();
-                        broadcastState(); // Notificar a todos que el juego comenzó
-                    }
-                    break;
-
-                case "RESTART_GAME":
-                    // Cualquiera puede reiniciar si el juego terminó
-                    if (playerId != null && gameState.isGameOver()) {
-                        ServerLogger.log("Juego reiniciado por Jugador " + playerId);
-                        gameState.resetGame();
-                        broadcastState(); // Enviar a todos de vuelta al lobby
-                    }
-                    break;
-            }
-
+            rooms.handleMessage(conn.getAttachment(), JsonMessageCodec.INSTANCE.fromJson(message));
         } catch (Exception e) {
             ServerLogger.error("Error procesando mensaje JSON: " + message, e);
         }
     }
 
+    // Clientes que negociaron el codec binario
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        try {
+            rooms.handleMessage(conn.getAttachment(), BinaryMessageCodec.INSTANCE.decodeFromClient(message));
+        } catch (Exception e) {
+            ServerLogger.error("Error procesando mensaje binario de " + conn.getRemoteSocketAddress(), e);
+        }
+    }
+
     @Override
     public void onError(WebSocket conn, Exception ex) {
         ServerLogger.error("Error en WebSocket", ex);
@@ -127,69 +78,13 @@ public class GameServer extends WebSocketServer {
         ServerLogger.log("Servidor WebSocket arrancado exitosamente.");
     }
 
-    // --- LÓGICA DEL JUEGO (Tus métodos) ---
-
-    private void scheduleGameLoop() {
-        if (gameTimer != null) {
-            gameTimer.cancel();
-        }
-        gameTimer = new Timer("GameLoop");
-        gameTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                try {
-                    gameState.update();
-
-                    if (gameState.hasLevelChanged()) {
-                        updateInterval = Math.max(50, 150 - (gameState.getCurrentLevel() - 1) * 20);
-                        ServerLogger.log("Nivel cambiado. Nuevo intervalo de actualización: " + updateInterval + "ms.");
-                        scheduleGameLoop(); // Re-planificar el bucle con la nueva velocidad
-                        return;
-                    }
-
-                    if (!playerConnections.isEmpty()) {
-                        broadcastState();
-                    }
-                } catch (Exception e) {
-                    ServerLogger.error("Error en el bucle del juego: " + e.getMessage(), e);
-                }
-            }
-        }, 0, this.updateInterval);
-    }
-
-    private void broadcastState() {
-        // FIX: Si el juego terminó, solo enviamos el estado una vez y luego el GameLoop
-        // ya no debería llamar esto.
-        // Pero si estamos en el lobby y hay jugadores, sí debemos enviar.
-        if (playerConnections.isEmpty())
-            return;
-
-        Message message = new Message("UPDATE_STATE");
-        message.setObjects(gameState.getGameObjects());
-        message.setGameOver(gameState.isGameOver());
-        message.setGameInProgress(gameState.isGameInProgress());
-        message.setPlayerScores(gameState.getPlayerScores());
-        message.setPlayerNames(gameState.getPlayerNames());
-
-        String jsonState = gson.toJson(message);
-
-        for (WebSocket client : playerConnections.keySet()) {
-            // FIX de robustez: Envía solo si la conexión está abierta
-            if (client.isOpen()) {
-                client.send(jsonState);
-            }
-        }
-    }
-
     @Override
     public void stop(int timeout) throws InterruptedException {
         ServerLogger.log("Deteniendo el servidor WebSocket...");
 
-        // 1. Detener el bucle del juego
-        if (gameTimer != null) {
-            gameTimer.cancel();
-            ServerLogger.log("Bucle del juego detenido.");
-        }
+        // 1. Detener los bucles de juego de todas las salas
+        rooms.stopAll();
+        ServerLogger.log("Bucles del juego detenidos.");
 
         // 2. Detener el WebSocketServer (esto cierra todas las conexiones)
         super.stop(timeout);
@@ -212,15 +107,30 @@ public class GameServer extends WebSocketServer {
 
     public static void main(String[] args) {
         int wsPort = 12345;
+        int tcpPort = TcpGameServer.DEFAULT_PORT;
         // int httpPort = 8080; // Eliminado
         try {
-            GameServer server = new GameServer(wsPort);
+            RoomRegistry rooms = new RoomRegistry();
+            GameServer server = new GameServer(wsPort, rooms);
 
             // 1. Inicia el servidor WebSocket (en un hilo separado)
             server.start();
 
-            // --- CORRECCIÓN: Iniciar el bucle del juego ---
-            server.scheduleGameLoop();
+            // Clientes de escritorio por TCP, en las mismas salas (snake.tcp.transport=nio|threads)
+            TcpTransport tcpServer = TcpTransport.forName(System.getProperty("snake.tcp.transport"), tcpPort, rooms);
+            tcpServer.start();
+
+            // Las salas arrancan su bucle al crearse; aquí solo el desalojo de salas vacías
+            rooms.startEviction();
+
+            // Métricas para Prometheus, solo en local salvo que se indique otra interfaz (puerto 0: desactivadas)
+            int metricsPort = Integer.getInteger("snake.metrics.port", MetricsServer.DEFAULT_PORT);
+            MetricsServer metricsServer = metricsPort > 0
+                    ? new MetricsServer(System.getProperty("snake.metrics.host", MetricsServer.DEFAULT_HOST), metricsPort, rooms)
+                    : null;
+            if (metricsServer != null) {
+                metricsServer.start();
+            }
 
             // 🛑 2. ELIMINACIÓN DEL SERVIDOR HTTP DE ARCHIVOS ANTIGUOS
             /*
@@ -243,6 +153,10 @@ public class GameServer extends WebSocketServer {
             // 3. Hook de apagado (llama al método stop() corregido)
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 System.out.println("Apagando el servidor...");
+                tcpServer.stop();
+                if (metricsServer != null) {
+                    metricsServer.stop();
+                }
                 server.stop();
             }));
 
@@ -0,0 +1,149 @@
+package com.expociencia.server;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias al estilo HdrHistogram, sin dependencias, con tres
+ * cifras significativas: en nanosegundos, exacto hasta LINEAR ns y, por
+ * encima, cada potencia de dos partida en HALF tramos lineales, así el error
+ * relativo de cualquier valor es como mucho 1/HALF (~0,1 %) hasta ~68 s.
+ * Registrar es un índice y un incremento atómico, sin locks ni reservas de
+ * memoria: se puede llamar en cada tick y en cada mensaje.
+ *
+ * Se exporta como histograma de Prometheus con cubetas fijas 1-2,5-5 (de
+ * 1 us a 10 s, calculadas desde las finas) y, aparte, los cuantiles exactos
+ * acumulados desde el arranque, que es donde se nota la precisión.
+ */
+final class LatencyHistogram {
+    private static final int LINEAR = 2048;   // 0..2047 ns, uno por cubeta
+    private static final int HALF = LINEAR / 2; // Tramos por potencia de dos por encima
+    private static final int LINEAR_BITS = 11;
+    private static final int MAX_EXPONENT = 35; // Hasta 2^36 ns; lo que pase va a la última cubeta
+    private static final int BUCKETS = LINEAR + (MAX_EXPONENT - LINEAR_BITS + 1) * HALF;
+    // Límites de las cubetas de Prometheus, en nanosegundos
+    private static final long[] EXPORT_BOUNDS = exportBounds();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final String name;
+    private final String help;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    LatencyHistogram(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sumNanos.add(value);
+    }
+
+    // Para medir con una sola llamada: histogram.recordSince(start)
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < LINEAR) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos); // >= LINEAR_BITS
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        // Los LINEAR_BITS bits más altos: de HALF a LINEAR - 1
+        int sub = (int) (nanos >>> (exponent - LINEAR_BITS + 1));
+        return LINEAR + (exponent - LINEAR_BITS) * HALF + (sub - HALF);
+    }
+
+    // Menor valor que cae en la cubeta
+    static long lowestOf(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int offset = bucket - LINEAR;
+        int exponent = LINEAR_BITS + offset / HALF;
+        long sub = HALF + offset % HALF;
+        return sub << (exponent - LINEAR_BITS + 1);
+    }
+
+    private static long[] exportBounds() {
+        long[] bounds = new long[22];
+        int i = 0;
+        for (long decade = 1_000; decade <= 1_000_000_000L; decade *= 10) {
+            bounds[i++] = decade;
+            bounds[i++] = decade * 5 / 2;
+            bounds[i++] = decade * 5;
+        }
+        bounds[i] = 10_000_000_000L;
+        return bounds;
+    }
+
+    // Siempre las mismas cubetas, para que las consultas por cuantiles no cambien entre lecturas
+    void writeTo(StringBuilder out) {
+        long[] snapshot = new long[BUCKETS];
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            cumulative += snapshot[i];
+        }
+        // Cuenta y suma se leen aparte de las cubetas: +Inf nunca queda por debajo de la última
+        long total = Math.max(count.sum(), cumulative);
+        long sum = sumNanos.sum();
+
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long below = 0;
+        int bucket = 0;
+        for (long bound : EXPORT_BOUNDS) {
+            // Una cubeta fina cuenta en el límite si su menor valor no lo pasa (error <= 0,1 %)
+            while (bucket < BUCKETS && lowestOf(bucket) <= bound) {
+                below += snapshot[bucket++];
+            }
+            out.append(name).append("_bucket{le=\"").append(seconds(bound)).append("\"} ").append(below).append('\n');
+        }
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(total).append('\n');
+        out.append(name).append("_sum ").append(seconds(sum)).append('\n');
+        out.append(name).append("_count ").append(total).append('\n');
+
+        String quantileName = name.replace("_seconds", "_quantile_seconds");
+        out.append("# HELP ").append(quantileName).append(" Cuantiles de ").append(name)
+                .append(" desde el arranque (tres cifras significativas).\n");
+        out.append("# TYPE ").append(quantileName).append(" gauge\n");
+        for (double quantile : QUANTILES) {
+            out.append(quantileName).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(valueAt(snapshot, cumulative, quantile))).append('\n');
+        }
+    }
+
+    // Menor valor de la cubeta donde la cuenta acumulada alcanza el cuantil; 0 sin datos
+    private static long valueAt(long[] snapshot, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return lowestOf(i);
+            }
+        }
+        return lowestOf(snapshot.length - 1);
+    }
+
+    // Exacto y sin notación científica: 0.000012
+    static String seconds(long nanos) {
+        return BigDecimal.valueOf(nanos, 9).stripTrailingZeros().toPlainString();
+    }
+}
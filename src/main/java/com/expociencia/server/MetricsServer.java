@@ -0,0 +1,73 @@
+package com.expociencia.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Endpoint HTTP de métricas (GET /metrics, formato de texto de Prometheus)
+ * con el HttpServer del JDK. Por defecto solo escucha en la interfaz local:
+ * no lleva autenticación y no debe quedar expuesto a los jugadores.
+ *
+ * Un único hilo atiende las peticiones; generar las métricas no toca los
+ * locks de las salas.
+ */
+public class MetricsServer {
+    public static final int DEFAULT_PORT = 9400;
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+
+    public MetricsServer(String host, int port, RoomRegistry rooms) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/metrics", exchange -> serve(exchange, rooms));
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Metrics");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public void start() {
+        server.start();
+        ServerLogger.log("Métricas disponibles en http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/metrics");
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private static void serve(HttpExchange exchange, RoomRegistry rooms) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body;
+            try {
+                body = ServerMetrics.scrape(rooms).getBytes(StandardCharsets.UTF_8);
+            } catch (RuntimeException e) {
+                ServerLogger.error("Error generando las métricas", e);
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream response = exchange.getResponseBody()) {
+                response.write(body);
+            }
+        }
+    }
+}
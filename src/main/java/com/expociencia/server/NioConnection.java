@@ -0,0 +1,329 @@
+package com.expociencia.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.expociencia.messages.BinaryMessageCodec;
+import com.expociencia.messages.Message;
+import com.expociencia.messages.MessageCodec;
+import com.expociencia.messages.TcpFraming;
+
+/**
+ * Conexión TCP atendida por {@link NioGameServer}. Lectura, escritura y
+ * cierre del socket ocurren solo en el hilo del selector; los hilos de las
+ * salas solo encolan tramas ya enmarcadas y piden un vaciado. Un estado
+ * completo nuevo sustituye a las tramas de difusión que aún no se empezaron
+ * a escribir.
+ *
+ * Los mensajes decodificados y la desconexión pasan a un buzón que se vacía
+ * en un hilo virtual, uno por conexión a la vez: se atienden en el orden en
+ * que llegaron sin que el selector espere a los locks de la sala.
+ */
+class NioConnection implements ClientConnection {
+    private static final int READ_BUFFER_SIZE = 512; // Los mensajes del cliente ocupan pocos bytes
+    private static final int MAX_PENDING_FRAMES = 64;
+    private static final long IDLE_PING_MS = 10000; // Como el SO_TIMEOUT de ClientHandler
+    // Mensajes recibidos sin atender; un cliente que manda más de lo que la sala procesa se desconecta
+    private static final int MAX_INBOX_MESSAGES = 256;
+
+    private final NioGameServer server;
+    private final RoomRegistry rooms;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final String remoteAddress;
+    // Tramas aún sin tocar, protegidas por sí misma; se pueden sustituir por un estado más reciente
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final AtomicInteger queuedFrames = new AtomicInteger(); // pending + inFlight
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final OutboundStats stats = new OutboundStats();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile boolean closeRequested = false;
+    private volatile boolean closed = false;
+    private volatile ClientSession session;
+    // Buzón de entrada: lo llena el selector y lo vacía un hilo virtual cada vez
+    private final Queue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inboxSize = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    // --- Solo el hilo del selector ---
+    private ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final ArrayDeque<ByteBuffer> inFlight = new ArrayDeque<>(); // Tomadas de pending para escribir
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_PENDING_FRAMES];
+    private long lastReadAt = System.currentTimeMillis();
+
+    // 'broadcast': trama de difusión de la sala, que un estado completo posterior deja obsoleta
+    private record Pending(ByteBuffer frame, boolean broadcast) {
+    }
+
+    NioConnection(NioGameServer server, RoomRegistry rooms, SocketChannel channel, SelectionKey key) {
+        this.server = server;
+        this.rooms = rooms;
+        this.channel = channel;
+        this.key = key;
+        this.remoteAddress = String.valueOf(channel.socket().getRemoteSocketAddress());
+    }
+
+    // --- Lectura ---
+
+    void read() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            throw new EOFException();
+        }
+        lastReadAt = System.currentTimeMillis();
+        readBuffer.flip();
+        int needed = 0;
+        while (readBuffer.remaining() >= TcpFraming.HEADER_LENGTH) {
+            int length = readBuffer.getInt(readBuffer.position());
+            TcpFraming.checkLength(length, TcpFraming.MAX_CLIENT_FRAME_LENGTH);
+            needed = TcpFraming.HEADER_LENGTH + length;
+            if (readBuffer.remaining() < needed) {
+                break; // Trama incompleta: esperar al resto
+            }
+            ByteBuffer payload = readBuffer.slice(readBuffer.position() + TcpFraming.HEADER_LENGTH, length);
+            readBuffer.position(readBuffer.position() + needed);
+            needed = 0;
+            handle(BinaryMessageCodec.INSTANCE.decodeFromClient(payload));
+            if (closed || closeRequested) {
+                return;
+            }
+        }
+        readBuffer.compact();
+        if (needed > readBuffer.capacity()) {
+            // Solo crece para tramas que no caben; lo normal es reutilizar siempre el mismo buffer
+            ByteBuffer grown = ByteBuffer.allocateDirect(needed);
+            readBuffer.flip();
+            grown.put(readBuffer);
+            readBuffer = grown;
+        }
+    }
+
+    private void handle(Message message) {
+        if ("JOIN_GAME".equals(message.getAction()) || "SPECTATE".equals(message.getAction())) {
+            message.setCodec(BinaryMessageCodec.NAME); // Por TCP solo existe el formato binario
+        }
+        if (inboxSize.get() >= MAX_INBOX_MESSAGES) {
+            ServerLogger.error("Cliente TCP " + remoteAddress + " desconectado: demasiados mensajes sin atender", null);
+            closeNow();
+            return;
+        }
+        dispatch(() -> rooms.handleMessage(this, message));
+    }
+
+    // --- Buzón de entrada (fuera del selector) ---
+
+    // Solo desde el selector; si no hay ningún hilo vaciando el buzón, arranca uno
+    private void dispatch(Runnable task) {
+        inboxSize.incrementAndGet();
+        inbox.add(task);
+        if (draining.compareAndSet(false, true)) {
+            server.execute(this::drainInbox);
+        }
+    }
+
+    private void drainInbox() {
+        do {
+            Runnable task;
+            while ((task = inbox.poll()) != null) {
+                inboxSize.decrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    ServerLogger.error("Error atendiendo al cliente TCP " + remoteAddress + ": " + e.getMessage(), e);
+                }
+            }
+            draining.set(false);
+            // Lo que llegó entre el último poll y bajar la marca lo atiende este mismo hilo
+        } while (!inbox.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    // Sin tráfico del cliente: un PING fallará al escribir si la conexión está muerta
+    void checkIdle(long now) {
+        if (now - lastReadAt >= IDLE_PING_MS) {
+            lastReadAt = now;
+            send(new Message("PING"), BinaryMessageCodec.INSTANCE);
+        }
+    }
+
+    // --- Escritura ---
+
+    // Escribe lo pendiente en una sola llamada; si el socket se llena, espera a OP_WRITE
+    void flush() throws IOException {
+        flushScheduled.set(false);
+        if (closed) {
+            return;
+        }
+        if (closeRequested) {
+            closeNow();
+            return;
+        }
+        while (true) {
+            if (inFlight.isEmpty()) {
+                // Solo se toma un nuevo lote cuando el anterior salió entero: mientras el socket
+                // esté lleno, lo nuevo espera en 'pending', donde aún se puede sustituir
+                synchronized (pending) {
+                    while (inFlight.size() < gather.length && !pending.isEmpty()) {
+                        inFlight.add(pending.poll().frame());
+                    }
+                }
+            }
+            if (inFlight.isEmpty()) {
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+            int count = 0;
+            for (ByteBuffer frame : inFlight) {
+                gather[count++] = frame;
+            }
+            channel.write(gather, 0, count);
+            Arrays.fill(gather, 0, count, null);
+            while (!inFlight.isEmpty() && !inFlight.peek().hasRemaining()) {
+                ByteBuffer sent = inFlight.poll();
+                queuedFrames.decrementAndGet();
+                queuedBytes.addAndGet(-sent.limit());
+            }
+            if (!inFlight.isEmpty()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+    }
+
+    private void enqueue(ByteBuffer frame, boolean broadcast) {
+        if (!isOpen()) {
+            return;
+        }
+        boolean overflow;
+        synchronized (pending) {
+            overflow = queuedFrames.get() >= MAX_PENDING_FRAMES;
+            if (!overflow) {
+                pending.add(new Pending(frame, broadcast));
+                queuedFrames.incrementAndGet();
+                queuedBytes.addAndGet(frame.remaining());
+                stats.queued(frame.remaining());
+            }
+        }
+        if (overflow) {
+            // Ni siquiera mantiene el ritmo de los estados completos: se da por perdido.
+            // El cierre (y la salida de la sala) lo hace el selector, fuera del tick.
+            ServerLogger.error("Cliente TCP " + remoteAddress + " desconectado: demasiadas tramas pendientes", null);
+            closeRequested = true;
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            server.scheduleFlush(this);
+        }
+    }
+
+    // Con el lock de 'pending': un estado completo hace innecesarias las difusiones que aún esperan
+    private void dropStaleBroadcasts() {
+        int dropped = 0;
+        for (Iterator<Pending> it = pending.iterator(); it.hasNext(); ) {
+            Pending stale = it.next();
+            if (stale.broadcast()) {
+                it.remove();
+                queuedFrames.decrementAndGet();
+                queuedBytes.addAndGet(-stale.frame().remaining());
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            stats.coalesced(dropped);
+        }
+    }
+
+    // Solo desde el hilo del selector; la salida de la sala va al buzón, detrás de los mensajes pendientes
+    void closeNow() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ServerLogger.error("Error cerrando el socket de " + remoteAddress + ": " + e.getMessage(), e);
+        }
+        synchronized (pending) {
+            pending.clear();
+            inFlight.clear();
+            queuedFrames.set(0);
+            queuedBytes.set(0);
+        }
+        dispatch(() -> {
+            if (!rooms.disconnect(this)) {
+                ServerLogger.log("Conexión TCP (no unida) cerrada: " + remoteAddress);
+            }
+        });
+    }
+
+    // --- ClientConnection ---
+
+    @Override
+    public boolean isOpen() {
+        return !closed && !closeRequested;
+    }
+
+    @Override
+    public void send(Message message, MessageCodec codec) {
+        enqueue(TcpFraming.frame(BinaryMessageCodec.INSTANCE.encode(message, ByteBuffer.allocate(64)), false), false);
+    }
+
+    @Override
+    public void send(BroadcastFrame frame) {
+        // La misma trama del tick para todas las conexiones: solo se crea una vista por cliente
+        synchronized (pending) {
+            if (frame.isKeyframe()) {
+                dropStaleBroadcasts();
+            }
+            enqueue(frame.tcpFrame(), true);
+        }
+    }
+
+    @Override
+    public int getQueuedFrames() {
+        return queuedFrames.get();
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    @Override
+    public OutboundStats getOutboundStats() {
+        return stats;
+    }
+
+    @Override
+    public ClientSession getSession() {
+        return session;
+    }
+
+    @Override
+    public void setSession(ClientSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public void close() {
+        closeRequested = true;
+        if (flushScheduled.compareAndSet(false, true)) {
+            server.scheduleFlush(this);
+        }
+    }
+}
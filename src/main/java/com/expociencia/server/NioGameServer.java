@@ -0,0 +1,205 @@
+package com.expociencia.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Servidor TCP para los clientes de escritorio con un único hilo y un
+ * Selector: acepta, lee y escribe todas las conexiones sin bloquear.
+ *
+ * Los envíos no escriben en el socket desde el hilo de la sala: encolan la
+ * trama TCP compartida del tick ({@link BroadcastFrame#tcpFrame()}) y avisan
+ * al selector, que despierta una sola vez por tanda de envíos y vuelca cada
+ * cola con una escritura agrupada (gathering write).
+ *
+ * En sentido contrario tampoco se bloquea: el selector solo lee y decodifica;
+ * los mensajes y las desconexiones se atienden en hilos virtuales (ver
+ * {@link NioConnection}), porque unirse o salir de una sala espera a sus
+ * locks y no debe frenar la red de las demás salas.
+ */
+public class NioGameServer implements TcpTransport {
+    private static final long SELECT_TIMEOUT_MS = 1000;
+
+    private final int port;
+    private final RoomRegistry rooms;
+    // Conexiones con tramas pendientes de escribir, avisadas desde otros hilos
+    private final Queue<NioConnection> pendingFlushes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupRequested = new AtomicBoolean(false);
+    // Atención de los mensajes recibidos, fuera del selector
+    private final ExecutorService handlers = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("tcp-handler-", 0).factory());
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running = false;
+
+    public NioGameServer(int port, RoomRegistry rooms) {
+        this.port = port;
+        this.rooms = rooms;
+    }
+
+    @Override
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(this::selectLoop, "TcpSelector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        ServerLogger.log("Servidor TCP (NIO) iniciado en el puerto " + port);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ServerLogger.log("Servidor TCP detenido.");
+    }
+
+    // Lo llaman los hilos de las salas: como mucho un wakeup() hasta que el selector lo atiende
+    void scheduleFlush(NioConnection conn) {
+        pendingFlushes.offer(conn);
+        if (wakeupRequested.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    // Lo llaman las conexiones desde el selector; cada una atiende sus mensajes en orden
+    void execute(Runnable task) {
+        handlers.execute(task);
+    }
+
+    // --- Hilo del selector ---
+
+    private void selectLoop() {
+        long lastIdleCheck = System.currentTimeMillis();
+        try {
+            while (running) {
+                // Bajar la marca antes de vaciar: un aviso posterior volverá a despertar el select
+                wakeupRequested.set(false);
+                NioConnection conn;
+                while ((conn = pendingFlushes.poll()) != null) {
+                    flush(conn);
+                }
+
+                selector.select(SELECT_TIMEOUT_MS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        handleKey(key);
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= SELECT_TIMEOUT_MS) {
+                    lastIdleCheck = now;
+                    for (NioConnection open : connections()) {
+                        open.checkIdle(now);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            ServerLogger.error("Error en el selector TCP", e);
+        } finally {
+            closeAll();
+            handlers.shutdown(); // Las desconexiones ya encoladas se atienden igualmente
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        NioConnection conn = (NioConnection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                conn.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                conn.flush();
+            }
+        } catch (EOFException e) {
+            conn.closeNow(); // El cliente cerró la conexión
+        } catch (IOException | RuntimeException e) {
+            ServerLogger.error("Error en la conexión TCP " + conn.getRemoteAddress() + ": " + e.getMessage(), null);
+            conn.closeNow();
+        }
+    }
+
+    private void flush(NioConnection conn) {
+        try {
+            conn.flush();
+        } catch (IOException | RuntimeException e) {
+            ServerLogger.error("Error enviando al cliente TCP " + conn.getRemoteAddress() + ": " + e.getMessage(), null);
+            conn.closeNow();
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            NioConnection conn = new NioConnection(this, rooms, channel, key);
+            key.attach(conn);
+            ServerLogger.log("Nueva conexión TCP entrante: " + conn.getRemoteAddress());
+        } catch (IOException e) {
+            ServerLogger.error("Error aceptando una conexión TCP: " + e.getMessage(), e);
+        }
+    }
+
+    private List<NioConnection> connections() {
+        List<NioConnection> result = new ArrayList<>();
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof NioConnection conn) {
+                result.add(conn);
+            }
+        }
+        return result;
+    }
+
+    private void closeAll() {
+        for (NioConnection conn : connections()) {
+            conn.closeNow();
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            ServerLogger.error("Error cerrando el servidor TCP", e);
+        }
+    }
+}
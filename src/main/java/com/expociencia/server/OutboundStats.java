@@ -0,0 +1,39 @@
+package com.expociencia.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de salida de una conexión: lo que se le ha encolado desde que
+ * se abrió y cuántas tramas se descartaron por llegar otra más reciente.
+ * La profundidad actual de la cola la da cada transporte
+ * ({@link ClientConnection#getQueuedFrames()} y {@link ClientConnection#getQueuedBytes()}).
+ */
+final class OutboundStats {
+    private final LongAdder framesQueued = new LongAdder();
+    private final LongAdder bytesQueued = new LongAdder();
+    private final LongAdder framesCoalesced = new LongAdder();
+
+    void queued(int bytes) {
+        framesQueued.increment();
+        bytesQueued.add(bytes);
+        ServerMetrics.frameQueued(bytes);
+    }
+
+    // Tramas sin enviar reemplazadas (o no encoladas) porque ya hay un estado más reciente
+    void coalesced(int frames) {
+        framesCoalesced.add(frames);
+        ServerMetrics.framesCoalesced(frames);
+    }
+
+    long getFramesQueued() {
+        return framesQueued.sum();
+    }
+
+    long getBytesQueued() {
+        return bytesQueued.sum();
+    }
+
+    long getFramesCoalesced() {
+        return framesCoalesced.sum();
+    }
+}
@@ -0,0 +1,19 @@
+package com.expociencia.server;
+
+/**
+ * Foto de la cola de salida de una conexión, para métricas y registros.
+ * playerId es {@link ClientSession#SPECTATOR_ID} para los espectadores.
+ */
+record QueueStats(String room, String remoteAddress, int playerId, int queuedFrames, long queuedBytes,
+                  long framesQueued, long bytesQueued, long framesCoalesced) {
+
+    static QueueStats of(String room, ClientConnection conn, int playerId) {
+        OutboundStats stats = conn.getOutboundStats();
+        return new QueueStats(room, conn.getRemoteAddress(), playerId, conn.getQueuedFrames(), conn.getQueuedBytes(),
+                stats.getFramesQueued(), stats.getBytesQueued(), stats.getFramesCoalesced());
+    }
+
+    boolean isSpectator() {
+        return playerId == ClientSession.SPECTATOR_ID;
+    }
+}
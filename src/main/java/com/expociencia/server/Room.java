@@ -0,0 +1,508 @@
+package com.expociencia.server;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.expociencia.game.Area;
+import com.expociencia.game.GameSnapshot;
+import com.expociencia.game.GameState;
+import com.expociencia.messages.BinaryMessageCodec;
+import com.expociencia.messages.JsonMessageCodec;
+import com.expociencia.messages.Message;
+import com.expociencia.messages.MessageCodec;
+import com.expociencia.messages.StateDelta;
+
+/**
+ * Una partida independiente: su GameState, su bucle de juego y las
+ * conexiones que se unieron con su código. Los envíos solo llegan a las
+ * conexiones de esta sala.
+ *
+ * Los espectadores (pantallas y proyectores) no son jugadores: reciben el
+ * estado completo a un ritmo menor, desde una tarea aparte que lee la foto
+ * publicada del juego, así nunca retrasan el tick ni los envíos a jugadores.
+ *
+ * En tableros más grandes que su pantalla, los jugadores pueden pedir área
+ * de interés (viewport en JOIN_GAME): reciben solo la zona alrededor de su
+ * cabeza (ver AreaViews) y, cada pocos ticks, un minimapa del tablero entero.
+ */
+public class Room {
+    private final String code;
+    private final GameState gameState;
+    private final TickScheduler scheduler;
+    private volatile TickScheduler.Loop gameLoop;
+    private int updateInterval = intervalForLevel(1);
+
+    // Almacena conexiones (clientes) que se han unido a esta sala
+    private final Map<ClientConnection, Integer> playerConnections = new ConcurrentHashMap<>();
+    private final AtomicInteger nextPlayerId = new AtomicInteger();
+    private volatile long lastActivity = System.currentTimeMillis();
+    // Protege la entrada de jugadores frente al desalojo de la sala
+    private final Object membershipLock = new Object();
+    private boolean closed = false;
+
+    // --- Protocolo delta ---
+    // Serializa update() y los envíos para que los deltas y los estados completos salgan en orden
+    private final Object broadcastLock = new Object();
+    private volatile long stateSequence = 0; // Se escribe bajo broadcastLock; los espectadores solo lo leen
+    // Un cliente con más tramas pendientes que esto deja de recibir envíos hasta ponerse al día,
+    // y entonces recibe solo el último estado completo
+    private static final int MAX_QUEUED_FRAMES = 8;
+    // Por encima de cualquiera de estos límites la conexión se cierra. Los bytes dependen del
+    // tablero: caben MAX_QUEUED_STATES estados completos de la sala (en JSON, el formato mayor)
+    private static final int MAX_CONNECTION_FRAMES = 64;
+    private static final int MAX_QUEUED_STATES = 4;
+    private static final long MIN_CONNECTION_BYTES = 1024 * 1024;
+    private final long maxConnectionBytes;
+    private static final int MAX_SKIPPED_SENDS = 100; // Ticks seguidos sin poder enviarle nada (5-15 segundos)
+    // Tramas reutilizadas entre ticks: cada variante (codec x estado/delta) se codifica una vez y se envía a todos
+    private final Map<MessageCodec, BroadcastFrame> stateFrames = new HashMap<>();
+    private final Map<MessageCodec, BroadcastFrame> deltaFrames = new HashMap<>();
+    private long broadcastEncodeNanos; // Codificación del envío en curso, para separarla del reparto en las métricas
+
+    // --- Espectadores ---
+    // Cada cuánto reciben el estado (propiedad snake.spectator.intervalMs)
+    private static final long SPECTATOR_INTERVAL_MS = Math.max(50, Long.getLong("snake.spectator.intervalMs", 250));
+    // Un espectador con más tramas pendientes se salta envíos; tras MAX_SPECTATOR_SKIPS seguidos se desconecta
+    private static final int MAX_SPECTATOR_QUEUED_FRAMES = 2;
+    private static final int MAX_SPECTATOR_SKIPS = 40; // 10 segundos al ritmo por defecto
+    private final Map<ClientConnection, ClientSession> spectators = new ConcurrentHashMap<>();
+    // Solo las usa la tarea de espectadores, que nunca corre dos veces a la vez
+    private final Map<MessageCodec, BroadcastFrame> spectatorFrames = new HashMap<>();
+    private GameSnapshot lastSpectatorSnapshot;
+    private ScheduledFuture<?> spectatorTask;
+
+    // --- Área de interés ---
+    private static final int MINIMAP_INTERVAL_TICKS = 10;
+    private final AreaViews areaViews = new AreaViews();
+    private final Map<MessageCodec, BroadcastFrame> minimapFrames = new HashMap<>();
+
+    // 'boardSize': lado del tablero, ya validado con GameState.clampSize
+    Room(String code, int boardSize, TickScheduler scheduler) {
+        this.code = code;
+        this.gameState = new GameState(boardSize, boardSize);
+        this.maxConnectionBytes = Math.max(MIN_CONNECTION_BYTES,
+                (long) MAX_QUEUED_STATES * JsonMessageCodec.INSTANCE.maxStateLength(boardSize, boardSize));
+        this.scheduler = scheduler;
+        for (MessageCodec codec : List.of(JsonMessageCodec.INSTANCE, BinaryMessageCodec.INSTANCE)) {
+            stateFrames.put(codec, new BroadcastFrame(codec, true));
+            deltaFrames.put(codec, new BroadcastFrame(codec, false));
+            spectatorFrames.put(codec, new BroadcastFrame(codec, true));
+            minimapFrames.put(codec, new BroadcastFrame(codec, false));
+        }
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    // --- Conexiones ---
+
+    // Devuelve false si la sala acaba de ser desalojada y hay que pedir otra al registro
+    boolean join(ClientConnection conn, Message joinMessage) {
+        int newPlayerId = nextPlayerId.getAndIncrement();
+        ClientSession session = new ClientSession(newPlayerId, this, "delta".equals(joinMessage.getProtocol()),
+                MessageCodec.forName(joinMessage.getCodec()), viewportFor(joinMessage.getViewport()));
+        synchronized (membershipLock) {
+            if (closed) {
+                return false;
+            }
+            lastActivity = System.currentTimeMillis();
+            conn.setSession(session);
+            playerConnections.put(conn, newPlayerId);
+        }
+
+        String playerName = joinMessage.getPlayerName();
+        if (playerName == null || playerName.trim().isEmpty()) {
+            playerName = "Player " + newPlayerId;
+        }
+        // Truncar a 6 caracteres
+        if (playerName.length() > 6) {
+            playerName = playerName.substring(0, 6);
+        }
+
+        gameState.addPlayer(newPlayerId, playerName);
+
+        // Enviar al jugador su ID
+        Message idMessage = new Message("PLAYER_ID");
+        idMessage.setPlayerId(newPlayerId);
+        conn.send(idMessage, session.getCodec());
+
+        ServerLogger.log("Jugador " + newPlayerId + " (" + playerName + ") se unió a la sala " + code + ".");
+        broadcastState(); // Enviar estado del lobby a todos
+        return true;
+    }
+
+    // Como join, pero sin jugador: no entra en playerConnections ni en la partida
+    boolean spectate(ClientConnection conn, Message spectateMessage) {
+        ClientSession session = new ClientSession(ClientSession.SPECTATOR_ID, this, false,
+                MessageCodec.forName(spectateMessage.getCodec()), 0);
+        synchronized (membershipLock) {
+            if (closed) {
+                return false;
+            }
+            lastActivity = System.currentTimeMillis();
+            conn.setSession(session);
+            spectators.put(conn, session);
+        }
+
+        // El estado actual enseguida; después llega al ritmo de los espectadores
+        conn.send(createStateMessage(gameState.getSnapshot(), stateSequence), session.getCodec());
+        ServerLogger.log("Espectador " + conn.getRemoteAddress() + " se unió a la sala " + code
+                + ". Espectadores: " + spectators.size());
+        return true;
+    }
+
+    // Vista pedida en JOIN_GAME; 0 (tablero entero) si no pidió o si el tablero ya cabe en ella
+    private int viewportFor(int requested) {
+        if (requested <= 0) {
+            return 0;
+        }
+        int viewport = Math.max(GameState.MIN_SIZE, requested);
+        return viewport < gameState.getColumns() || viewport < gameState.getRows() ? viewport : 0;
+    }
+
+    void leave(ClientConnection conn) {
+        lastActivity = System.currentTimeMillis();
+        if (spectators.remove(conn) != null) {
+            ServerLogger.log("Espectador " + conn.getRemoteAddress() + " salió de la sala " + code);
+            return; // Los jugadores no se enteran
+        }
+        Integer playerId = playerConnections.remove(conn);
+        if (playerId != null) {
+            gameState.removePlayer(playerId);
+            ServerLogger.log("Cliente desconectado: Jugador " + playerId + " de la sala " + code);
+            broadcastState(); // Notificar a todos que el jugador se fue
+        }
+    }
+
+    void handleMessage(ClientConnection conn, ClientSession session, Message inputMessage) {
+        lastActivity = System.currentTimeMillis();
+        if (session.isSpectator()) {
+            return; // Los espectadores solo miran: ni entradas ni inicio de partidas
+        }
+        int playerId = session.getPlayerId();
+
+        switch (inputMessage.getAction()) {
+            case "PLAYER_INPUT":
+                gameState.handleInput(playerId, inputMessage.getInput(), inputMessage.getInputSequence());
+                break;
+
+            case "REQUEST_KEYFRAME":
+                // El cliente detectó un hueco en la secuencia de deltas
+                session.requestKeyframe();
+                break;
+
+            case "START_GAME":
+                // Solo el primer jugador (ID 0) puede iniciar el juego
+                if (!gameState.isGameInProgress()) {
+                    ServerLogger.log("Jugador " + playerId + " inició el juego en la sala " + code + ".");
+                    gameState.startGame();
+                    broadcastState(); // Notificar a todos que el juego comenzó
+                }
+                break;
+
+            case "RESTART_GAME":
+                // Cualquiera puede reiniciar si el juego terminó
+                if (gameState.isGameOver()) {
+                    ServerLogger.log("Juego reiniciado por Jugador " + playerId + " en la sala " + code);
+                    gameState.resetGame();
+                    broadcastState(); // Enviar a todos de vuelta al lobby
+                }
+                break;
+        }
+    }
+
+    // Cierra la sala si lleva más de 'idleMillis' sin conexiones; después ya no admite jugadores
+    boolean closeIfIdle(long now, long idleMillis) {
+        synchronized (membershipLock) {
+            if (playerConnections.isEmpty() && spectators.isEmpty() && now - lastActivity > idleMillis) {
+                closed = true;
+            }
+            return closed;
+        }
+    }
+
+    // --- LÓGICA DEL JUEGO ---
+
+    synchronized void start() {
+        if (gameLoop == null) {
+            gameLoop = scheduler.start("sala " + code, this::tick, updateInterval);
+            spectatorTask = scheduler.scheduleAtFixedRate(this::broadcastSpectators, SPECTATOR_INTERVAL_MS);
+        }
+    }
+
+    synchronized void stop() {
+        if (gameLoop != null) {
+            gameLoop.cancel();
+            gameLoop = null;
+            spectatorTask.cancel(false);
+            spectatorTask = null;
+        }
+    }
+
+    // Más rápido en cada nivel, con un mínimo de 50ms
+    private static int intervalForLevel(int level) {
+        return Math.max(50, 150 - (level - 1) * 20);
+    }
+
+    private void tick() {
+        synchronized (broadcastLock) {
+            long start = System.nanoTime();
+            gameState.update();
+            ServerMetrics.TICK_UPDATE.recordSince(start);
+
+            // Se mira el nivel en cada tick para volver al ritmo inicial también tras un reinicio
+            int interval = intervalForLevel(gameState.getCurrentLevel());
+            TickScheduler.Loop loop = gameLoop; // null en el primer tick o si la sala se está deteniendo
+            if (interval != updateInterval && loop != null) {
+                updateInterval = interval;
+                loop.setInterval(interval); // Se aplica desde el siguiente tick, sin re-planificar hilos
+                ServerLogger.log("Nivel cambiado en la sala " + code + ". Nuevo intervalo de actualización: " + updateInterval + "ms.");
+            }
+
+            broadcastState(false);
+            broadcastMinimap();
+        }
+    }
+
+    // Cambios estructurales (unión, salida, inicio, reinicio): estado completo para todos
+    private void broadcastState() {
+        broadcastState(true);
+    }
+
+    private void broadcastState(boolean forceKeyframe) {
+        synchronized (broadcastLock) {
+            // Siempre vaciar el delta pendiente, aunque no haya nadie conectado
+            StateDelta delta = gameState.drainDelta();
+            boolean keyframeForAll = gameState.consumeKeyframeRequired() || forceKeyframe;
+            boolean hasDelta = !delta.isEmpty();
+            if (keyframeForAll || hasDelta) {
+                stateSequence++;
+            }
+
+            // FIX: Si el juego terminó, solo enviamos el estado una vez y luego el GameLoop
+            // ya no debería llamar esto.
+            // Pero si estamos en el lobby y hay jugadores, sí debemos enviar.
+            if (playerConnections.isEmpty())
+                return;
+
+            long start = System.nanoTime();
+            broadcastEncodeNanos = 0;
+            stateFrames.values().forEach(BroadcastFrame::invalidate);
+            deltaFrames.values().forEach(BroadcastFrame::invalidate);
+            areaViews.begin(gameState.getSnapshot().getBoard(), delta);
+
+            List<ClientConnection> overloaded = null;
+            for (ClientConnection client : playerConnections.keySet()) {
+                // FIX de robustez: Envía solo si la conexión está abierta
+                if (!client.isOpen()) {
+                    continue;
+                }
+                ClientSession session = client.getSession();
+                boolean backedUp = isBackedUp(client);
+                if (isOverloaded(client) || (backedUp && session.frameSkipped() > MAX_SKIPPED_SENDS)) {
+                    // Se cierra al terminar el recorrido: el cierre puede sacarlo de la sala en este hilo
+                    if (overloaded == null) overloaded = new ArrayList<>();
+                    overloaded.add(client);
+                    continue;
+                }
+                if (backedUp) {
+                    // Se quedó atrás: no encolar más y mandarle solo el último estado completo al recuperarse
+                    session.requestKeyframe();
+                    if (keyframeForAll || hasDelta) {
+                        client.getOutboundStats().coalesced(1);
+                    }
+                    continue;
+                }
+                session.frameDelivered();
+                if (session.hasViewport()) {
+                    sendArea(client, session, keyframeForAll, hasDelta);
+                    continue;
+                }
+                if (!session.usesDelta()) {
+                    // Clientes antiguos: estado completo en cada tick
+                    sendState(client, session.getCodec());
+                    continue;
+                }
+
+                if (keyframeForAll || session.needsKeyframe()) {
+                    sendState(client, session.getCodec());
+                    session.keyframeSent();
+                } else if (hasDelta) {
+                    BroadcastFrame deltaFrame = deltaFrames.get(session.getCodec());
+                    if (!deltaFrame.isEncoded()) broadcastEncodeNanos += deltaFrame.encode(createDeltaMessage(delta));
+                    client.send(deltaFrame);
+                }
+            }
+
+            // Antes de los cierres: pueden volver a entrar aquí (leave) y reiniciar broadcastEncodeNanos
+            ServerMetrics.BROADCAST_FANOUT.record(System.nanoTime() - start - broadcastEncodeNanos);
+
+            if (overloaded != null) {
+                for (ClientConnection client : overloaded) {
+                    ServerLogger.warn("Jugador " + client.getSession().getPlayerId() + " desconectado de la sala " + code
+                            + ": " + client.getQueuedFrames() + " tramas (" + client.getQueuedBytes() + " bytes) sin enviar.");
+                    client.close();
+                }
+            }
+        }
+    }
+
+    private void sendState(ClientConnection client, MessageCodec codec) {
+        BroadcastFrame stateFrame = stateFrames.get(codec);
+        if (!stateFrame.isEncoded()) broadcastEncodeNanos += stateFrame.encode(createStateMessage(gameState.getSnapshot(), stateSequence));
+        client.send(stateFrame);
+    }
+
+    // Solo la zona del jugador; estado completo al cambiar de zona
+    private void sendArea(ClientConnection client, ClientSession session, boolean keyframeForAll, boolean hasDelta) {
+        Area area = areaViews.areaFor(session);
+        AreaViews.View view = areaViews.view(area);
+        if (!session.usesDelta() || keyframeForAll || session.needsKeyframe() || !area.equals(session.getArea())) {
+            BroadcastFrame stateFrame = view.stateFrame(session.getCodec());
+            if (!stateFrame.isEncoded()) {
+                Message message = createStateMessage(gameState.getSnapshot(), stateSequence);
+                message.setBoard(view.board());
+                message.setArea(area);
+                broadcastEncodeNanos += stateFrame.encode(message);
+            }
+            client.send(stateFrame);
+            session.keyframeSent();
+            session.setArea(area);
+        } else if (hasDelta) {
+            BroadcastFrame deltaFrame = view.deltaFrame(session.getCodec());
+            if (!deltaFrame.isEncoded()) broadcastEncodeNanos += deltaFrame.encode(createDeltaMessage(view.delta()));
+            client.send(deltaFrame);
+        }
+    }
+
+    // Cada MINIMAP_INTERVAL_TICKS durante la partida, una sola trama por codec para todos los que tienen zona
+    private void broadcastMinimap() {
+        GameSnapshot snapshot = gameState.getSnapshot();
+        if (!snapshot.isGameInProgress() || snapshot.getTick() % MINIMAP_INTERVAL_TICKS != 0) {
+            return;
+        }
+        minimapFrames.values().forEach(BroadcastFrame::invalidate);
+        Message minimap = null;
+        for (ClientConnection client : playerConnections.keySet()) {
+            ClientSession session = client.getSession();
+            if (!client.isOpen() || !session.hasViewport() || isBackedUp(client)) {
+                continue;
+            }
+            BroadcastFrame frame = minimapFrames.get(session.getCodec());
+            if (!frame.isEncoded()) {
+                if (minimap == null) {
+                    minimap = new Message("MINIMAP");
+                    minimap.setObjects(null);
+                    minimap.setPlayerScores(null);
+                    minimap.setPlayerNames(null);
+                    minimap.setMinimap(snapshot.getBoard().minimap());
+                }
+                frame.encode(minimap);
+            }
+            client.send(frame);
+        }
+    }
+
+    // La foto del último tick se lee sin el lock del juego y sin copiar
+    private Message createStateMessage(GameSnapshot snapshot, long sequence) {
+        Message message = new Message("UPDATE_STATE");
+        message.setBoard(snapshot.getBoard());
+        message.setDimensions(snapshot.getBoard().getColumns(), snapshot.getBoard().getRows());
+        message.setGameOver(snapshot.isGameOver());
+        message.setGameInProgress(snapshot.isGameInProgress());
+        message.setPlayerScores(snapshot.getPlayerScores());
+        message.setPlayerNames(snapshot.getPlayerNames());
+        message.setSequence(sequence);
+        message.setTick(snapshot.getTick());
+        message.setLevel(snapshot.getLevel());
+        message.setInputAcks(snapshot.getInputAcks());
+        return message;
+    }
+
+    private Message createDeltaMessage(StateDelta delta) {
+        Message message = new Message("STATE_DELTA");
+        message.setObjects(null); // Solo viajan los cambios
+        message.setPlayerScores(null);
+        message.setPlayerNames(null);
+        GameSnapshot snapshot = gameState.getSnapshot();
+        message.setDimensions(snapshot.getBoard().getColumns(), snapshot.getBoard().getRows());
+        message.setGameOver(snapshot.isGameOver());
+        message.setGameInProgress(snapshot.isGameInProgress());
+        message.setSequence(stateSequence);
+        message.setDelta(delta);
+        return message;
+    }
+
+    // --- Espectadores ---
+
+    // Estado completo para todos los espectadores, con una trama por codec como los jugadores
+    private void broadcastSpectators() {
+        try {
+            if (spectators.isEmpty()) {
+                return;
+            }
+            GameSnapshot snapshot = gameState.getSnapshot();
+            if (snapshot == lastSpectatorSnapshot) {
+                return; // Nada nuevo desde el último envío (lobby, fin de partida)
+            }
+            spectatorFrames.values().forEach(BroadcastFrame::invalidate);
+            Message state = null;
+            boolean anySkipped = false;
+            for (Map.Entry<ClientConnection, ClientSession> entry : spectators.entrySet()) {
+                ClientConnection viewer = entry.getKey();
+                ClientSession session = entry.getValue();
+                if (!viewer.isOpen()) {
+                    continue;
+                }
+                if (viewer.getQueuedFrames() > MAX_SPECTATOR_QUEUED_FRAMES) {
+                    // No acumular: el próximo envío ya llevará el estado más reciente
+                    anySkipped = true;
+                    viewer.getOutboundStats().coalesced(1);
+                    if (session.frameSkipped() == MAX_SPECTATOR_SKIPS) {
+                        ServerLogger.warn("Espectador " + viewer.getRemoteAddress() + " desconectado: no recibe los estados.");
+                        viewer.close();
+                    }
+                    continue;
+                }
+                session.frameDelivered();
+                BroadcastFrame frame = spectatorFrames.get(session.getCodec());
+                if (!frame.isEncoded()) {
+                    if (state == null) state = createStateMessage(snapshot, stateSequence);
+                    frame.encode(state);
+                }
+                viewer.send(frame);
+            }
+            // Si alguien se quedó sin este estado, repetirlo aunque el juego no cambie
+            lastSpectatorSnapshot = anySkipped ? null : snapshot;
+        } catch (Exception e) {
+            // Una excepción cancelaría la tarea periódica para siempre
+            ServerLogger.error("Error enviando a los espectadores de la sala " + code, e);
+        }
+    }
+
+    private boolean isBackedUp(ClientConnection client) {
+        return client.getQueuedFrames() > MAX_QUEUED_FRAMES;
+    }
+
+    private boolean isOverloaded(ClientConnection client) {
+        return client.getQueuedFrames() > MAX_CONNECTION_FRAMES || client.getQueuedBytes() > maxConnectionBytes;
+    }
+
+    // --- Métricas ---
+
+    int getPlayerCount() {
+        return playerConnections.size();
+    }
+
+    int getSpectatorCount() {
+        return spectators.size();
+    }
+
+    void collectQueueStats(List<QueueStats> out) {
+        playerConnections.forEach((conn, playerId) -> out.add(QueueStats.of(code, conn, playerId)));
+        spectators.keySet().forEach(conn -> out.add(QueueStats.of(code, conn, ClientSession.SPECTATOR_ID)));
+    }
+}
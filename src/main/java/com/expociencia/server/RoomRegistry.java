@@ -0,0 +1,222 @@
+package com.expociencia.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+
+import com.expociencia.game.GameState;
+import com.expociencia.messages.Message;
+import com.expociencia.messages.MessageCodec;
+
+/**
+ * Salas activas indexadas por código. Crea la sala la primera vez que
+ * alguien se une con un código (como jugador o espectador) y desaloja las
+ * que se quedan sin conexiones.
+ *
+ * El código y el tamaño los elige el cliente, así que ambos tienen límite:
+ * como mucho snake.rooms.max salas a la vez (la pública no cuenta) y
+ * tableros pedidos de hasta snake.board.maxRequested de lado. Un JOIN_GAME
+ * que necesitaría una sala más recibe un ERROR y la conexión sigue libre.
+ */
+public class RoomRegistry {
+    public static final String DEFAULT_ROOM = "PUBLIC";
+    private static final int MAX_CODE_LENGTH = 12;
+    private static final long IDLE_TIMEOUT_MS = 5 * 60 * 1000; // 5 minutos sin conexiones
+    private static final long EVICTION_PERIOD_MS = 30 * 1000;
+    // Lado del tablero de las salas nuevas (propiedad snake.board.size); un JOIN_GAME puede pedir otro
+    private static final int DEFAULT_BOARD_SIZE = GameState.clampSize(Integer.getInteger("snake.board.size", 0));
+    // Lado máximo que puede pedir un cliente; snake.board.size puede ser mayor (arenas que monta el servidor)
+    private static final int MAX_REQUESTED_BOARD_SIZE = GameState.clampSize(Integer.getInteger("snake.board.maxRequested", 200));
+    private static final int MAX_ROOMS = Math.max(1, Integer.getInteger("snake.rooms.max", 64));
+
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    // Un permiso por sala creada (salvo la pública); se devuelve al quitarla del mapa
+    private final Semaphore roomSlots = new Semaphore(MAX_ROOMS);
+    // Un solo pool de hilos para los bucles de todas las salas
+    private final TickScheduler scheduler = new TickScheduler(Runtime.getRuntime().availableProcessors());
+    private ScheduledFuture<?> evictionTask;
+    private TickScheduler.JitterStats lastReported = scheduler.getJitterStats();
+    private long lastReportedCoalesced = 0;
+
+    // Punto de entrada común a todos los transportes
+    void handleMessage(ClientConnection conn, Message inputMessage) {
+        long start = System.nanoTime();
+        ClientSession session = conn.getSession(); // Puede ser null si aún no se une
+
+        String action = inputMessage.getAction();
+        ServerMetrics.messageReceived(action);
+        try {
+            if ("JOIN_GAME".equals(action) || "SPECTATE".equals(action)) {
+                if (session == null) { // Nuevo jugador o espectador
+                    join(conn, inputMessage);
+                }
+            } else if (session != null) {
+                session.getRoom().handleMessage(conn, session, inputMessage);
+            }
+        } finally {
+            ServerMetrics.MESSAGE_HANDLING.recordSince(start);
+        }
+    }
+
+    // Devuelve true si la conexión estaba unida a una sala
+    boolean disconnect(ClientConnection conn) {
+        ClientSession session = conn.getSession();
+        if (session == null) {
+            return false;
+        }
+        session.getRoom().leave(conn);
+        return true;
+    }
+
+    // Une la conexión a la sala del código, creándola si no existe
+    private void join(ClientConnection conn, Message joinMessage) {
+        String code = normalizeCode(joinMessage.getRoomCode());
+        boolean spectator = "SPECTATE".equals(joinMessage.getAction());
+        // Si la sala se desaloja justo ahora, la siguiente vuelta crea una nueva
+        // El tamaño pedido solo cuenta si este JOIN_GAME crea la sala; los espectadores no eligen
+        int boardSize = spectator || joinMessage.getBoardSize() <= 0
+                ? DEFAULT_BOARD_SIZE : GameState.clampSize(Math.min(joinMessage.getBoardSize(), MAX_REQUESTED_BOARD_SIZE));
+        while (true) {
+            Room room = getOrCreate(code, boardSize);
+            if (room == null) {
+                ServerLogger.log("Sala " + code + " rechazada para " + conn.getRemoteAddress() + ": ya hay "
+                        + MAX_ROOMS + " salas.");
+                Message error = new Message("ERROR");
+                error.setError("No se pueden crear más salas. Prueba más tarde o únete a " + DEFAULT_ROOM + ".");
+                conn.send(error, MessageCodec.forName(joinMessage.getCodec()));
+                return;
+            }
+            if (spectator ? room.spectate(conn, joinMessage) : room.join(conn, joinMessage)) {
+                return;
+            }
+            // Solo la sala cerrada: otro hilo puede haber creado ya la nueva con el mismo código
+            if (rooms.remove(code, room)) {
+                releaseSlot(room);
+            }
+        }
+    }
+
+    // null si la sala no existe y ya no caben más
+    private Room getOrCreate(String code, int boardSize) {
+        return rooms.computeIfAbsent(code, c -> {
+            if (!DEFAULT_ROOM.equals(c) && !roomSlots.tryAcquire()) {
+                return null;
+            }
+            Room room = new Room(c, boardSize, scheduler);
+            room.start();
+            ServerLogger.log("Sala " + c + " creada (" + boardSize + "x" + boardSize + "). Salas activas: " + (rooms.size() + 1));
+            return room;
+        });
+    }
+
+    // Códigos sin distinguir mayúsculas (igual con cualquier idioma del sistema), sin espacios y de longitud limitada
+    static String normalizeCode(String code) {
+        if (code == null || code.trim().isEmpty()) {
+            return DEFAULT_ROOM;
+        }
+        String normalized = code.trim().toUpperCase(Locale.ROOT);
+        return normalized.length() > MAX_CODE_LENGTH ? normalized.substring(0, MAX_CODE_LENGTH) : normalized;
+    }
+
+    public void startEviction() {
+        evictionTask = scheduler.scheduleAtFixedRate(() -> {
+            try {
+                evictIdle(System.currentTimeMillis());
+                reportJitter();
+                reportQueues();
+            } catch (Exception e) {
+                ServerLogger.error("Error en el mantenimiento de salas: " + e.getMessage(), e);
+            }
+        }, EVICTION_PERIOD_MS);
+    }
+
+    public TickScheduler getScheduler() {
+        return scheduler;
+    }
+
+    // Jitter de los ticks desde el último informe
+    private void reportJitter() {
+        TickScheduler.JitterStats stats = scheduler.drainJitterStats();
+        long ticks = stats.getTicks() - lastReported.getTicks();
+        if (ticks > 0) {
+            long meanMicros = (stats.getJitterSumMicros() - lastReported.getJitterSumMicros()) / ticks;
+            ServerLogger.log("Ticks: " + ticks + " en " + rooms.size() + " salas. Jitter medio: " + meanMicros
+                    + "us, máximo: " + stats.getMaxJitterMicros() + "us.");
+        }
+        lastReported = stats;
+    }
+
+    // --- Métricas (en el momento de la llamada) ---
+
+    int getRoomCount() {
+        return rooms.size();
+    }
+
+    int getPlayerCount() {
+        return rooms.values().stream().mapToInt(Room::getPlayerCount).sum();
+    }
+
+    int getSpectatorCount() {
+        return rooms.values().stream().mapToInt(Room::getSpectatorCount).sum();
+    }
+
+    // Colas de salida de todas las conexiones, en el momento de la llamada
+    List<QueueStats> getQueueStats() {
+        List<QueueStats> stats = new ArrayList<>();
+        for (Room room : rooms.values()) {
+            room.collectQueueStats(stats);
+        }
+        return stats;
+    }
+
+    // Solo informa si algún cliente se quedó atrás desde el último informe
+    private void reportQueues() {
+        List<QueueStats> stats = getQueueStats();
+        long coalesced = 0;
+        QueueStats worst = null;
+        for (QueueStats conn : stats) {
+            coalesced += conn.framesCoalesced();
+            if (worst == null || conn.queuedBytes() > worst.queuedBytes()) {
+                worst = conn;
+            }
+        }
+        // El total puede bajar cuando se desconecta alguien que había acumulado descartes
+        if (coalesced > lastReportedCoalesced && worst != null) {
+            ServerLogger.log("Colas de salida: " + (coalesced - lastReportedCoalesced) + " tramas descartadas por clientes lentos en "
+                    + stats.size() + " conexiones. Mayor cola: " + worst.remoteAddress() + " (sala " + worst.room() + ") con "
+                    + worst.queuedFrames() + " tramas, " + worst.queuedBytes() + " bytes.");
+        }
+        lastReportedCoalesced = coalesced;
+    }
+
+    void evictIdle(long now) {
+        rooms.values().removeIf(room -> {
+            if (!room.closeIfIdle(now, IDLE_TIMEOUT_MS)) {
+                return false;
+            }
+            room.stop();
+            releaseSlot(room);
+            ServerLogger.log("Sala " + room.getCode() + " desalojada por inactividad.");
+            return true;
+        });
+    }
+
+    private void releaseSlot(Room room) {
+        if (!DEFAULT_ROOM.equals(room.getCode())) {
+            roomSlots.release();
+        }
+    }
+
+    public void stopAll() {
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+        }
+        rooms.values().forEach(Room::stop);
+        rooms.clear();
+        scheduler.shutdown();
+    }
+}
@@ -1,52 +1,272 @@
 package com.expociencia.server;
 
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
-import java.time.LocalDateTime;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Logger asíncrono. Los hilos del juego y de red solo encolan la línea (sin
+ * locks ni E/S) y un hilo escritor la formatea y la escribe por lotes en
+ * consola y en el fichero de registro, con un solo flush por lote.
+ *
+ * Se configura con propiedades del sistema:
+ * snake.log.file (server_output.log en el directorio de trabajo por defecto),
+ * snake.log.level (DEBUG, INFO, WARN, ERROR; INFO por defecto),
+ * snake.log.overflow (DROP o BLOCK cuando la cola está llena; DROP por defecto),
+ * snake.log.maxBytes y snake.log.rotateMinutes (rotación por tamaño y por tiempo).
+ */
 public class ServerLogger {
-    private static PrintStream logStream;
-    private static final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    public enum OverflowPolicy { DROP, BLOCK }
+
+    private static final String LOG_FILE = System.getProperty("snake.log.file", "server_output.log");
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final int MAX_BATCH = 512;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final int MAX_BACKUPS = 5; // LOG_FILE.1 ... .5
+    private static final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    private static final Level minLevel = parse(Level.class, System.getProperty("snake.log.level"), Level.INFO);
+    private static final OverflowPolicy overflowPolicy =
+            parse(OverflowPolicy.class, System.getProperty("snake.log.overflow"), OverflowPolicy.DROP);
+    private static final long maxBytes = Long.getLong("snake.log.maxBytes", 10L * 1024 * 1024);
+    private static final long rotateMillis = TimeUnit.MINUTES.toMillis(Long.getLong("snake.log.rotateMinutes", 24 * 60));
+
+    // --- Cola (varios productores, un escritor) ---
+    private static final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile boolean closing = false;
+    private static final Thread writerThread;
+
+    // --- Estado del escritor (solo lo toca writerThread) ---
+    private static Writer fileWriter;
+    private static long fileBytes;
+    private static long fileOpenedAt;
 
     static {
+        openFile();
+        writerThread = new Thread(ServerLogger::writeLoop, "ServerLogger");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private record Entry(long timestamp, Level level, String message, Throwable throwable) {
+    }
+
+    public static void debug(String message) {
+        enqueue(Level.DEBUG, message, null);
+    }
+
+    public static void log(String message) {
+        enqueue(Level.INFO, message, null);
+    }
+
+    public static void warn(String message) {
+        enqueue(Level.WARN, message, null);
+    }
+
+    public static void error(String message, Throwable throwable) {
+        enqueue(Level.ERROR, message, throwable);
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(minLevel) >= 0;
+    }
+
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public static int getQueuedCount() {
+        return queued.get();
+    }
+
+    private static void enqueue(Level level, String message, Throwable throwable) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        // Reservar hueco antes de encolar: así la cola nunca pasa de QUEUE_CAPACITY
+        while (queued.incrementAndGet() > QUEUE_CAPACITY) {
+            queued.decrementAndGet();
+            if (overflowPolicy == OverflowPolicy.DROP || closing) {
+                dropped.incrementAndGet();
+                return;
+            }
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100)); // BLOCK: esperar a que el escritor vacíe
+        }
+        queue.offer(new Entry(System.currentTimeMillis(), level, message, throwable));
+    }
+
+    // Vacía la cola y detiene el escritor; lo que se registre después ya no se escribe
+    public static void close() {
+        closing = true;
+        LockSupport.unpark(writerThread);
         try {
-            // El 'true' en FileOutputStream habilita el modo de apendizaje (append)
-            logStream = new PrintStream(new FileOutputStream("server_output.log", true));
-        } catch (IOException e) {
-            e.printStackTrace();
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    public static synchronized void log(String message) {
-        String logMessage = dtf.format(LocalDateTime.now()) + ": " + message;
-        System.out.println(logMessage); // También imprimir en consola por si acaso
-        if (logStream != null) {
-            logStream.println(logMessage);
-            logStream.flush();
+    // --- Hilo escritor ---
+
+    private static void writeLoop() {
+        StringBuilder file = new StringBuilder(); // En orden, para el fichero
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+        long reportedDrops = 0;
+        while (true) {
+            boolean wasClosing = closing; // Leer antes de vaciar para no perder lo encolado justo antes de cerrar
+            int written = 0;
+            Entry entry;
+            while (written < MAX_BATCH && (entry = queue.poll()) != null) {
+                queued.decrementAndGet();
+                int start = file.length();
+                format(entry, file);
+                (entry.level() == Level.ERROR ? err : out).append(file, start, file.length());
+                written++;
+            }
+
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                int start = file.length();
+                format(new Entry(System.currentTimeMillis(), Level.WARN,
+                        "Logger: " + (drops - reportedDrops) + " mensajes descartados por cola llena.", null), file);
+                out.append(file, start, file.length());
+                reportedDrops = drops;
+            }
+
+            if (file.length() > 0) {
+                flushBatch(file, out, err);
+            }
+            if (written == MAX_BATCH) {
+                continue; // Queda más en la cola
+            }
+            if (wasClosing && queue.isEmpty()) {
+                closeFile();
+                return;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
         }
     }
 
-    public static synchronized void error(String message, Throwable throwable) {
-        String logMessage = dtf.format(LocalDateTime.now()) + " [ERROR]: " + message;
-        System.err.println(logMessage);
-        if (throwable != null) {
-            throwable.printStackTrace(System.err);
+    private static void format(Entry entry, StringBuilder sb) {
+        sb.append(dtf.format(Instant.ofEpochMilli(entry.timestamp())));
+        if (entry.level() == Level.INFO) {
+            sb.append(": ");
+        } else {
+            sb.append(" [").append(entry.level()).append("]: ");
+        }
+        sb.append(entry.message()).append(System.lineSeparator());
+        if (entry.throwable() != null) {
+            StringWriter trace = new StringWriter();
+            entry.throwable().printStackTrace(new PrintWriter(trace));
+            sb.append(trace);
+        }
+    }
+
+    private static void flushBatch(StringBuilder file, StringBuilder out, StringBuilder err) {
+        // También imprimir en consola por si acaso
+        if (out.length() > 0) {
+            System.out.print(out);
+            System.out.flush();
+        }
+        if (err.length() > 0) {
+            System.err.print(err);
+            System.err.flush();
         }
 
-        if (logStream != null) {
-            logStream.println(logMessage);
-            if (throwable != null) {
-                throwable.printStackTrace(logStream);
+        rotateIfNeeded();
+        if (fileWriter != null) {
+            try {
+                fileWriter.append(file);
+                fileWriter.flush();
+                fileBytes += file.length(); // Aproximado: caracteres, no bytes
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            logStream.flush();
         }
+        file.setLength(0);
+        out.setLength(0);
+        err.setLength(0);
     }
 
-    public static void close() {
-        if (logStream != null) {
-            logStream.close();
+    private static void rotateIfNeeded() {
+        boolean tooBig = fileBytes >= maxBytes;
+        boolean tooOld = System.currentTimeMillis() - fileOpenedAt >= rotateMillis;
+        if (fileWriter == null || !(tooBig || tooOld)) {
+            return;
+        }
+        closeFile();
+        // LOG_FILE -> .1 -> .2 ... y se descarta el más antiguo
+        new File(LOG_FILE + "." + MAX_BACKUPS).delete();
+        for (int i = MAX_BACKUPS - 1; i >= 1; i--) {
+            File backup = new File(LOG_FILE + "." + i);
+            if (backup.exists()) {
+                backup.renameTo(new File(LOG_FILE + "." + (i + 1)));
+            }
+        }
+        new File(LOG_FILE).renameTo(new File(LOG_FILE + ".1"));
+        openFile();
+    }
+
+    private static void openFile() {
+        try {
+            // El 'true' en FileOutputStream habilita el modo de apendizaje (append)
+            File file = new File(LOG_FILE);
+            File directory = file.getAbsoluteFile().getParentFile();
+            if (directory != null) {
+                directory.mkdirs();
+            }
+            fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+            fileBytes = file.length();
+            fileOpenedAt = System.currentTimeMillis();
+        } catch (IOException e) {
+            e.printStackTrace();
+            fileWriter = null;
+        }
+    }
+
+    private static void closeFile() {
+        if (fileWriter != null) {
+            try {
+                fileWriter.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            fileWriter = null;
+        }
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value, E defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
         }
     }
-}
\ No newline at end of file
+}
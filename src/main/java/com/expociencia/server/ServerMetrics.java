@@ -0,0 +1,178 @@
+package com.expociencia.server;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas del servidor en formato de texto de Prometheus. Los hilos del
+ * juego y de red solo incrementan contadores y registran latencias (sin
+ * locks); las salas, los jugadores y las colas se leen al pedir las métricas
+ * ({@link #scrape(RoomRegistry)}), igual que los informes del registro.
+ *
+ * Todas las métricas son del proceso entero, como ServerLogger: varias
+ * salas o transportes suman en los mismos contadores.
+ */
+public final class ServerMetrics {
+
+    // --- Latencias ---
+    static final LatencyHistogram TICK_UPDATE = new LatencyHistogram("snake_tick_update_seconds",
+            "Duración de GameState.update() en cada tick.");
+    static final LatencyHistogram BROADCAST_ENCODE = new LatencyHistogram("snake_broadcast_encode_seconds",
+            "Codificación de cada trama de difusión (estado, delta, zona, minimapa, espectadores).");
+    static final LatencyHistogram BROADCAST_FANOUT = new LatencyHistogram("snake_broadcast_fanout_seconds",
+            "Reparto de un envío de la sala a sus jugadores, sin contar la codificación.");
+    static final LatencyHistogram MESSAGE_HANDLING = new LatencyHistogram("snake_message_handling_seconds",
+            "Atención de cada mensaje recibido de un cliente, ya decodificado.");
+
+    // --- Contadores ---
+    // Solo las acciones del protocolo: la acción la elige el cliente y no debe crear series nuevas
+    private static final List<String> ACTIONS = List.of("JOIN_GAME", "SPECTATE", "PLAYER_INPUT", "REQUEST_KEYFRAME",
+            "START_GAME", "RESTART_GAME");
+    private static final String OTHER_ACTION = "other";
+    private static final Map<String, LongAdder> messagesByAction = createActionCounters();
+    private static final LongAdder framesSent = new LongAdder();
+    private static final LongAdder bytesSent = new LongAdder();
+    private static final LongAdder framesCoalesced = new LongAdder();
+    // Conexiones con la cola más larga que se exportan una a una; el resto solo cuenta en los totales
+    private static final int TOP_CONNECTIONS = 10;
+
+    private ServerMetrics() {
+    }
+
+    private static Map<String, LongAdder> createActionCounters() {
+        Map<String, LongAdder> counters = new HashMap<>();
+        for (String action : ACTIONS) {
+            counters.put(action, new LongAdder());
+        }
+        counters.put(OTHER_ACTION, new LongAdder());
+        return Map.copyOf(counters);
+    }
+
+    static void messageReceived(String action) {
+        LongAdder counter = action == null ? null : messagesByAction.get(action);
+        (counter != null ? counter : messagesByAction.get(OTHER_ACTION)).increment();
+    }
+
+    // Lo llama OutboundStats: lo encolado a cualquier conexión, también a las ya cerradas
+    static void frameQueued(int bytes) {
+        framesSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    static void framesCoalesced(int frames) {
+        framesCoalesced.add(frames);
+    }
+
+    // --- Exportación ---
+
+    public static String scrape(RoomRegistry rooms) {
+        StringBuilder out = new StringBuilder(16 * 1024);
+
+        TICK_UPDATE.writeTo(out);
+        BROADCAST_ENCODE.writeTo(out);
+        BROADCAST_FANOUT.writeTo(out);
+        MESSAGE_HANDLING.writeTo(out);
+
+        header(out, "snake_messages_received_total", "counter", "Mensajes recibidos de los clientes, por acción.");
+        for (String action : ACTIONS) {
+            sample(out, "snake_messages_received_total{action=\"" + action + "\"}", messagesByAction.get(action).sum());
+        }
+        sample(out, "snake_messages_received_total{action=\"" + OTHER_ACTION + "\"}", messagesByAction.get(OTHER_ACTION).sum());
+        counter(out, "snake_frames_sent_total", "Tramas encoladas para enviar a los clientes.", framesSent.sum());
+        counter(out, "snake_bytes_sent_total", "Bytes encolados para enviar (los mensajes JSON sueltos cuentan caracteres).",
+                bytesSent.sum());
+        counter(out, "snake_frames_coalesced_total", "Tramas descartadas o no encoladas porque ya había un estado más reciente.",
+                framesCoalesced.sum());
+
+        gauge(out, "snake_rooms", "Salas activas.", rooms.getRoomCount());
+        gauge(out, "snake_players", "Jugadores conectados en todas las salas.", rooms.getPlayerCount());
+        gauge(out, "snake_spectators", "Espectadores conectados en todas las salas.", rooms.getSpectatorCount());
+
+        // Colas de salida en el momento de la lectura
+        List<QueueStats> queues = rooms.getQueueStats();
+        long queuedFrames = 0;
+        long queuedBytes = 0;
+        long maxFrames = 0;
+        long maxBytes = 0;
+        for (QueueStats conn : queues) {
+            queuedFrames += conn.queuedFrames();
+            queuedBytes += conn.queuedBytes();
+            maxFrames = Math.max(maxFrames, conn.queuedFrames());
+            maxBytes = Math.max(maxBytes, conn.queuedBytes());
+        }
+        gauge(out, "snake_queued_frames", "Tramas pendientes de enviar, sumadas en todas las conexiones.", queuedFrames);
+        gauge(out, "snake_queued_bytes", "Bytes pendientes de enviar, sumados en todas las conexiones.", queuedBytes);
+        gauge(out, "snake_queued_frames_max", "Tramas pendientes en la conexión más atrasada.", maxFrames);
+        gauge(out, "snake_queued_bytes_max", "Bytes pendientes en la conexión más atrasada.", maxBytes);
+        writeTopQueues(out, queues);
+
+        // El máximo se reinicia con cada informe de jitter del registro (cada 30 segundos)
+        TickScheduler.JitterStats jitter = rooms.getScheduler().getJitterStats();
+        header(out, "snake_tick_jitter_seconds", "summary", "Retraso de cada tick respecto a su plazo.");
+        sample(out, "snake_tick_jitter_seconds_sum", LatencyHistogram.seconds(jitter.getJitterSumMicros() * 1000));
+        sample(out, "snake_tick_jitter_seconds_count", jitter.getTicks());
+        header(out, "snake_tick_jitter_max_seconds", "gauge", "Mayor retraso de un tick desde el último informe del registro.");
+        sample(out, "snake_tick_jitter_max_seconds", LatencyHistogram.seconds(jitter.getMaxJitterMicros() * 1000));
+
+        counter(out, "snake_log_dropped_total", "Líneas de registro descartadas por la cola llena.", ServerLogger.getDroppedCount());
+        gauge(out, "snake_log_queued", "Líneas de registro esperando al escritor.", ServerLogger.getQueuedCount());
+        return out.toString();
+    }
+
+    /**
+     * Cola de cada conexión, solo para las TOP_CONNECTIONS más atrasadas (por
+     * bytes y luego por tramas): una serie por conexión sin límite crecería
+     * con los jugadores y cambiaría en cada reconexión. Las que tienen la cola
+     * vacía no se exportan.
+     */
+    private static void writeTopQueues(StringBuilder out, List<QueueStats> queues) {
+        List<QueueStats> top = queues.stream()
+                .filter(conn -> conn.queuedFrames() > 0 || conn.queuedBytes() > 0)
+                .sorted(Comparator.comparingLong(QueueStats::queuedBytes).thenComparingInt(QueueStats::queuedFrames).reversed())
+                .limit(TOP_CONNECTIONS)
+                .toList();
+        header(out, "snake_connection_queued_frames", "gauge",
+                "Tramas pendientes por conexión (solo las " + TOP_CONNECTIONS + " colas más largas).");
+        for (QueueStats conn : top) {
+            sample(out, "snake_connection_queued_frames" + connectionLabels(conn), conn.queuedFrames());
+        }
+        header(out, "snake_connection_queued_bytes", "gauge",
+                "Bytes pendientes por conexión (solo las " + TOP_CONNECTIONS + " colas más largas).");
+        for (QueueStats conn : top) {
+            sample(out, "snake_connection_queued_bytes" + connectionLabels(conn), conn.queuedBytes());
+        }
+    }
+
+    private static String connectionLabels(QueueStats conn) {
+        String player = conn.isSpectator() ? "spectator" : String.valueOf(conn.playerId());
+        return "{room=\"" + escape(conn.room()) + "\",connection=\"" + escape(conn.remoteAddress())
+                + "\",player=\"" + player + "\"}";
+    }
+
+    // El código de sala lo elige el cliente: comillas, barras y saltos de línea se escapan
+    private static String escape(String value) {
+        return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        sample(out, name, value);
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, "gauge", help);
+        sample(out, name, value);
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String series, Object value) {
+        out.append(series).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,61 @@
+package com.expociencia.server;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Segundo punto de entrada para los clientes de escritorio (GameClient) por
+ * TCP directo. Comparte las salas con el servidor WebSocket y atiende cada
+ * conexión con un {@link ClientHandler} en un hilo virtual.
+ * Con snake.tcp.transport=threads sustituye a {@link NioGameServer}.
+ */
+public class TcpGameServer implements TcpTransport {
+    public static final int DEFAULT_PORT = 12346;
+
+    private final int port;
+    private final RoomRegistry rooms;
+    private final ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private ServerSocket serverSocket;
+
+    public TcpGameServer(int port, RoomRegistry rooms) {
+        this.port = port;
+        this.rooms = rooms;
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        Thread.ofVirtual().name("TcpAccept").start(this::acceptLoop);
+        ServerLogger.log("Servidor TCP iniciado en el puerto " + port);
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                clientExecutor.submit(new ClientHandler(socket, rooms));
+            } catch (SocketException e) {
+                // stop() cerró el socket de escucha
+            } catch (IOException e) {
+                ServerLogger.error("Error aceptando una conexión TCP: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            ServerLogger.error("Error cerrando el servidor TCP", e);
+        }
+        clientExecutor.shutdownNow();
+        ServerLogger.log("Servidor TCP detenido.");
+    }
+}
@@ -0,0 +1,23 @@
+package com.expociencia.server;
+
+import java.io.IOException;
+
+/**
+ * Servidor TCP para los clientes de escritorio. Hay dos implementaciones que
+ * hablan el mismo protocolo (tramas de {@link com.expociencia.messages.TcpFraming}):
+ * un Selector NIO con un solo hilo para todas las conexiones (por defecto) y
+ * un hilo virtual por conexión.
+ */
+interface TcpTransport {
+    String NIO = "nio";
+    String THREADS = "threads";
+
+    void start() throws IOException;
+
+    void stop();
+
+    // Se elige con la propiedad snake.tcp.transport; cualquier otro valor usa NIO
+    static TcpTransport forName(String name, int port, RoomRegistry rooms) {
+        return THREADS.equalsIgnoreCase(name) ? new TcpGameServer(port, rooms) : new NioGameServer(port, rooms);
+    }
+}
@@ -0,0 +1,161 @@
+package com.expociencia.server;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Planificador compartido por todos los bucles de juego. Un único pool de
+ * hilos (tantos como núcleos) ejecuta los ticks de todas las salas; cada
+ * bucle tiene su propio intervalo y puede cambiarlo sin crear ni destruir
+ * hilos.
+ *
+ * Cada tick se planifica contra un plazo absoluto (plazo anterior + intervalo),
+ * no contra el final del tick anterior, así el retraso de un tick no se
+ * acumula en los siguientes. El retraso de cada tick respecto a su plazo
+ * (jitter) se acumula en {@link #getJitterStats()}.
+ */
+public class TickScheduler {
+    private final ScheduledExecutorService executor;
+
+    // --- Métricas de jitter (microsegundos) ---
+    private final LongAdder tickCount = new LongAdder();
+    private final LongAdder jitterSumMicros = new LongAdder();
+    private final AtomicLong maxJitterMicros = new AtomicLong();
+
+    public TickScheduler(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "GameTick-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Arranca un bucle que ejecuta 'task' cada 'intervalMillis'; el primer tick es inmediato
+    public Loop start(String name, Runnable task, long intervalMillis) {
+        Loop loop = new Loop(name, task, intervalMillis);
+        loop.scheduleAt(System.nanoTime());
+        return loop;
+    }
+
+    // Tareas periódicas de mantenimiento (no cuentan en el jitter)
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodMillis) {
+        return executor.scheduleAtFixedRate(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public JitterStats getJitterStats() {
+        return new JitterStats(tickCount.sum(), jitterSumMicros.sum(), maxJitterMicros.get());
+    }
+
+    // Devuelve las métricas acumuladas y reinicia el máximo para la siguiente ventana
+    public JitterStats drainJitterStats() {
+        return new JitterStats(tickCount.sum(), jitterSumMicros.sum(), maxJitterMicros.getAndSet(0));
+    }
+
+    private void recordJitter(long lateNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, lateNanos));
+        tickCount.increment();
+        jitterSumMicros.add(micros);
+        maxJitterMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Un bucle de juego planificado. El intervalo se puede cambiar en
+     * cualquier momento y se aplica a partir del siguiente tick.
+     */
+    public class Loop {
+        private final String name;
+        private final Runnable task;
+        private volatile long intervalNanos;
+        private volatile boolean cancelled = false;
+        private volatile ScheduledFuture<?> future;
+        private long deadline; // Solo lo toca el hilo que ejecuta el tick
+
+        private Loop(String name, Runnable task, long intervalMillis) {
+            this.name = name;
+            this.task = task;
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        }
+
+        public void setInterval(long intervalMillis) {
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        }
+
+        public void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> current = future;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+
+        private void scheduleAt(long deadline) {
+            this.deadline = deadline;
+            long delay = deadline - System.nanoTime();
+            future = executor.schedule(this::runTick, Math.max(0, delay), TimeUnit.NANOSECONDS);
+        }
+
+        private void runTick() {
+            if (cancelled) {
+                return;
+            }
+            long start = System.nanoTime();
+            recordJitter(start - deadline);
+            try {
+                task.run();
+            } catch (Throwable t) {
+                // Un tick fallido no debe detener el bucle
+                ServerLogger.error("Error en el bucle " + name + ": " + t.getMessage(), t);
+            }
+            if (cancelled) {
+                return;
+            }
+
+            long next = deadline + intervalNanos;
+            long now = System.nanoTime();
+            if (next < now - intervalNanos) {
+                // Vamos más de un tick por detrás: no intentar recuperar a ráfagas
+                next = now;
+            }
+            scheduleAt(next);
+        }
+    }
+
+    /** Resumen del retraso de los ticks respecto a su plazo. */
+    public static class JitterStats {
+        private final long ticks;
+        private final long jitterSumMicros;
+        private final long maxJitterMicros;
+
+        JitterStats(long ticks, long jitterSumMicros, long maxJitterMicros) {
+            this.ticks = ticks;
+            this.jitterSumMicros = jitterSumMicros;
+            this.maxJitterMicros = maxJitterMicros;
+        }
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        public long getJitterSumMicros() {
+            return jitterSumMicros;
+        }
+
+        public long getMaxJitterMicros() {
+            return maxJitterMicros;
+        }
+
+        public double getMeanJitterMicros() {
+            return ticks == 0 ? 0 : (double) jitterSumMicros / ticks;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.expociencia.server;
+
+import java.nio.ByteBuffer;
+
+import com.expociencia.messages.JsonMessageCodec;
+import com.expociencia.messages.Message;
+import com.expociencia.messages.MessageCodec;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.framing.CloseFrame;
+
+/**
+ * Adaptador de una conexión WebSocket. Se guarda como "attachment" de la
+ * conexión desde onOpen.
+ */
+class WebSocketConnection implements ClientConnection {
+    private final WebSocket socket;
+    private final OutboundStats stats = new OutboundStats();
+    private volatile ClientSession session;
+
+    WebSocketConnection(WebSocket socket) {
+        this.socket = socket;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return socket.isOpen();
+    }
+
+    @Override
+    public void send(Message message, MessageCodec codec) {
+        if (codec.isBinary()) {
+            ByteBuffer encoded = codec.encode(message, ByteBuffer.allocate(64));
+            stats.queued(encoded.remaining());
+            socket.send(encoded);
+        } else {
+            String json = JsonMessageCodec.INSTANCE.toJson(message);
+            stats.queued(json.length()); // Aproximado: caracteres, no bytes
+            socket.send(json);
+        }
+    }
+
+    @Override
+    public void send(BroadcastFrame frame) {
+        frame.sendTo(socket);
+        stats.queued(frame.length());
+    }
+
+    // La cola de salida de Java-WebSocket: no se puede reordenar, así que Room deja de
+    // encolar en ella cuando crece y le manda solo el último estado al recuperarse
+    @Override
+    public int getQueuedFrames() {
+        return socket instanceof WebSocketImpl ? ((WebSocketImpl) socket).outQueue.size() : 0;
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        if (!(socket instanceof WebSocketImpl)) {
+            return 0;
+        }
+        long bytes = 0;
+        for (ByteBuffer frame : ((WebSocketImpl) socket).outQueue) {
+            bytes += frame.remaining();
+        }
+        return bytes;
+    }
+
+    @Override
+    public OutboundStats getOutboundStats() {
+        return stats;
+    }
+
+    @Override
+    public ClientSession getSession() {
+        return session;
+    }
+
+    @Override
+    public void setSession(ClientSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    @Override
+    public void close() {
+        // Sin el cierre ordenado: el frame de cierre quedaría detrás de todo lo pendiente
+        socket.closeConnection(CloseFrame.ABNORMAL_CLOSE, "Cola de salida llena");
+    }
+}
@@ -15,12 +15,20 @@ const restartButton = document.getElementById('restartButton');
 
 // --- Estado del Juego (Cliente) ---
 const TILE_SIZE = 16;
+const COLUMNS = 40; // Tablero por defecto; las salas "arena" indican su tamaño en UPDATE_STATE
+const ROWS = 40;
+// Lado de la vista en celdas: en tableros más grandes el servidor solo envía la zona alrededor de la cabeza
+const VIEWPORT = 40;
 let myPlayerId = -1;
 let playerNames = {};
 let playerScores = {};
 let gameObjects = [];
 let isGameOver = false;
 let isGameInProgress = false;
+let lastSequence = -1; // Último estado aplicado (protocolo delta)
+let boardColumns = COLUMNS;
+let boardRows = ROWS;
+let minimap = null; // Resumen del tablero entero (solo con área de interés)
 let ws; // WebSocket
 
 // --- Pantalla de Login (Inicio) ---
@@ -40,15 +48,26 @@ joinButton.onclick = () => {
 function connectWebSocket(playerName) {
     // Obtiene la IP/host del navegador y se conecta al puerto WebSocket
     ws = new WebSocket(`ws://${window.location.hostname}:12345`);
+    ws.binaryType = 'arraybuffer'; // Formato binario negociado en JOIN_GAME
 
     ws.onopen = () => {
         console.log('Conectado al servidor WebSocket. Enviando datos de unión...');
         // 1. Enviar mensaje de "unión" con el nombre
-        sendCommand("JOIN_GAME", { playerName: playerName });
+        // Pedimos el protocolo delta: un estado completo y luego solo los cambios de cada tick
+        // La sala se elige con ?room=CODIGO en la URL; sin ella, la sala pública
+        const params = new URLSearchParams(window.location.search);
+        const roomCode = params.get("room");
+        if (params.has("spectate")) {
+            // Con ?spectate solo se mira la partida: estados completos a menor ritmo
+            sendCommand("SPECTATE", { codec: "binary", roomCode: roomCode });
+        } else {
+            sendCommand("JOIN_GAME", { playerName: playerName, protocol: "delta", codec: "binary", roomCode: roomCode,
+                viewport: VIEWPORT });
+        }
     };
 
     ws.onmessage = (event) => {
-        const message = JSON.parse(event.data);
+        const message = (typeof event.data === 'string') ? JSON.parse(event.data) : decodeBinary(event.data);
 
         switch (message.action) {
             case "PLAYER_ID":
@@ -62,15 +81,47 @@ function connectWebSocket(playerName) {
 
             case "UPDATE_STATE":
                 // 3. Recibir actualización de estado (Lobby, Juego, o Fin)
-                gameObjects = message.objects;
+                // En JSON llega el tablero compacto; el binario ya trae la lista de objetos
+                gameObjects = message.objects || boardObjects(message.board);
+                resizeBoard(message.columns || COLUMNS, message.rows || ROWS);
                 isGameOver = message.gameOver;
                 isGameInProgress = message.gameInProgress;
                 playerNames = message.playerNames;
                 playerScores = message.playerScores;
+                lastSequence = message.sequence;
 
                 // Actualizar la UI basado en el estado
                 updateUI();
                 break;
+
+            case "STATE_DELTA":
+                // 4. Cambios de un tick sobre el último estado aplicado
+                if (lastSequence < 0) {
+                    break; // Esperando el estado completo ya solicitado
+                }
+                if (message.sequence !== lastSequence + 1) {
+                    // Nos saltamos algún delta: pedir un estado completo y descartar hasta recibirlo
+                    lastSequence = -1;
+                    sendCommand("REQUEST_KEYFRAME");
+                    break;
+                }
+                applyDelta(message.delta);
+                isGameOver = message.gameOver;
+                isGameInProgress = message.gameInProgress;
+                lastSequence = message.sequence;
+                updateUI();
+                break;
+
+            case "MINIMAP":
+                minimap = message.minimap;
+                if (isGameInProgress && !isGameOver) renderGame();
+                break;
+
+            case "ERROR":
+                // El servidor no nos dejó entrar (p. ej. no caben más salas): seguimos en el login
+                loginScreen.querySelector('h2').innerText = message.error;
+                loginScreen.querySelector('h2').style.color = '#F44336';
+                break;
         }
     };
 
@@ -86,8 +137,210 @@ function connectWebSocket(playerName) {
     };
 }
 
+// El canvas ocupa el tablero entero de la sala, o la vista si el tablero es más grande
+function resizeBoard(columns, rows) {
+    boardColumns = columns;
+    boardRows = rows;
+    const width = Math.min(columns, VIEWPORT) * TILE_SIZE;
+    const height = Math.min(rows, VIEWPORT) * TILE_SIZE;
+    if (canvas.width !== width || canvas.height !== height) {
+        canvas.width = width;
+        canvas.height = height;
+    }
+}
+
+// Esquina de la cámara en píxeles: la cabeza propia en el centro sin salirse del tablero (como Area.java)
+function cameraOrigin() {
+    const head = gameObjects.find(o => o.type === 'SNAKE_HEAD' && o.playerId === myPlayerId);
+    if (!head) return cameraOrigin.last || [0, 0];
+    const start = (cell, size) => Math.max(0, Math.min(size - VIEWPORT, cell - Math.floor(VIEWPORT / 2)));
+    cameraOrigin.last = [start(head.x / TILE_SIZE, boardColumns) * TILE_SIZE, start(head.y / TILE_SIZE, boardRows) * TILE_SIZE];
+    return cameraOrigin.last;
+}
+
+// Tablero compacto (ver Board.java) como lista de objetos: serpientes, frutas y muros
+function boardObjects(board) {
+    const objects = [];
+    if (!board) return objects;
+    const columns = board.columns || COLUMNS;
+    const cellX = (c) => (c % columns) * TILE_SIZE;
+    const cellY = (c) => Math.floor(c / columns) * TILE_SIZE;
+    for (const snake of board.snakes) {
+        snake.cells.forEach((c, i) => objects.push({ x: cellX(c), y: cellY(c),
+            type: i === 0 ? 'SNAKE_HEAD' : 'SNAKE_BODY', playerId: snake.playerId, color: snake.color }));
+    }
+    board.fruitCells.forEach((c, i) => objects.push({ x: cellX(c), y: cellY(c), type: 'FRUIT', playerId: -1, value: board.fruitValues[i] }));
+    for (const c of board.wallCells) {
+        objects.push({ x: cellX(c), y: cellY(c), type: 'WALL', playerId: -1 });
+    }
+    return objects;
+}
+
+// --- Protocolo Delta ---
+// Aplica los cambios en el mismo orden que el servidor: cabezas, colas, frutas, eliminados
+function applyDelta(delta) {
+    for (const [playerId, x, y] of delta.heads) {
+        const index = gameObjects.findIndex(o => o.type === 'SNAKE_HEAD' && o.playerId === playerId);
+        if (index < 0) continue;
+        const oldHead = gameObjects[index];
+        oldHead.type = 'SNAKE_BODY';
+        gameObjects.splice(index, 0, { ...oldHead, x: x, y: y, type: 'SNAKE_HEAD' });
+    }
+    for (const [playerId, x, y] of delta.tails) {
+        // Los segmentos van de cabeza a cola: buscar desde el final
+        for (let i = gameObjects.length - 1; i >= 0; i--) {
+            const o = gameObjects[i];
+            if (o.playerId === playerId && o.type !== 'FRUIT' && o.x === x && o.y === y) {
+                gameObjects.splice(i, 1);
+                break;
+            }
+        }
+    }
+    for (const [x, y] of delta.fruitsRemoved) {
+        gameObjects = gameObjects.filter(o => !(o.type === 'FRUIT' && o.x === x && o.y === y));
+    }
+    for (const [x, y, value] of delta.fruitsAdded) {
+        gameObjects.push({ x: x, y: y, type: 'FRUIT', playerId: -1, value: value });
+    }
+    if (delta.eliminated.length > 0) {
+        gameObjects = gameObjects.filter(o => o.type === 'FRUIT' || !delta.eliminated.includes(o.playerId));
+    }
+    Object.assign(playerScores, delta.playerScores);
+}
+
+// --- Formato Binario (ver BinaryMessageCodec.java) ---
+const OP_PLAYER_ID = 1, OP_UPDATE_STATE = 2, OP_STATE_DELTA = 3, OP_PLAYER_INPUT = 5, OP_MINIMAP = 11, OP_ERROR = 12;
+const COLOR_PALETTE = ["CYAN", "MAGENTA", "YELLOW", "ORANGE", "PINK", "GREEN", "BLUE", "RED", "WHITE"];
+const INPUT_CODES = { UP: 0, DOWN: 1, LEFT: 2, RIGHT: 3, RESTART: 4 };
+const utf8Decoder = new TextDecoder();
+
+function decodeBinary(buffer) {
+    const view = new DataView(buffer);
+    let pos = 0;
+    const u8 = () => view.getUint8(pos++);
+    const varint = () => {
+        let value = 0, shift = 0, b;
+        do {
+            b = u8();
+            value += (b & 0x7F) * Math.pow(2, shift);
+            shift += 7;
+        } while (b & 0x80);
+        return value;
+    };
+    // Celda en píxeles [x, y]: short empaquetado con 40 columnas, o columna y fila con FLAG_GRID_CELLS
+    let gridCells = false;
+    let areaFlag = false; // Tablero recortado a la zona del jugador
+    const cell = () => {
+        if (gridCells) {
+            const col = varint();
+            return [col * TILE_SIZE, varint() * TILE_SIZE];
+        }
+        const c = view.getUint16(pos);
+        pos += 2;
+        return [(c % COLUMNS) * TILE_SIZE, Math.floor(c / COLUMNS) * TILE_SIZE];
+    };
+    const string = () => {
+        const length = varint();
+        const text = utf8Decoder.decode(new Uint8Array(buffer, pos, length));
+        pos += length;
+        return text;
+    };
+    const flags = (message) => {
+        const f = u8();
+        message.gameOver = (f & 1) !== 0;
+        message.gameInProgress = (f & 2) !== 0;
+        gridCells = (f & 4) !== 0;
+        areaFlag = (f & 8) !== 0;
+    };
+
+    const op = u8();
+    if (op === OP_PLAYER_ID) {
+        return { action: "PLAYER_ID", playerId: varint() };
+    }
+    if (op === OP_UPDATE_STATE) {
+        const message = { action: "UPDATE_STATE", objects: [], playerScores: {}, playerNames: {} };
+        flags(message);
+        message.sequence = varint();
+        message.columns = gridCells ? varint() : COLUMNS;
+        message.rows = gridCells ? varint() : ROWS;
+        if (areaFlag) {
+            message.area = { column: varint(), row: varint(), columns: varint(), rows: varint() };
+        }
+        const players = varint();
+        for (let i = 0; i < players; i++) {
+            const id = varint();
+            const f = u8();
+            if (f & 1) message.playerScores[id] = varint();
+            if (f & 2) message.playerNames[id] = string();
+        }
+        const snakes = varint();
+        for (let i = 0; i < snakes; i++) {
+            const playerId = varint();
+            const color = COLOR_PALETTE[u8()];
+            const length = varint();
+            for (let j = 0; j < length; j++) {
+                const [x, y] = cell();
+                message.objects.push({ x: x, y: y,
+                    type: j === 0 ? 'SNAKE_HEAD' : 'SNAKE_BODY', playerId: playerId, color: color });
+            }
+        }
+        const fruits = varint();
+        for (let i = 0; i < fruits; i++) {
+            const [x, y] = cell();
+            message.objects.push({ x: x, y: y, type: 'FRUIT', playerId: -1, value: u8() });
+        }
+        const walls = varint();
+        for (let i = 0; i < walls; i++) {
+            const [x, y] = cell();
+            message.objects.push({ x: x, y: y, type: 'WALL', playerId: -1 });
+        }
+        return message;
+    }
+    if (op === OP_STATE_DELTA) {
+        const message = { action: "STATE_DELTA" };
+        flags(message);
+        message.sequence = varint();
+        const list = (readItem) => {
+            const items = [];
+            const count = varint();
+            for (let i = 0; i < count; i++) items.push(readItem());
+            return items;
+        };
+        const playerCell = () => { const id = varint(); return [id, ...cell()]; };
+        const delta = {};
+        delta.heads = list(playerCell);
+        delta.tails = list(playerCell);
+        delta.fruitsAdded = list(() => [...cell(), u8()]);
+        delta.fruitsRemoved = list(cell);
+        delta.eliminated = list(varint);
+        delta.playerScores = {};
+        const scores = varint();
+        for (let i = 0; i < scores; i++) {
+            const id = varint();
+            delta.playerScores[id] = varint();
+        }
+        message.delta = delta;
+        return message;
+    }
+    if (op === OP_MINIMAP) {
+        const chunkColumns = varint();
+        const chunkRows = varint();
+        const snakeCells = Array.from(new Uint8Array(buffer, pos, chunkColumns * chunkRows));
+        return { action: "MINIMAP", minimap: { chunkColumns, chunkRows, snakeCells } };
+    }
+    if (op === OP_ERROR) {
+        return { action: "ERROR", error: string() };
+    }
+    return { action: "UNKNOWN" };
+}
+
 // --- Envío de Comandos al Servidor ---
 function sendCommand(action, data = {}) {
+    if (action === "PLAYER_INPUT" && myPlayerId >= 0) {
+        // Las direcciones viajan en 2 bytes en lugar de un JSON
+        ws.send(new Uint8Array([OP_PLAYER_INPUT, INPUT_CODES[data.input]]));
+        return;
+    }
     const message = {
         action: action,
         ...data // Añade datos (ej. playerName, input)
@@ -209,6 +462,9 @@ function renderGame() {
     ctx.fillStyle = 'black';
     ctx.fillRect(0, 0, canvas.width, canvas.height);
 
+    const [cameraX, cameraY] = cameraOrigin();
+    ctx.save();
+    ctx.translate(-cameraX, -cameraY);
     if (gameObjects) {
         for (const obj of gameObjects) {
             const isOwnSnake = (obj.playerId === myPlayerId);
@@ -228,8 +484,35 @@ function renderGame() {
             }
         }
     }
+    ctx.restore();
     // Pasar los nombres de los jugadores al scoreboard
     drawScoreboard(playerScores || {}, playerNames || {}, myPlayerId);
+    drawMinimap(cameraX, cameraY);
+}
+
+// Minimapa en la esquina: densidad de serpientes por trozo y el recuadro de la vista
+function drawMinimap(cameraX, cameraY) {
+    if (!minimap || (boardColumns <= VIEWPORT && boardRows <= VIEWPORT)) return;
+    const scale = 4; // Píxeles por trozo
+    const width = minimap.chunkColumns * scale;
+    const height = minimap.chunkRows * scale;
+    const left = canvas.width - width - 5;
+    const top = canvas.height - height - 5;
+    ctx.fillStyle = 'rgba(0, 0, 0, 0.6)';
+    ctx.fillRect(left, top, width, height);
+    for (let row = 0; row < minimap.chunkRows; row++) {
+        for (let col = 0; col < minimap.chunkColumns; col++) {
+            const cells = minimap.snakeCells[row * minimap.chunkColumns + col] & 0xFF; // En JSON llegan con signo
+            if (cells === 0) continue;
+            ctx.fillStyle = `rgba(0, 255, 0, ${Math.min(1, 0.3 + cells / 64)})`;
+            ctx.fillRect(left + col * scale, top + row * scale, scale, scale);
+        }
+    }
+    const chunkPixels = 16 * TILE_SIZE; // CHUNK_SIZE de GameState
+    ctx.strokeStyle = 'yellow';
+    ctx.lineWidth = 1;
+    ctx.strokeRect(left + cameraX / chunkPixels * scale, top + cameraY / chunkPixels * scale,
+        canvas.width / chunkPixels * scale, canvas.height / chunkPixels * scale);
 }
 
 function parseColor(colorName) {
@@ -239,7 +522,7 @@ function parseColor(colorName) {
 
 function drawSnakeSegment(segment, isHead, isOwnSnake) {
     ctx.fillStyle = parseColor(segment.color);
-    ctx.fillRect(segment.x, segment.y, segment.width, segment.height);
+    ctx.fillRect(segment.x, segment.y, TILE_SIZE, TILE_SIZE);
 
     // --- ¡NUEVO! Identificador de Jugador ---
     if (isOwnSnake) {
@@ -249,14 +532,14 @@ function drawSnakeSegment(segment, isHead, isOwnSnake) {
         ctx.strokeStyle = 'darkgray';
         ctx.lineWidth = 1;
     }
-    ctx.strokeRect(segment.x, segment.y, segment.width, segment.height);
+    ctx.strokeRect(segment.x, segment.y, TILE_SIZE, TILE_SIZE);
     // --- FIN NUEVO ---
 
     if (isHead) {
         ctx.fillStyle = 'black';
         ctx.beginPath();
         ctx.arc(segment.x + 5, segment.y + 5, 2, 0, 2 * Math.PI);
-        ctx.arc(segment.x + segment.width - 5, segment.y + 5, 2, 0, 2 * Math.PI);
+        ctx.arc(segment.x + TILE_SIZE - 5, segment.y + 5, 2, 0, 2 * Math.PI);
         ctx.fill();
     }
 }
@@ -273,12 +556,12 @@ function drawFruit(fruit) {
     ctx.font = 'bold 12px Arial';
     ctx.textAlign = 'center';
     ctx.textBaseline = 'middle';
-    ctx.fillText(fruit.health, fruit.x + TILE_SIZE / 2, fruit.y + TILE_SIZE / 2 + 1);
+    ctx.fillText(fruit.value, fruit.x + TILE_SIZE / 2, fruit.y + TILE_SIZE / 2 + 1);
 }
 
 function drawWall(wall) {
     ctx.fillStyle = 'gray';
-    ctx.fillRect(wall.x, wall.y, wall.width, wall.height);
+    ctx.fillRect(wall.x, wall.y, TILE_SIZE, TILE_SIZE);
 }
 
 function drawScoreboard(scores, names, ownId) {
@@ -0,0 +1,80 @@
+package com.expociencia.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.expociencia.game.CellKind;
+import com.expociencia.game.GameObject;
+import com.expociencia.game.GameState;
+
+/**
+ * Las zonas sucias deben caer donde está el objeto en la vista, también
+ * cuando asoma por el borde (coordenadas negativas) o queda muy lejos.
+ */
+class DirtyRegionsTest {
+    private static final int TILE = GameState.TILE_SIZE;
+    private static final int COLUMNS = 40;
+    private static final int ROWS = 30;
+
+    private DirtyRegions regions;
+
+    @BeforeEach
+    void setUp() {
+        regions = new DirtyRegions();
+        regions.resize(COLUMNS, ROWS);
+        regions.update(List.of()); // El primer cuadro repinta todo
+    }
+
+    @Test
+    void changedTileIsDirty() {
+        List<Rectangle> dirty = regions.update(List.of(fruit(5 * TILE, 3 * TILE)));
+        // El sprite sobresale un píxel: su casilla y las de la derecha y abajo
+        assertEquals(List.of(new Rectangle(5 * TILE, 3 * TILE, 2 * TILE, 2 * TILE)), dirty);
+        assertTrue(regions.update(List.of(fruit(5 * TILE, 3 * TILE))).isEmpty());
+    }
+
+    // Un objeto que asoma por la izquierda y por arriba ensucia las casillas del borde, no el otro extremo
+    @Test
+    void negativeViewCoordinate() {
+        List<Rectangle> dirty = regions.update(List.of(fruit(-TILE / 2, -TILE / 2)));
+        assertEquals(List.of(new Rectangle(0, 0, TILE, TILE)), dirty);
+    }
+
+    @Test
+    void movingInsideATileIsAChange() {
+        regions.update(List.of(fruit(-TILE / 2, 0)));
+        assertEquals(List.of(new Rectangle(0, 0, TILE, 2 * TILE)), regions.update(List.of(fruit(-TILE / 4, 0))));
+    }
+
+    // Lo que queda fuera de la vista no se pinta ni se confunde con otra casilla
+    @Test
+    void outsideTheViewIsIgnored() {
+        assertTrue(regions.update(List.of(fruit(65536 + TILE, TILE), fruit(TILE, -65536), fruit(COLUMNS * TILE, 0)))
+                .isEmpty());
+        assertEquals(0, DirtyRegions.key(fruit(-2 * TILE, 0), COLUMNS, ROWS));
+    }
+
+    @Test
+    void keysDependOnTileOffsetKindAndLook() {
+        GameObject fruit = fruit(TILE, TILE);
+        long key = DirtyRegions.key(fruit, COLUMNS, ROWS);
+        assertNotEquals(key, DirtyRegions.key(fruit(TILE + 1, TILE), COLUMNS, ROWS));
+        assertNotEquals(key, DirtyRegions.key(fruit(2 * TILE, TILE), COLUMNS, ROWS));
+        fruit.setValue(fruit.getValue() + 1);
+        assertNotEquals(key, DirtyRegions.key(fruit, COLUMNS, ROWS));
+        assertNotEquals(key, DirtyRegions.key(new GameObject(TILE, TILE, CellKind.WALL, -1), COLUMNS, ROWS));
+    }
+
+    private static GameObject fruit(int x, int y) {
+        GameObject fruit = new GameObject(x, y, CellKind.FRUIT, -1);
+        fruit.setValue(5);
+        return fruit;
+    }
+}
@@ -0,0 +1,102 @@
+package com.expociencia.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * El índice de ocupación (y su conjunto de celdas libres) debe coincidir
+ * siempre con el tablero que se publica: tras cada tick, cada celda tiene
+ * el tipo y el dueño que dice la foto, y las libres son justo las vacías.
+ */
+class OccupancyGridTest {
+    private static final String[] INPUTS = {"UP", "DOWN", "LEFT", "RIGHT"};
+    private static final int TICKS = 400;
+
+    @ParameterizedTest
+    @CsvSource({
+            "1, 40, 6",
+            "2, 20, 4",
+            "3, 20, 12",
+            "4, 64, 16",
+            "5, 200, 40"
+    })
+    void freeCellsMatchBoardAfterRandomTicks(long seed, int size, int players) {
+        Random random = new Random(seed);
+        GameState state = new GameState(size, size, new Random(seed));
+        for (int id = 1; id <= players; id++) {
+            state.addPlayer(id, "P" + id);
+        }
+        state.startGame();
+        assertMatchesBoard(state, "al empezar");
+
+        for (int tick = 1; tick <= TICKS; tick++) {
+            for (int id = 1; id <= players; id++) {
+                if (random.nextInt(4) == 0) {
+                    state.handleInput(id, INPUTS[random.nextInt(INPUTS.length)], tick);
+                }
+            }
+            state.update();
+            assertMatchesBoard(state, "tick " + tick);
+            // Al acabar la partida se vuelve a empezar, para pasar también por resetGame()
+            // (en el lobby la foto va vacía: se comprueba ya con la partida en marcha)
+            if (state.isGameOver()) {
+                state.resetGame();
+                state.startGame();
+                assertMatchesBoard(state, "tras reiniciar en el tick " + tick);
+            }
+        }
+    }
+
+    private static void assertMatchesBoard(GameState state, String when) {
+        OccupancyGrid grid = state.getGrid();
+        Board board = state.getBoard();
+        int[] kinds = new int[grid.size()];
+        int[] owners = new int[grid.size()];
+        Arrays.fill(owners, -1);
+
+        for (Board.Snake snake : board.getSnakes()) {
+            for (int i = 0; i < snake.length(); i++) {
+                int cell = snake.cell(i);
+                assertEquals(OccupancyGrid.EMPTY, kinds[cell], when + ": celda " + cell + " ocupada dos veces");
+                kinds[cell] = OccupancyGrid.SNAKE;
+                owners[cell] = snake.playerId();
+            }
+        }
+        for (int cell : board.getFruitCells()) {
+            assertEquals(OccupancyGrid.EMPTY, kinds[cell], when + ": fruta en la celda ocupada " + cell);
+            kinds[cell] = OccupancyGrid.FRUIT;
+        }
+        for (int cell : board.getWallCells()) {
+            assertEquals(OccupancyGrid.EMPTY, kinds[cell], when + ": muro en la celda ocupada " + cell);
+            kinds[cell] = OccupancyGrid.WALL;
+        }
+
+        int empty = 0;
+        for (int cell = 0; cell < kinds.length; cell++) {
+            assertEquals(kinds[cell], grid.kindAt(cell), when + ": tipo de la celda " + cell);
+            if (kinds[cell] == OccupancyGrid.EMPTY) {
+                assertTrue(grid.isEmpty(cell), when + ": celda " + cell + " debería estar vacía");
+                empty++;
+            } else {
+                assertEquals(owners[cell], grid.ownerAt(cell), when + ": dueño de la celda " + cell);
+            }
+        }
+
+        // El conjunto de libres: sin repetidas y solo con celdas vacías, así contando basta
+        assertEquals(empty, grid.freeCount(), when + ": número de celdas libres");
+        boolean[] seen = new boolean[grid.size()];
+        for (int i = 0; i < grid.freeCount(); i++) {
+            int cell = grid.freeCellAt(i);
+            assertFalse(seen[cell], when + ": celda libre " + cell + " repetida");
+            seen[cell] = true;
+            assertEquals(OccupancyGrid.EMPTY, kinds[cell], when + ": celda " + cell + " libre en el índice pero ocupada");
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.expociencia.messages;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.expociencia.game.Area;
+import com.expociencia.game.Board;
+import com.expociencia.game.GameState;
+import com.expociencia.game.Minimap;
+
+/**
+ * Ida y vuelta por el formato binario de cada código de operación, en el
+ * tablero de siempre y en los de las salas "arena", más los límites que
+ * protegen al servidor de longitudes y mensajes que no le tocan.
+ */
+class BinaryMessageCodecTest {
+    private static final BinaryMessageCodec CODEC = BinaryMessageCodec.INSTANCE;
+
+    // --- Mensajes del servidor ---
+
+    @Test
+    void playerId() {
+        Message message = new Message("PLAYER_ID");
+        message.setPlayerId(300);
+
+        Message back = roundTrip(message);
+        assertEquals("PLAYER_ID", back.getAction());
+        assertEquals(300, back.getPlayerId());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {GameState.DEFAULT_COLUMNS, GameState.MIN_SIZE, 64, 200, GameState.MAX_SIZE})
+    void updateState(int size) {
+        GameState state = playedGame(size);
+        Message message = stateMessage(state);
+
+        Message back = roundTrip(message);
+        assertEquals("UPDATE_STATE", back.getAction());
+        assertEquals(size, back.getColumns());
+        assertEquals(size, back.getRows());
+        assertEquals(message.getSequence(), back.getSequence());
+        assertEquals(message.isGameInProgress(), back.isGameInProgress());
+        assertEquals(message.isGameOver(), back.isGameOver());
+        assertEquals(message.getPlayerScores(), back.getPlayerScores());
+        assertEquals(message.getPlayerNames(), back.getPlayerNames());
+        assertEquals(message.getTick(), back.getTick());
+        assertEquals(message.getLevel(), back.getLevel());
+        assertEquals(message.getInputAcks(), back.getInputAcks());
+        assertNull(back.getArea());
+        assertBoardEquals(message.getBoard(), back.getBoard());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {GameState.DEFAULT_COLUMNS, 200, GameState.MAX_SIZE})
+    void updateStateWithArea(int size) {
+        GameState state = playedGame(size);
+        Area area = Area.around(state.getBoard().getSnakes().get(0).cell(0), 24, size, size);
+        Message message = stateMessage(state);
+        message.setBoard(state.getBoard().crop(area));
+        message.setArea(area);
+
+        Message back = roundTrip(message);
+        assertEquals(area, back.getArea());
+        assertEquals(size, back.getColumns());
+        assertBoardEquals(message.getBoard(), back.getBoard());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {GameState.DEFAULT_COLUMNS, GameState.MIN_SIZE, 200, GameState.MAX_SIZE})
+    void stateDelta(int size) {
+        GameState state = playedGame(size);
+        state.drainDelta();
+        StateDelta delta = new StateDelta();
+        for (int tick = 0; tick < 10 && delta.getHeads().isEmpty(); tick++) {
+            state.update();
+            delta = state.drainDelta();
+        }
+        // Todos los campos, también los que un tick normal puede no tener, en las esquinas del tablero
+        int far = (size - 1) * GameState.TILE_SIZE;
+        delta.addHead(7, far, far);
+        delta.addTail(7, 0, far);
+        delta.addFruit(far, 0, 9);
+        delta.removeFruit(GameState.TILE_SIZE, far);
+        delta.addEliminated(8);
+        delta.setScore(7, 1234);
+        Message message = new Message("STATE_DELTA");
+        message.setDelta(delta);
+        message.setDimensions(size, size);
+        message.setSequence(5_000_000_000L);
+        message.setGameInProgress(true);
+
+        Message back = roundTrip(message);
+        assertEquals("STATE_DELTA", back.getAction());
+        assertEquals(message.getSequence(), back.getSequence());
+        assertTrue(back.isGameInProgress());
+        assertFalse(back.isGameOver());
+        StateDelta decoded = back.getDelta();
+        assertCellsEqual(delta.getHeads(), decoded.getHeads());
+        assertCellsEqual(delta.getTails(), decoded.getTails());
+        assertCellsEqual(delta.getFruitsAdded(), decoded.getFruitsAdded());
+        assertCellsEqual(delta.getFruitsRemoved(), decoded.getFruitsRemoved());
+        assertEquals(delta.getEliminated(), decoded.getEliminated());
+        assertEquals(delta.getPlayerScores(), decoded.getPlayerScores());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {GameState.DEFAULT_COLUMNS, 100, GameState.MAX_SIZE})
+    void minimap(int size) {
+        Minimap minimap = playedGame(size).getBoard().minimap();
+        Message message = new Message("MINIMAP");
+        message.setMinimap(minimap);
+
+        Message back = roundTrip(message);
+        assertEquals("MINIMAP", back.getAction());
+        assertEquals(minimap.chunkColumns(), back.getMinimap().chunkColumns());
+        assertEquals(minimap.chunkRows(), back.getMinimap().chunkRows());
+        assertArrayEquals(minimap.snakeCells(), back.getMinimap().snakeCells());
+    }
+
+    @Test
+    void error() {
+        Message message = new Message("ERROR");
+        message.setError("No se pueden crear más salas.");
+
+        Message back = roundTrip(message);
+        assertEquals("ERROR", back.getAction());
+        assertEquals("No se pueden crear más salas.", back.getError());
+    }
+
+    // --- Mensajes del cliente ---
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, GameState.MIN_SIZE, 200, GameState.MAX_SIZE})
+    void joinGame(int boardSize) {
+        Message message = new Message("JOIN_GAME");
+        message.setPlayerName("Ñandú");
+        message.setProtocol("delta");
+        message.setCodec(BinaryMessageCodec.NAME);
+        message.setRoomCode("ARENA-1");
+        message.setBoardSize(boardSize);
+        message.setViewport(32);
+
+        Message back = roundTripFromClient(message);
+        assertEquals("JOIN_GAME", back.getAction());
+        assertEquals("Ñandú", back.getPlayerName());
+        assertEquals("delta", back.getProtocol());
+        assertEquals(BinaryMessageCodec.NAME, back.getCodec());
+        assertEquals("ARENA-1", back.getRoomCode());
+        assertEquals(boardSize, back.getBoardSize());
+        assertEquals(32, back.getViewport());
+    }
+
+    @Test
+    void spectate() {
+        Message message = new Message("SPECTATE");
+        message.setCodec(BinaryMessageCodec.NAME);
+        message.setRoomCode("SALA");
+
+        Message back = roundTripFromClient(message);
+        assertEquals("SPECTATE", back.getAction());
+        assertEquals(BinaryMessageCodec.NAME, back.getCodec());
+        assertEquals("SALA", back.getRoomCode());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"UP", "DOWN", "LEFT", "RIGHT", "RESTART"})
+    void playerInput(String input) {
+        Message message = new Message("PLAYER_INPUT");
+        message.setInput(input);
+        message.setInputSequence(70_000);
+
+        Message back = roundTripFromClient(message);
+        assertEquals("PLAYER_INPUT", back.getAction());
+        assertEquals(input, back.getInput());
+        assertEquals(70_000, back.getInputSequence());
+    }
+
+    // Los clientes web envían el giro sin secuencia
+    @Test
+    void playerInputWithoutSequence() {
+        Message back = CODEC.decodeFromClient(ByteBuffer.wrap(new byte[]{BinaryMessageCodec.OP_PLAYER_INPUT, 3}));
+        assertEquals("RIGHT", back.getInput());
+        assertEquals(0, back.getInputSequence());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"START_GAME", "RESTART_GAME", "REQUEST_KEYFRAME", "PING"})
+    void withoutFields(String action) {
+        ByteBuffer encoded = CODEC.encode(new Message(action), ByteBuffer.allocate(8));
+        assertEquals(1, encoded.remaining());
+        assertEquals(action, CODEC.decodeFromClient(encoded).getAction());
+    }
+
+    // --- Límites ---
+
+    @ParameterizedTest
+    @ValueSource(bytes = {BinaryMessageCodec.OP_PLAYER_ID, BinaryMessageCodec.OP_UPDATE_STATE,
+            BinaryMessageCodec.OP_STATE_DELTA, BinaryMessageCodec.OP_MINIMAP, BinaryMessageCodec.OP_ERROR})
+    void clientCannotSendServerMessages(byte op) {
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{op, 0, 0, 0, 0, 0, 0, 0});
+        assertThrows(IllegalArgumentException.class, () -> CODEC.decodeFromClient(data));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {5, 127, 255})
+    void unknownInput(int input) {
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{BinaryMessageCodec.OP_PLAYER_INPUT, (byte) input});
+        assertThrows(IllegalArgumentException.class, () -> CODEC.decodeFromClient(data));
+    }
+
+    @Test
+    void unknownOperation() {
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{42});
+        assertThrows(IllegalArgumentException.class, () -> CODEC.decode(data));
+    }
+
+    // Una longitud que no cabe en lo que queda del mensaje se rechaza antes de reservar nada
+    @Test
+    void lengthLargerThanMessage() {
+        // UPDATE_STATE sin flags, secuencia 0 y 2^28 jugadores
+        ByteBuffer players = ByteBuffer.wrap(new byte[]{BinaryMessageCodec.OP_UPDATE_STATE, 0, 0,
+                (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01});
+        assertThrows(IllegalArgumentException.class, () -> CODEC.decode(players));
+
+        // Nombre de jugador de 2^21 bytes en un mensaje de diez
+        ByteBuffer name = ByteBuffer.wrap(new byte[]{BinaryMessageCodec.OP_JOIN_GAME,
+                (byte) 0x80, (byte) 0x80, 0x01, 'a', 'b', 'c', 'd', 'e', 'f'});
+        assertThrows(IllegalArgumentException.class, () -> CODEC.decodeFromClient(name));
+
+        // Minimapa de 1000 x 1000 trozos sin bytes detrás
+        ByteBuffer minimap = ByteBuffer.wrap(new byte[]{BinaryMessageCodec.OP_MINIMAP,
+                (byte) 0xE8, 0x07, (byte) 0xE8, 0x07});
+        assertThrows(IllegalArgumentException.class, () -> CODEC.decode(minimap));
+    }
+
+    // El peor caso de cada formato: el tablero mayor lleno de frutas, de serpientes de dos celdas
+    // o de serpientes de una (recortes), con cien jugadores
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2})
+    void denseStateFitsLimits(int layout) {
+        int size = GameState.MAX_SIZE;
+        int cells = size * size;
+        List<Board.Snake> snakes = new ArrayList<>();
+        int[] fruitCells = new int[0];
+        if (layout == 0) {
+            fruitCells = new int[cells];
+            Arrays.setAll(fruitCells, cell -> cell);
+        } else {
+            for (int cell = 0; cell + layout <= cells; cell += layout) {
+                int[] body = layout == 1 ? new int[]{cell} : new int[]{cell, cell + 1};
+                snakes.add(new Board.Snake(Integer.MAX_VALUE - cell, "MAGENTA", body));
+            }
+        }
+        int[] fruitValues = new int[fruitCells.length];
+        Arrays.fill(fruitValues, 9);
+        Message message = new Message("UPDATE_STATE");
+        message.setBoard(new Board(size, size, snakes, fruitCells, fruitValues, new int[0]));
+        message.setDimensions(size, size);
+        Map<Integer, Integer> scores = new HashMap<>();
+        Map<Integer, String> names = new HashMap<>();
+        for (int id = 0; id < 100; id++) {
+            scores.put(Integer.MAX_VALUE - id, Integer.MAX_VALUE);
+            names.put(Integer.MAX_VALUE - id, "ÑÑÑÑÑÑ");
+        }
+        message.setPlayerScores(scores);
+        message.setPlayerNames(names);
+        message.setInputAcks(scores);
+
+        int binary = CODEC.encode(message, ByteBuffer.allocate(64)).remaining();
+        assertTrue(binary <= CODEC.maxStateLength(size, size), "binario: " + binary);
+        assertTrue(binary <= TcpFraming.MAX_FRAME_LENGTH, "trama TCP: " + binary);
+        int json = JsonMessageCodec.INSTANCE.encode(message, ByteBuffer.allocate(64)).remaining();
+        assertTrue(json <= JsonMessageCodec.INSTANCE.maxStateLength(size, size), "JSON: " + json);
+    }
+
+    // --- Utilidades ---
+
+    private static Message roundTrip(Message message) {
+        // Búfer pequeño a propósito: también se prueba que crezca
+        return CODEC.decode(CODEC.encode(message, ByteBuffer.allocate(16)));
+    }
+
+    private static Message roundTripFromClient(Message message) {
+        return CODEC.decodeFromClient(CODEC.encode(message, ByteBuffer.allocate(16)));
+    }
+
+    // Partida con unos ticks jugados: serpientes largas, frutas y puntuaciones
+    private static GameState playedGame(int size) {
+        GameState state = new GameState(size, size);
+        for (int id = 1; id <= 6; id++) {
+            state.addPlayer(id, "Jugador " + id);
+        }
+        state.startGame();
+        for (int id = 1; id <= 6; id++) {
+            state.handleInput(id, id % 2 == 0 ? "UP" : "DOWN", id);
+        }
+        for (int tick = 0; tick < 30; tick++) {
+            state.update();
+        }
+        return state;
+    }
+
+    private static Message stateMessage(GameState state) {
+        Board board = state.getBoard();
+        Message message = new Message("UPDATE_STATE");
+        message.setBoard(board);
+        message.setDimensions(board.getColumns(), board.getRows());
+        message.setPlayerScores(state.getPlayerScores());
+        message.setPlayerNames(state.getPlayerNames());
+        message.setGameInProgress(state.isGameInProgress());
+        message.setGameOver(state.isGameOver());
+        message.setSequence(123_456L);
+        message.setTick(state.getSnapshot().getTick());
+        message.setLevel(state.getCurrentLevel());
+        message.setInputAcks(Map.of(1, 1, 2, 2, 3, 300));
+        return message;
+    }
+
+    private static void assertBoardEquals(Board expected, Board actual) {
+        assertEquals(expected.getColumns(), actual.getColumns());
+        assertEquals(expected.getRows(), actual.getRows());
+        assertEquals(expected.getSnakes().size(), actual.getSnakes().size());
+        for (int i = 0; i < expected.getSnakes().size(); i++) {
+            Board.Snake snake = expected.getSnakes().get(i);
+            Board.Snake decoded = actual.getSnakes().get(i);
+            assertEquals(snake.playerId(), decoded.playerId());
+            assertEquals(snake.color(), decoded.color());
+            assertArrayEquals(snake.cells(), decoded.cells(), "serpiente " + snake.playerId());
+        }
+        assertArrayEquals(expected.getFruitCells(), actual.getFruitCells());
+        assertArrayEquals(expected.getFruitValues(), actual.getFruitValues());
+        assertArrayEquals(expected.getWallCells(), actual.getWallCells());
+    }
+
+    private static void assertCellsEqual(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i), "elemento " + i);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.expociencia.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+class RoomRegistryTest {
+
+    @Test
+    void normalizeCode() {
+        assertEquals(RoomRegistry.DEFAULT_ROOM, RoomRegistry.normalizeCode(null));
+        assertEquals(RoomRegistry.DEFAULT_ROOM, RoomRegistry.normalizeCode("   "));
+        assertEquals("SALA-1", RoomRegistry.normalizeCode("  sala-1 "));
+        assertEquals("ABCDEFGHIJKL", RoomRegistry.normalizeCode("abcdefghijklmnop"));
+    }
+
+    // En turco "i" pasa a "İ": "join" y "JOIN" serían salas distintas
+    @Test
+    void normalizeCodeIgnoresDefaultLocale() {
+        Locale previous = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+            assertEquals("JOIN", RoomRegistry.normalizeCode("join"));
+            assertEquals(RoomRegistry.normalizeCode("JOIN"), RoomRegistry.normalizeCode("join"));
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+}